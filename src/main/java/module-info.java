@@ -1,7 +1,12 @@
 module se223.audioconverter {
-    requires javafx.controls;
-    requires javafx.fxml;
+    // only the window needs JavaFX: the headless CLI (se223.audioconverter.cli) runs without it,
+    // so launchers of the window add it with --add-modules javafx.controls,javafx.fxml
+    requires static javafx.controls;
+    requires static javafx.fxml;
     requires java.prefs;
+    requires java.management;
+    // SIMD sample kernels; used only when the JVM is started with --add-modules jdk.incubator.vector
+    requires static jdk.incubator.vector;
 
     // allow FXML to access controller classes via reflection
     opens se223.audioconverter.controller to javafx.fxml;
@@ -10,4 +15,6 @@ module se223.audioconverter {
     // make your main package available if needed elsewhere
     exports se223.audioconverter;
     exports se223.audioconverter.controller;
+    // JMX reads the metrics MXBean through its interface
+    exports se223.audioconverter.metrics;
 }
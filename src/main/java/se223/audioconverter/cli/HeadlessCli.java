@@ -0,0 +1,409 @@
+package se223.audioconverter.cli;
+
+import se223.audioconverter.core.ConversionJob;
+import se223.audioconverter.core.ProgressAggregator;
+import se223.audioconverter.exception.ValidationException;
+import se223.audioconverter.model.*;
+import se223.audioconverter.service.ConversionService;
+import se223.audioconverter.util.ArchiveReader;
+import se223.audioconverter.util.DebugLogger;
+import se223.audioconverter.util.FolderScanner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Batch conversion without a display: drives {@link ConversionService} directly and never loads
+ * JavaFX, so it also runs with only this module on the module path. Inputs are files, folders and
+ * archives (scanned like a drop onto the window), glob patterns, or list files; everything printed
+ * to stdout is one JSON object per line (see {@link #USAGE}).
+ * <p>
+ * Exit status: 0 when every output succeeded (skipped and up-to-date count), 1 when any failed or
+ * was cancelled, 2 for bad arguments, no inputs, or a batch that failed validation.
+ */
+public final class HeadlessCli {
+
+    static final String USAGE = """
+            usage: HeadlessCli -f FORMAT[,FORMAT...] [options] INPUT...
+              INPUT               file, folder or .zip/.tar archive, or a glob such as 'music/**/*.flac'
+              -l, --list FILE     read more inputs from FILE, one per line ('-' reads stdin)
+              -o, --output DIR    output folder, created if missing (default: next to each input)
+              -f, --format F      mp3, wav, m4a or flac; several give one output per format
+              -b, --bitrate KBPS  mp3/m4a bitrate (default 192)
+              -r, --rate HZ       sample rate (default 44100)
+                  --mono          one channel instead of two
+                  --bit-depth N   wav sample size: 8, 16, 24 or 32 (default 16)
+                  --overwrite P   rename, skip, overwrite or incremental (default rename)
+                  --order P       fifo, longest_first or shortest_first (default fifo)
+                  --depth N       folder levels to descend into (default 16)
+                  --stream        report each result as soon as it finishes, not in input order
+                  --progress MS   progress line interval, 0 for none (default 1000)
+            stdout events: start, error, progress, result, summary""";
+
+    private static final int SCAN_BATCH = 500;
+
+    private HeadlessCli() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /** Runs one batch and returns the exit status. */
+    static int run(String[] args) {
+        return run(args, ConversionService::getInstance, System.out);
+    }
+
+    /** Same, on the service {@code services} gives once the arguments are good, printing to {@code stdout}. */
+    static int run(String[] args, Supplier<ConversionService> services, PrintStream stdout) {
+        if (Arrays.asList(args).contains("-h") || Arrays.asList(args).contains("--help")) {
+            stdout.println(USAGE);
+            return 0;
+        }
+        DebugLogger.setEnabled(false); // it writes to stdout, which carries only JSON here
+        JsonLines out = new JsonLines(stdout);
+        Options opts;
+        List<ConversionRequest> requests;
+        try {
+            opts = Options.parse(args);
+            requests = buildRequests(opts);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (requests.isEmpty()) {
+            out.emit("error", "message", "No input files found");
+            return 2;
+        }
+
+        ConversionService service = services.get();
+        out.emit("start", "requests", requests.size(),
+                "outputs", requests.stream().mapToInt(r -> r.targets().size()).sum(),
+                "order", opts.order.name(), "ffmpeg", service.isUsingFFmpeg());
+        long started = System.nanoTime();
+        ProgressAggregator progress = new ProgressAggregator(requests.size());
+        Tally tally = new Tally();
+        ScheduledExecutorService ticker = startTicker(out, progress, opts.progressMillis);
+        try {
+            if (opts.stream) stream(service, requests, progress, out, tally);
+            else batch(service, requests, progress, opts.order, out, tally);
+        } finally {
+            ticker.shutdownNow();
+            service.close();
+        }
+        out.emit("summary", "ok", tally.ok, "failed", tally.failed, "skipped", tally.skipped,
+                "cancelled", tally.cancelled, "seconds", Math.round((System.nanoTime() - started) / 1e6) / 1e3);
+        return tally.invalid ? 2 : tally.failed + tally.cancelled == 0 ? 0 : 1;
+    }
+
+    /** Whole batch: validated up front, scheduled by policy, results printed in request order. */
+    private static void batch(ConversionService service, List<ConversionRequest> requests, ProgressAggregator progress,
+                              SchedulingPolicy order, JsonLines out, Tally tally) {
+        ConversionJob job = service.convert(requests, progress, order);
+        Thread hook = onInterrupt(() -> { // kill the running ffmpeg processes, let jobs report
+            job.cancel(true);
+            try {
+                job.get(10, TimeUnit.SECONDS);
+            } catch (Exception ignored) {
+                // exiting anyway
+            }
+        });
+        try {
+            job.join().forEach(r -> result(out, tally, r));
+        } catch (CompletionException | CancellationException e) {
+            failure(out, tally, e.getCause() != null ? e.getCause() : e);
+        } finally {
+            removeHook(hook);
+        }
+    }
+
+    /** Streamed: requests are pulled, validated and converted a few at a time; results print as they finish. */
+    private static void stream(ConversionService service, List<ConversionRequest> requests, ProgressAggregator progress,
+                               JsonLines out, Tally tally) {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        Thread hook = onInterrupt(() -> { // cancelling the subscription kills the running ffmpeg processes
+            Flow.Subscription s = subscription.get();
+            if (s != null) s.cancel();
+        });
+        service.convertStream(requests, progress).subscribe(new Flow.Subscriber<>() {
+            @Override public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(Long.MAX_VALUE);
+            }
+            @Override public void onNext(ConversionResult r) { result(out, tally, r); }
+            @Override public void onError(Throwable t) {
+                failure(out, tally, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                done.countDown();
+            }
+            @Override public void onComplete() { done.countDown(); }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            removeHook(hook);
+        }
+    }
+
+    /** Ctrl-C (or any other orderly JVM exit) runs {@code cancel} before the process ends. */
+    private static Thread onInterrupt(Runnable cancel) {
+        Thread hook = new Thread(cancel, "cli-cancel");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private static void removeHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException ignored) {
+            // already shutting down
+        }
+    }
+
+    private static void result(JsonLines out, Tally tally, ConversionResult r) {
+        tally.count(r.getStatus());
+        out.emit("result", "input", r.getInput().toString(), "output", r.getOutput() == null ? null : r.getOutput().toString(),
+                "status", r.getStatus().name(), "strategy", r.getStrategy() == null ? null : r.getStrategy().name(),
+                "message", r.getMessage());
+    }
+
+    private static void failure(JsonLines out, Tally tally, Throwable t) {
+        if (t instanceof ValidationException v) {
+            tally.invalid = true;
+            for (ConversionError e : v.getReport().errors()) out.emit("error", "file", e.fileName(), "message", e.message());
+        } else {
+            tally.failed++;
+            out.emit("error", "message", String.valueOf(t.getMessage()));
+        }
+    }
+
+    private static ScheduledExecutorService startTicker(JsonLines out, ProgressAggregator progress, long millis) {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cli-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        if (millis <= 0) return ticker;
+        ProgressAggregator.Snapshot[] last = { null };
+        ticker.scheduleAtFixedRate(() -> {
+            ProgressAggregator.Snapshot s = progress.snapshot();
+            if (s.started() == 0 || s.equals(last[0])) return;
+            last[0] = s;
+            out.emit("progress", "overall", Math.round(s.overall() * 1000) / 1000.0, "started", s.started(),
+                    "finished", s.finished(), "total", s.total(), "file", s.latestFile());
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return ticker;
+    }
+
+    // ---- inputs ----
+
+    /** One request per input file or archive entry; several formats make it a multi-target request. */
+    static List<ConversionRequest> buildRequests(Options opts) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        List<Path> roots = new ArrayList<>(); // folders and archives, for the scanner
+        for (String arg : opts.inputs) expand(arg, files, roots);
+        for (String list : opts.lists) {
+            for (String line : readList(list)) {
+                String s = line.strip();
+                if (!s.isEmpty() && !s.startsWith("#")) expand(s, files, roots);
+            }
+        }
+
+        List<ArchiveEntry> entries = new ArrayList<>();
+        if (!roots.isEmpty()) {
+            // callbacks are serialized by the scanner
+            FolderScanner scanner = new FolderScanner(FolderScanner.AUDIO_EXTENSIONS, opts.depth, SCAN_BATCH);
+            scanner.scan(roots, files::addAll, entries::addAll).done().join();
+        }
+
+        if (opts.output != null) Files.createDirectories(opts.output);
+        List<ConversionSettings> targets = opts.formats.stream().map(opts::settings).toList();
+        boolean multi = targets.size() > 1;
+        List<ConversionRequest> requests = new ArrayList<>(files.size() + entries.size());
+        for (Path f : files) {
+            Path dir = opts.output != null ? opts.output : f.toAbsolutePath().getParent();
+            requests.add(multi ? new MultiTargetRequest(f, dir, targets) : new ConversionRequest(f, dir, targets.get(0)));
+        }
+        for (ArchiveEntry e : entries) {
+            Path dir = opts.output != null ? opts.output : e.archive().toAbsolutePath().getParent();
+            requests.add(multi ? new MultiTargetRequest(e, dir, targets) : new ConversionRequest(e, dir, targets.get(0)));
+        }
+        return requests;
+    }
+
+    /** Files go to {@code files}; folders and archives to {@code roots}; globs are matched here. */
+    private static void expand(String arg, Set<Path> files, List<Path> roots) throws IOException {
+        if (!isGlob(arg)) {
+            Path p = Path.of(arg).toAbsolutePath().normalize();
+            if (Files.isDirectory(p) || ArchiveReader.isArchive(p)) roots.add(p);
+            else files.add(p); // a missing file is reported by validation
+            return;
+        }
+        // the pattern starts at the first path segment holding a glob character
+        String norm = arg.replace(java.io.File.separatorChar, '/');
+        int slash = norm.lastIndexOf('/', firstGlobChar(norm));
+        Path base = slash < 0 ? Path.of(".") : Path.of(slash == 0 ? "/" : norm.substring(0, slash));
+        String pattern = norm.substring(slash + 1);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + anyDepth(pattern));
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+        if (!Files.isDirectory(base)) return;
+        try (Stream<Path> found = Files.find(base, depth,
+                (p, a) -> a.isRegularFile() && matcher.matches(base.relativize(p)))) {
+            found.sorted().forEach(p -> {
+                Path abs = p.toAbsolutePath().normalize();
+                if (ArchiveReader.isArchive(abs)) roots.add(abs);
+                else files.add(abs);
+            });
+        }
+    }
+
+    /**
+     * Lets each {@code **}{@code /} also match no folder at all, as shells do: {@code **}{@code /*.flac}
+     * then takes the files right under the base too. Left alone inside a {@code {...}} group, which cannot nest.
+     */
+    static String anyDepth(String pattern) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 8);
+        int group = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                sb.append(c).append(pattern.charAt(++i));
+                continue;
+            }
+            if (c == '{') group++;
+            else if (c == '}') group = Math.max(0, group - 1);
+            if (group == 0 && pattern.startsWith("**/", i) && (i == 0 || pattern.charAt(i - 1) == '/')) {
+                sb.append("{**/,}");
+                i += 2;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isGlob(String s) {
+        return firstGlobChar(s) < s.length();
+    }
+
+    private static int firstGlobChar(String s) {
+        for (int i = 0; i < s.length(); i++) if ("*?[{".indexOf(s.charAt(i)) >= 0) return i;
+        return s.length();
+    }
+
+    private static List<String> readList(String list) throws IOException {
+        if (!list.equals("-")) return Files.readAllLines(Path.of(list));
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        return in.lines().toList();
+    }
+
+    // ---- options ----
+
+    static final class Options {
+        final List<String> inputs = new ArrayList<>();
+        final List<String> lists = new ArrayList<>();
+        final List<AudioFormat> formats = new ArrayList<>();
+        Path output;
+        Integer bitrate;
+        int rate = 44_100;
+        Channels channels = Channels.STEREO;
+        int bitDepth = 16;
+        OverwritePolicy overwrite = OverwritePolicy.RENAME;
+        SchedulingPolicy order = SchedulingPolicy.FIFO;
+        int depth = 16;
+        boolean stream;
+        long progressMillis = 1000;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String a = args[i];
+                if (!a.startsWith("-") || a.equals("-")) {
+                    o.inputs.add(a);
+                    continue;
+                }
+                switch (a) {
+                    case "-f", "--format" -> {
+                        for (String f : value(args, ++i, a).split(",")) {
+                            AudioFormat format = parseEnum(AudioFormat.class, f, a);
+                            if (!o.formats.contains(format)) o.formats.add(format);
+                        }
+                    }
+                    case "-o", "--output" -> o.output = Path.of(value(args, ++i, a)).toAbsolutePath().normalize();
+                    case "-l", "--list" -> o.lists.add(value(args, ++i, a));
+                    case "-b", "--bitrate" -> o.bitrate = parseInt(value(args, ++i, a), a);
+                    case "-r", "--rate" -> o.rate = parseInt(value(args, ++i, a), a);
+                    case "--mono" -> o.channels = Channels.MONO;
+                    case "--bit-depth" -> o.bitDepth = parseInt(value(args, ++i, a), a);
+                    case "--overwrite" -> o.overwrite = parseEnum(OverwritePolicy.class, value(args, ++i, a), a);
+                    case "--order" -> o.order = parseEnum(SchedulingPolicy.class, value(args, ++i, a), a);
+                    case "--depth" -> o.depth = parseInt(value(args, ++i, a), a);
+                    case "--stream" -> o.stream = true;
+                    case "--progress" -> o.progressMillis = parseInt(value(args, ++i, a), a);
+                    default -> throw new IllegalArgumentException("Unknown option: " + a);
+                }
+            }
+            if (o.formats.isEmpty()) throw new IllegalArgumentException("No output format given (-f)");
+            if (o.inputs.isEmpty() && o.lists.isEmpty()) throw new IllegalArgumentException("No inputs given");
+            return o;
+        }
+
+        ConversionSettings settings(AudioFormat format) {
+            ConversionSettings s = new ConversionSettings();
+            s.setFormat(format);
+            s.setSampleRateHz(rate);
+            s.setChannels(channels);
+            s.setBitDepth(bitDepth);
+            s.setOverwritePolicy(overwrite);
+            s.setBitrateKbps(format == AudioFormat.MP3 || format == AudioFormat.M4A ? bitrate : null);
+            return s;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+            return args[i];
+        }
+
+        private static int parseInt(String s, String option) {
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + option + ": " + s);
+            }
+        }
+
+        private static <E extends Enum<E>> E parseEnum(Class<E> type, String s, String option) {
+            try {
+                return Enum.valueOf(type, s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown value for " + option + ": " + s);
+            }
+        }
+    }
+
+    /** Result counts; updated by whichever thread prints results, one result at a time. */
+    private static final class Tally {
+        int ok, failed, skipped, cancelled;
+        boolean invalid;
+
+        void count(ResultStatus status) {
+            switch (status) {
+                case OK -> ok++;
+                case SKIPPED, UP_TO_DATE -> skipped++;
+                case CANCELLED -> cancelled++;
+                default -> failed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package se223.audioconverter.cli;
+
+import java.io.PrintStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes one flat JSON object per line, e.g. {@code {"event":"result","status":"OK"}}. Lines from
+ * the progress ticker and from result callbacks never interleave; each is flushed as written.
+ */
+final class JsonLines {
+    private final PrintStream out;
+    private final ReentrantLock lock = new ReentrantLock(); // writers include virtual threads
+
+    JsonLines(PrintStream out) { this.out = out; }
+
+    /** {@code keysAndValues} alternate: a key, then a String, Number, Boolean or null. */
+    void emit(String event, Object... keysAndValues) {
+        StringBuilder sb = new StringBuilder(128).append("{\"event\":");
+        quote(sb, event);
+        for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+            sb.append(',');
+            quote(sb, (String) keysAndValues[i]);
+            sb.append(':');
+            Object v = keysAndValues[i + 1];
+            if (v == null) sb.append("null");
+            else if (v instanceof Number || v instanceof Boolean) sb.append(v);
+            else quote(sb, v.toString());
+        }
+        sb.append('}');
+        lock.lock();
+        try {
+            out.println(sb);
+            out.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -1,9 +1,13 @@
 package se223.audioconverter.controller;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.DragEvent;
@@ -12,15 +16,24 @@ import javafx.scene.input.TransferMode;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import se223.audioconverter.core.ProgressCallback;
+import javafx.util.Duration;
+import se223.audioconverter.core.ConversionJob;
+import se223.audioconverter.core.ProgressAggregator;
 import se223.audioconverter.model.*;
 import se223.audioconverter.service.ConversionService;
+import se223.audioconverter.util.ArchiveReader;
+import se223.audioconverter.util.FolderScanner;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.prefs.Preferences;
@@ -30,6 +43,7 @@ public class MainController {
     // Left panel
     @FXML private ListView<String> fileListView;
     @FXML private Button convertButton;
+    @FXML private Button cancelButton;
     @FXML private ProgressBar progressBar;
     @FXML private Label statusLabel;
 
@@ -44,6 +58,7 @@ public class MainController {
     @FXML private Label bitrateValueLabel;
 
     @FXML private ComboBox<OverwritePolicy> overwriteCombo;
+    @FXML private ComboBox<SchedulingPolicy> schedulingCombo;
 
     @FXML private Label concurrencyLabel;
 
@@ -60,59 +75,74 @@ public class MainController {
 
     // Track whether a conversion is running; used to disable UI via binding
     private final BooleanProperty converting = new SimpleBooleanProperty(false);
+    private ConversionJob currentJob; // the batch Cancel stops; null when idle or still being submitted
+    private boolean cancelBeforeStart;  // Cancel pressed while the batch was still being validated and queued
+
+    // set on the FX thread once ffmpeg discovery is done; until then every service call that needs the converter would block
+    private final BooleanProperty backendReady = new SimpleBooleanProperty(false);
+
+    // folder ingestion runs in the background; Cancel stops it too
+    private final BooleanProperty scanning = new SimpleBooleanProperty(false);
+    private FolderScanner.Scan currentScan;
+    private final Set<String> queued = new HashSet<>(); // mirrors the list for O(1) duplicate checks
+    private final Map<String, ArchiveEntry> archiveEntries = new HashMap<>(); // list items that live inside an archive
 
     //only warn once per app run
     private static final AtomicBoolean FF_WARN_SHOWN = new AtomicBoolean(false);
 
-    private static final Set<String> ALLOWED =
-            Set.of("mp3","wav","m4a","flac","aac","ogg","mp4","m4b");
+    private static final Set<String> ALLOWED = FolderScanner.AUDIO_EXTENSIONS;
 
     private final Preferences prefs = Preferences.userNodeForPackage(MainController.class);
     private static final String KEY_LAST_OUT = "lastOutputDir";
+    private static final String KEY_SCAN_DEPTH = "folderScanDepth"; // subfolder levels to descend into
+    private static final int DEFAULT_SCAN_DEPTH = 16;
+
+    // progress is polled at this rate, however many jobs report and however often
+    private static final Duration PROGRESS_FRAME = Duration.millis(100);
+    private Timeline progressTicker;
 
     @FXML
     private void initialize() {
-        if (!service.isUsingFFmpeg() && FF_WARN_SHOWN.compareAndSet(false, true)) {
-            Alert a = new Alert(Alert.AlertType.WARNING);
-            a.setTitle("FFmpeg not found");
-            a.setHeaderText("FFmpeg/ffprobe not detected");
-            a.setContentText(
-                    """
-                    Conversions will run in MOCK mode (no real audio processing).
-                    
-                    To enable real conversion, do one of the following:
-                    • Put ffmpeg.exe and ffprobe.exe in ./ffmpeg/bin next to the app
-                    • OR add FFmpeg to your PATH
-                    • OR set the FFMPEG_HOME environment variable to your FFmpeg folder
-                    
-                    (You only see this once per run.)
-                    """);
-            a.show();
-        }
+        // ffmpeg is looked for off the FX thread; the warning and worker count follow once it is known
+        service.ready().thenRun(() -> Platform.runLater(() -> {
+            backendReady.set(true);
+            warnIfNoFFmpeg();
+            updateWorkersLabel();
+        }));
 
         // list setup
         fileListView.setCellFactory(lv -> new ListCell<>() {
             @Override protected void updateItem(String path, boolean empty) {
                 super.updateItem(path, empty);
                 setText(empty || path == null ? null : Path.of(path).getFileName().toString());
-                setTooltip(empty || path == null ? null : new Tooltip(path));
+                // cached metadata only; probing happens in warmMediaInfo()
+                setTooltip(empty || path == null ? null : new Tooltip(path + service.getMediaCache()
+                        .peek(Path.of(path)).map(a -> "\n" + a.summary()).orElse("")));
             }
         });
         // multiple selection
         fileListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         fileListView.setOnMouseClicked(e -> { if (e.getClickCount() == 2) handleOpenFile(); });
+        fileListView.getItems().addListener((ListChangeListener<String>) c -> {
+            while (c.next()) {
+                queued.removeAll(c.getRemoved());
+                c.getRemoved().forEach(archiveEntries::remove);
+                queued.addAll(c.getAddedSubList());
+            }
+        });
 
-        // disable Convert when list empty OR while converting
+        // disable Convert when list empty, while ffmpeg is still being looked for OR while converting / scanning
         convertButton.disableProperty().bind(
-                Bindings.or(Bindings.isEmpty(fileListView.getItems()), converting)
+                Bindings.or(Bindings.isEmpty(fileListView.getItems()), converting.or(scanning).or(backendReady.not()))
         );
-
-        int workers = Math.max(2, Runtime.getRuntime().availableProcessors()/2);
-        if (concurrencyLabel != null) concurrencyLabel.setText("Workers: " + workers);
+        if (cancelButton != null) cancelButton.disableProperty().bind(converting.or(scanning).not());
 
         overwriteCombo.getItems().setAll(OverwritePolicy.values());
         overwriteCombo.getSelectionModel().select(OverwritePolicy.RENAME);
 
+        schedulingCombo.getItems().setAll(SchedulingPolicy.values());
+        schedulingCombo.getSelectionModel().select(SchedulingPolicy.LONGEST_FIRST);
+
         // sample rates
         sampleRateCombo.getItems().setAll(8000, 11025, 16000, 22050, 32000, 44100, 48000, 88200, 96000);
         sampleRateCombo.getSelectionModel().select(Integer.valueOf(8000));
@@ -150,14 +180,11 @@ public class MainController {
         chooser.setTitle("Choose audio files");
         chooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter("Audio",
-                        "*.mp3","*.wav","*.m4a","*.flac","*.aac","*.ogg","*.mp4")
+                        "*.mp3","*.wav","*.m4a","*.flac","*.aac","*.ogg","*.mp4","*.zip","*.tar")
         );
         Stage stage = (Stage) fileListView.getScene().getWindow();
         List<File> files = chooser.showOpenMultipleDialog(stage);
-        if (files != null) {
-            files.forEach(this::tryAddFileOrFolder);
-            updateStatusCount();
-        }
+        if (files != null) addFilesAndFolders(files);
     }
 
     @FXML private void handleDeleteSelected() {
@@ -184,7 +211,7 @@ public class MainController {
     // ---- Drag & drop on ListView ----
     @FXML private void handleDragOver(DragEvent e) {
         Dragboard db = e.getDragboard();
-        if (db.hasFiles() && db.getFiles().stream().anyMatch(this::isAllowed)) {
+        if (db.hasFiles() && db.getFiles().stream().anyMatch(f -> f.isDirectory() || isAllowed(f))) {
             e.acceptTransferModes(TransferMode.COPY);
         }
         e.consume();
@@ -194,9 +221,8 @@ public class MainController {
         Dragboard db = e.getDragboard();
         boolean ok = false;
         if (db.hasFiles()) {
-            db.getFiles().forEach(this::tryAddFileOrFolder);
+            addFilesAndFolders(db.getFiles());
             ok = true;
-            updateStatusCount();
         }
         e.setDropCompleted(ok);
         e.consume();
@@ -287,6 +313,7 @@ public class MainController {
     // ---- Convert using Mock service for now ----
     @FXML
     private void handleConvert() {
+        if (!backendReady.get()) return; // the button is disabled until then; service.convert would block this thread
         if (fileListView.getItems().isEmpty()) {
             new Alert(Alert.AlertType.WARNING, "No files selected.").showAndWait();
             return;
@@ -336,35 +363,70 @@ public class MainController {
         }
 
 
-        // Build requests
+        // Build requests; archive entries are converted straight out of their archive
         List<ConversionRequest> requests = fileListView.getItems().stream()
-                .map(Path::of)
-                .map(p -> new ConversionRequest(p, outDir, settings))
+                .map(s -> archiveEntries.containsKey(s)
+                        ? new ConversionRequest(archiveEntries.get(s), outDir, settings)
+                        : new ConversionRequest(Path.of(s), outDir, settings))
                 .collect(Collectors.toList());
 
-        // Progress callback
-        ProgressCallback cb = (fileName, progress, index, total) -> Platform.runLater(() -> {
-            // overall progress across all files
-            double overall = ((index - 1) + progress) / total;
-            progressBar.setProgress(overall);
+        SchedulingPolicy policy = schedulingCombo.getValue() == null ? SchedulingPolicy.FIFO : schedulingCombo.getValue();
+        String order = policy.name().toLowerCase().replace('_', ' ');
 
+        // Progress: jobs write into the aggregator; the UI reads a snapshot once per frame
+        ProgressAggregator cb = new ProgressAggregator(requests.size());
+        progressTicker = new Timeline(new KeyFrame(PROGRESS_FRAME, e -> {
+            ProgressAggregator.Snapshot s = cb.snapshot();
+            if (s.started() == 0) return;
+            progressBar.setProgress(s.overall());
             if (statusLabel != null) {
-                int percent = (int) Math.round(overall * 100);
-                statusLabel.setText("Processing " + index + "/" + total + " — " + percent + "% (" + fileName + ")");
+                int percent = (int) Math.round(s.overall() * 100);
+                statusLabel.setText("Processing " + s.started() + "/" + s.total() + " [" + order + "] — "
+                        + percent + "% (" + s.latestFile() + ")");
             }
-        });
+            updateWorkersLabel(); // the pool resizes itself while the batch runs
+        }));
+        progressTicker.setCycleCount(Animation.INDEFINITE);
 
         // Fire it (service returns a CompletableFuture; errors surface in exceptionally)
         converting.set(true);
         progressBar.setProgress(0);
-        if (statusLabel != null) statusLabel.setText("Starting…");
+        if (statusLabel != null) statusLabel.setText("Starting… (" + order + ")");
+        progressTicker.play();
+
+        // validation and routing touch every input (the PCM path opens each .wav header): not on this thread
+        currentJob = null;
+        cancelBeforeStart = false;
+        Thread.ofVirtual().name("convert-submit").start(() -> {
+            ConversionJob job;
+            try {
+                job = service.convert(requests, cb, policy);
+            } catch (RuntimeException e) {
+                job = ConversionJob.failed(e);
+            }
+            ConversionJob submitted = job;
+            Platform.runLater(() -> {
+                currentJob = submitted;
+                if (cancelBeforeStart) submitted.cancel(true);
+            });
+            whenConverted(submitted);
+        });
+    }
 
-        service.convert(requests, cb)
+    /** Reports a batch's outcome on the FX thread once it completes. */
+    private void whenConverted(ConversionJob job) {
+        job
                 .thenAccept(results -> Platform.runLater(() -> {
+                    progressTicker.stop();
                     progressBar.setProgress(1.0);
                     long ok = results.stream().filter(ConversionResult::isSuccess).count();
-                    long fail = results.size() - ok;
-                    if (statusLabel != null) statusLabel.setText("Done: " + ok + " ok, " + fail + " failed");
+                    long cancelled = results.stream().filter(r -> r.getStatus() == ResultStatus.CANCELLED).count();
+                    long fail = results.size() - ok - cancelled;
+                    long upToDate = results.stream().filter(ConversionResult::isCacheHit).count();
+                    if (statusLabel != null) statusLabel.setText("Done: " + ok + " ok, " + fail + " failed"
+                            + (cancelled > 0 ? ", " + cancelled + " cancelled" : "")
+                            + (upToDate > 0 ? " (" + upToDate + " up to date)" : ""));
+                    updateWorkersLabel();
 
                     String msg = results.stream()
                             .map(r -> (r.isSuccess() ? "✅ " : "❌ ")
@@ -372,11 +434,12 @@ public class MainController {
                                     + (r.getMessage()!=null? " (" + r.getMessage() + ")" : ""))
                             .reduce("", (a,b) -> a + b + "\n");
 
-                    new Alert(Alert.AlertType.INFORMATION, msg).showAndWait();
                     converting.set(false);
+                    new Alert(Alert.AlertType.INFORMATION, msg).showAndWait();
                 }))
                 .exceptionally(ex -> {
                     Platform.runLater(() -> {
+                        progressTicker.stop();
                         new Alert(Alert.AlertType.ERROR, ex.getMessage()).showAndWait();
                         if (statusLabel != null) statusLabel.setText("Failed");
                         converting.set(false);
@@ -385,26 +448,78 @@ public class MainController {
                 });
     }
 
+    @FXML
+    private void handleCancel() {
+        if (scanning.get() && currentScan != null) {
+            currentScan.cancel();
+            return;
+        }
+        ConversionJob job = currentJob;
+        if (job == null && converting.get()) {
+            cancelBeforeStart = true; // applied as soon as the batch is queued
+            if (statusLabel != null) statusLabel.setText("Cancelling…");
+        } else if (job != null && job.cancel(true) && statusLabel != null) {
+            statusLabel.setText("Cancelling…");
+        }
+    }
+
     // ---- Helpers ----
     private boolean isAllowed(File f) {
         String name = f.getName().toLowerCase();
         int dot = name.lastIndexOf('.');
-        return dot > 0 && ALLOWED.contains(name.substring(dot + 1));
+        return dot > 0 && ALLOWED.contains(name.substring(dot + 1)) || ArchiveReader.isArchive(f.toPath());
     }
 
     private void tryAddFile(File f) {
         if (isAllowed(f)) {
             String p = f.getAbsolutePath();
-            if (!fileListView.getItems().contains(p)) fileListView.getItems().add(p);
+            if (!queued.contains(p)) fileListView.getItems().add(p);
         }
     }
 
+    /** Only once {@link #backendReady}: before that, isUsingFFmpeg blocks. */
+    private void warnIfNoFFmpeg() {
+        if (!service.isUsingFFmpeg() && FF_WARN_SHOWN.compareAndSet(false, true)) {
+            Alert a = new Alert(Alert.AlertType.WARNING);
+            a.setTitle("FFmpeg not found");
+            a.setHeaderText("FFmpeg/ffprobe not detected");
+            a.setContentText(
+                    """
+                    WAV to WAV conversions run in-process; all other formats run in MOCK mode (no real audio processing).
+                    
+                    To enable real conversion, do one of the following:
+                    • Put ffmpeg.exe and ffprobe.exe in ./ffmpeg/bin next to the app
+                    • OR add FFmpeg to your PATH
+                    • OR set the FFMPEG_HOME environment variable to your FFmpeg folder
+                    
+                    (You only see this once per run.)
+                    """);
+            a.show();
+        }
+    }
+
+    private void updateWorkersLabel() {
+        if (!backendReady.get()) return; // the ready callback sets it first
+        if (concurrencyLabel != null) concurrencyLabel.setText("Workers: " + service.getConverter().getWorkerCount());
+    }
+
     private void updateStatusCount() {
         if (statusLabel != null) {
             statusLabel.setText(fileListView.getItems().size() + " file(s) queued");
         }
     }
 
+    /** Probe queued files missing from the media cache in the background, then refresh tooltips. */
+    private void warmMediaInfo() {
+        List<Path> paths = fileListView.getItems().stream()
+                .filter(s -> !archiveEntries.containsKey(s)) // entries are never probed
+                .map(Path::of).toList();
+        service.ready().thenRunAsync(() -> {
+                    if (service.isUsingFFmpeg()) service.getMediaCache().warm(paths);
+                })
+                .thenRun(() -> Platform.runLater(fileListView::refresh));
+    }
+
     private int nearestSampleRateHz(double sliderValKHz) {
         // Convert from kHz to Hz, rounding to nearest standard rate
         int hz = (int) Math.round(sliderValKHz * 1000);
@@ -419,16 +534,44 @@ public class MainController {
         return nearest;
     }
 
-    private void tryAddFileOrFolder(File f) {
-        if (f.isDirectory()) {
-            try {
-                Files.walk(f.toPath(), 1)
-                        .filter(p -> Files.isRegularFile(p))
-                        .map(Path::toFile)
-                        .forEach(this::tryAddFile);
-            } catch (Exception ignored) {}
-        } else {
-            tryAddFile(f);
+    /** Adds files right away; folders and archives are scanned in the background and stream in. */
+    private void addFilesAndFolders(List<File> files) {
+        List<Path> folders = new ArrayList<>();
+        for (File f : files) {
+            if (f.isDirectory() || ArchiveReader.isArchive(f.toPath())) folders.add(f.toPath());
+            else tryAddFile(f);
+        }
+        if (folders.isEmpty() || scanning.get()) {
+            if (!folders.isEmpty()) new Alert(Alert.AlertType.WARNING, "A folder is still being scanned.").showAndWait();
+            updateStatusCount();
+            warmMediaInfo();
+            return;
         }
+
+        var scanner = new FolderScanner(ALLOWED, prefs.getInt(KEY_SCAN_DEPTH, DEFAULT_SCAN_DEPTH), 500);
+        scanning.set(true);
+        if (statusLabel != null) statusLabel.setText("Scanning…");
+        currentScan = scanner.scan(folders, batch -> Platform.runLater(() -> {
+            List<String> fresh = new ArrayList<>(batch.size());
+            for (Path p : batch) {
+                String s = p.toString();
+                if (!queued.contains(s)) fresh.add(s);
+            }
+            fileListView.getItems().addAll(fresh); // one list change per batch
+            if (statusLabel != null) statusLabel.setText("Scanning… " + fileListView.getItems().size() + " file(s) queued");
+        }), entries -> Platform.runLater(() -> {
+            List<String> fresh = new ArrayList<>(entries.size());
+            for (ArchiveEntry entry : entries) {
+                String s = entry.toString();
+                if (!queued.contains(s) && archiveEntries.putIfAbsent(s, entry) == null) fresh.add(s);
+            }
+            fileListView.getItems().addAll(fresh);
+        }));
+        currentScan.done().whenComplete((n, ex) -> Platform.runLater(() -> {
+            // queued after the last batch's runLater, so the list is complete here
+            scanning.set(false);
+            updateStatusCount();
+            warmMediaInfo();
+        }));
     }
 }
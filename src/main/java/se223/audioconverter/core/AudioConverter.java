@@ -3,16 +3,38 @@ package se223.audioconverter.core;
 import se223.audioconverter.exception.ConversionException;
 import se223.audioconverter.model.ConversionRequest;
 import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.SchedulingPolicy;
 
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 public interface AudioConverter extends AutoCloseable {
 
-    CompletableFuture<List<ConversionResult>> convertAll(
+    /** Starts the batch; cancelling the returned job stops it and reports unfinished work as CANCELLED. */
+    ConversionJob convertAll(
             List<ConversionRequest> requests,
             ProgressCallback progress) throws ConversionException;
 
+    /** Same, starting jobs in the given order; converters without a job queue keep list order. */
+    default ConversionJob convertAll(
+            List<ConversionRequest> requests,
+            ProgressCallback progress,
+            SchedulingPolicy policy) throws ConversionException {
+        return convertAll(requests, progress);
+    }
+
+    /**
+     * Streams results as jobs finish (completion order), pulling requests only as subscriber
+     * demand allows, so memory stays flat however long {@code requests} is.
+     * Cancelling the subscription cancels the running jobs.
+     */
+    Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests,
+            ProgressCallback progress);
+
+    /** How many jobs currently run in parallel; may change between batches or during one. */
+    int getWorkerCount();
+
     /** Default no-op; concrete converters can override to release resources. */
     @Override
     default void close() {
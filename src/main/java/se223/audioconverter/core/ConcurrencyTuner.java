@@ -0,0 +1,82 @@
+package se223.audioconverter.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides how many ffmpeg jobs run at once and how many threads each may use,
+ * so that workers × threads fills the cores that other processes leave free.
+ * Per-job CPU use is learned from finished jobs (an EWMA of cpu-time / wall-time).
+ */
+public class ConcurrencyTuner {
+    private static final double SMOOTHING = 0.3;
+
+    private final int cores;
+    private final int fixedWorkers;      // > 0: never adapt
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private final ReentrantLock lock = new ReentrantLock(); // callers include virtual job threads
+
+    private volatile double cpuPerJob = 1.0;   // most audio encoders are single-threaded
+    private volatile int workers;
+    private volatile int threadsPerJob;
+
+    private ConcurrencyTuner(int cores, int fixedWorkers) {
+        this.cores = Math.max(1, cores);
+        this.fixedWorkers = fixedWorkers;
+        recalculate(0);
+    }
+
+    /** Sizes itself from load and measured job CPU use. */
+    public static ConcurrencyTuner adaptive() {
+        return new ConcurrencyTuner(Runtime.getRuntime().availableProcessors(), 0);
+    }
+
+    /** Always {@code workers} jobs; only the per-job thread budget is derived. */
+    public static ConcurrencyTuner fixed(int workers) {
+        return new ConcurrencyTuner(Runtime.getRuntime().availableProcessors(), Math.max(1, workers));
+    }
+
+    /** Starting point before anything was measured: one worker per free core. */
+    public static int defaultWorkers() {
+        return adaptive().workers();
+    }
+
+    public int workers() { return workers; }
+    public int threadsPerJob() { return threadsPerJob; }
+
+    /** Feeds one finished job's CPU time and wall time into the per-job estimate. */
+    public void recordJob(Duration cpu, Duration wall) {
+        if (cpu == null || wall.toMillis() < 200) return; // too short to say anything
+        double used = Math.min(cores, (double) cpu.toMillis() / wall.toMillis());
+        lock.lock();
+        try {
+            cpuPerJob = Math.max(0.1, SMOOTHING * used + (1 - SMOOTHING) * cpuPerJob);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Re-derives the worker count and thread budget; {@code runningJobs} are our own busy processes. */
+    public void recalculate(int runningJobs) {
+        // read before locking: it may go to /proc, and no other caller should wait on that
+        double load = os.getSystemLoadAverage(); // -1 where unsupported (Windows)
+        lock.lock();
+        try {
+            // load average counts our own ffmpeg processes too; only the rest is foreign load
+            double foreign = load < 0 ? 0 : Math.max(0, load - runningJobs * cpuPerJob);
+            double free = Math.max(1, cores - foreign);
+
+            if (fixedWorkers > 0) {
+                workers = fixedWorkers;
+            } else {
+                // I/O-bound jobs (remux) use well under a core each, so allow up to 2× cores of them
+                workers = (int) Math.max(1, Math.min(2L * cores, Math.round(free / cpuPerJob)));
+            }
+            threadsPerJob = (int) Math.max(1, Math.floor(free / workers));
+        } finally {
+            lock.unlock();
+        }
+    }
+}
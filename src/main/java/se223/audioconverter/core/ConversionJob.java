@@ -0,0 +1,58 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.ResultStatus;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handle to a running batch. Completes with one result per output like any future, but
+ * {@link #cancel(boolean)} stops the batch instead of abandoning it: running ffmpeg process
+ * trees are destroyed, queued jobs never start, and the future still completes normally
+ * with those jobs reported as {@link ResultStatus#CANCELLED}.
+ */
+public class ConversionJob extends CompletableFuture<List<ConversionResult>> {
+
+    private final Set<JobWatch> running = ConcurrentHashMap.newKeySet();
+    private final Set<ConversionJob> parts = ConcurrentHashMap.newKeySet();   // sub-batches run by other converters
+    private volatile boolean cancelRequested;
+
+    /** A batch that failed before anything was queued (e.g. validation). */
+    public static ConversionJob failed(Throwable cause) {
+        ConversionJob job = new ConversionJob();
+        job.completeExceptionally(cause);
+        return job;
+    }
+
+    public boolean isCancelRequested() { return cancelRequested; }
+
+    /** Stops the batch; returns false if it had already finished. */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) return false;
+        cancelRequested = true;
+        running.forEach(w -> w.kill(ResultStatus.CANCELLED));
+        parts.forEach(p -> p.cancel(mayInterruptIfRunning));
+        return true;
+    }
+
+    /** Tracks a started job; kills it right away if the batch was cancelled meanwhile. */
+    void started(JobWatch watch) {
+        running.add(watch);
+        if (cancelRequested) watch.kill(ResultStatus.CANCELLED);
+    }
+
+    void finished(JobWatch watch) {
+        running.remove(watch);
+    }
+
+    /** Makes a sub-batch part of this one: cancelling this batch cancels it too, until it completes. */
+    void include(ConversionJob part) {
+        parts.add(part);
+        part.whenComplete((r, ex) -> parts.remove(part));
+        if (cancelRequested) part.cancel(true);
+    }
+}
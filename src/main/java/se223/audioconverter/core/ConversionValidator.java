@@ -1,40 +1,188 @@
 package se223.audioconverter.core;
 
 import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.exception.ValidationException;
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionError;
 import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionSettings;
+import se223.audioconverter.model.ValidationReport;
 
+import java.io.IOException;
 import java.nio.file.Files;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+/**
+ * Pre-flight checks for a batch, collected into one {@link ValidationReport} instead of stopping
+ * at the first problem. Each distinct input (or archive) costs one attribute read, each distinct
+ * output directory is checked once per validator, and large batches spread the reads over
+ * virtual threads so a slow network mount is waited on in parallel.
+ */
 public class ConversionValidator {
 
+    /** Batches with fewer distinct paths than this are checked on the calling thread. */
+    private static final int PARALLEL_THRESHOLD = 64;
+    /** File system checks in flight at once. */
+    private static final int MAX_PARALLEL = 32;
+
+    private final MediaInfoCache mediaCache;
+    private final Set<String> encoders;
+    private final Predicate<ConversionRequest> inProcess;
+    private final Map<Path, Optional<ConversionError>> directories = new ConcurrentHashMap<>();
+
+    /** {@code mediaCache} may be null; with it, inputs it already knows have no audio are rejected. */
+    public ConversionValidator(MediaInfoCache mediaCache) {
+        this(mediaCache, null, req -> false);
+    }
+
+    /**
+     * Also rejects targets whose ffmpeg encoder is not in {@code encoders} (null: not checked), unless
+     * {@code inProcess} says the request never reaches ffmpeg or the cached input can be stream-copied.
+     */
+    public ConversionValidator(MediaInfoCache mediaCache, Set<String> encoders, Predicate<ConversionRequest> inProcess) {
+        this.mediaCache = mediaCache;
+        this.encoders = encoders == null ? null : Set.copyOf(encoders);
+        this.inProcess = inProcess;
+    }
+
     public static void validateRequests(List<ConversionRequest> requests) throws ConversionException {
+        validateRequests(requests, null);
+    }
+
+    /** Same checks, plus rejecting inputs the media cache already knows have no audio stream. */
+    public static void validateRequests(List<ConversionRequest> requests, MediaInfoCache mediaCache) throws ConversionException {
+        new ConversionValidator(mediaCache).validateOrThrow(requests);
+    }
+
+    /** Throws a {@link ValidationException} carrying the report unless the batch is valid. */
+    public void validateOrThrow(List<ConversionRequest> requests) throws ValidationException {
+        ValidationReport report = validate(requests);
+        if (!report.isValid()) throw new ValidationException(report);
+    }
+
+    /** Every problem of the batch; an output directory's problem is listed once, at its first request. */
+    public ValidationReport validate(List<ConversionRequest> requests) {
         if (requests == null || requests.isEmpty())
-            throw new ConversionException("No input files provided.");
+            return new ValidationReport(List.of(new ConversionError("", "No input files provided.", null)));
 
-        Set<String> seen = new HashSet<>();
+        // an archive entry is read out of its archive, which is what has to be there
+        Set<Path> sources = new LinkedHashSet<>();
+        Set<Path> newDirs = new LinkedHashSet<>();
+        for (ConversionRequest req : requests) {
+            sources.add(source(req));
+            if (!directories.containsKey(req.outputDir())) newDirs.add(req.outputDir());
+        }
+        Map<Path, ConversionError> sourceErrors = checkAll(sources, ConversionValidator::checkSource);
+        Map<Path, ConversionError> dirErrors = checkAll(newDirs, ConversionValidator::checkDirectory);
+        for (Path dir : newDirs) directories.putIfAbsent(dir, Optional.ofNullable(dirErrors.get(dir)));
 
+        List<ConversionError> errors = new ArrayList<>();
+        Set<Path> reportedDirs = new HashSet<>();
+        Set<String> reportedEncoders = new HashSet<>();
+        Set<Path> seen = new HashSet<>();
         for (ConversionRequest req : requests) {
-            if (!Files.exists(req.input()))
-                throw new ConversionException("Input file missing: " + req.input());
+            String file = req.input().getFileName().toString();
+            ConversionError sourceError = sourceErrors.get(source(req));
+            if (sourceError != null) errors.add(new ConversionError(file, sourceError.message(), sourceError.cause()));
 
-            if (!Files.isReadable(req.input()))
-                throw new ConversionException("Cannot read: " + req.input());
+            // peek only: validation must not spawn ffprobe
+            AudioFile known = mediaCache == null || req.isArchiveEntry() ? null : mediaCache.peek(req.input()).orElse(null);
+            if (known != null && !known.hasAudio())
+                errors.add(new ConversionError(file, "No audio stream in: " + file, null));
 
-            if (!Files.isDirectory(req.outputDir()) && Files.exists(req.outputDir()) && !Files.isWritable(req.outputDir()))
-                throw new ConversionException("Cannot write to output directory: " + req.outputDir());
+            directories.get(req.outputDir()).filter(e -> reportedDirs.add(req.outputDir())).ifPresent(errors::add);
 
-            if (!seen.add(req.input().toAbsolutePath().toString()))
-                throw new ConversionException("Duplicate file detected: " + req.input().getFileName());
+            if (!seen.add(req.input().toAbsolutePath().normalize()))
+                errors.add(new ConversionError(file, "Duplicate file detected: " + file, null));
 
-            if (Files.exists(req.outputDir())) {
-                if (!Files.isDirectory(req.outputDir()))
-                    throw new ConversionException("Output path is not a directory: " + req.outputDir());
-                if (!Files.isWritable(req.outputDir()))
-                    throw new ConversionException("Cannot write to: " + req.outputDir());
+            // targets of one request share a base name, so each format may appear only once
+            Set<AudioFormat> formats = EnumSet.noneOf(AudioFormat.class);
+            for (ConversionSettings target : req.targets()) {
+                if (!formats.add(target.getFormat()))
+                    errors.add(new ConversionError(file, "Duplicate target format " + target.getFormat() + " for: " + file, null));
+                if (target.getFormat() == AudioFormat.WAV && !PcmAudioConverter.isSupportedDepth(target.getBitDepth()))
+                    errors.add(new ConversionError(file,
+                            "Unsupported WAV bit depth " + target.getBitDepth() + " (use 8, 16, 24 or 32)", null));
+                // a missing encoder fails every request that needs it, so it is listed once, at the first
+                String encoder = FFmpegCommandBuilder.encoderFor(target);
+                if (encoders != null && !encoders.contains(encoder) && !reportedEncoders.contains(encoder)
+                        && !FFmpegCommandBuilder.canStreamCopy(known, target) && !inProcess.test(req)) {
+                    reportedEncoders.add(encoder);
+                    errors.add(new ConversionError(file,
+                            "FFmpeg has no " + encoder + " encoder, needed for " + target.getFormat() + ": " + file, null));
+                }
             }
         }
+        return new ValidationReport(errors);
+    }
+
+    private static Path source(ConversionRequest req) {
+        return req.isArchiveEntry() ? req.entry().archive() : req.input();
+    }
+
+    /** Runs {@code check} on every path; a large set is split into interleaved slices on virtual threads. */
+    private static Map<Path, ConversionError> checkAll(Collection<Path> paths, Function<Path, ConversionError> check) {
+        Map<Path, ConversionError> errors = new ConcurrentHashMap<>();
+        List<Path> list = List.copyOf(paths);
+        int slices = list.size() < PARALLEL_THRESHOLD ? 1 : MAX_PARALLEL;
+        Function<Integer, Runnable> slice = s -> () -> {
+            for (int i = s; i < list.size(); i += slices) {
+                ConversionError e = check.apply(list.get(i));
+                if (e != null) errors.put(list.get(i), e);
+            }
+        };
+        if (slices == 1) {
+            slice.apply(0).run();
+        } else {
+            try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) { // close() waits for all
+                for (int s = 0; s < slices; s++) pool.execute(slice.apply(s));
+            }
+        }
+        return errors;
+    }
+
+    /** One attribute read; a world-readable file needs no further access check. */
+    private static ConversionError checkSource(Path source) {
+        String file = String.valueOf(source.getFileName());
+        try {
+            BasicFileAttributes a = source.getFileSystem().supportedFileAttributeViews().contains("posix")
+                    ? Files.readAttributes(source, PosixFileAttributes.class)
+                    : Files.readAttributes(source, BasicFileAttributes.class);
+            boolean readable = a instanceof PosixFileAttributes p && p.permissions().contains(PosixFilePermission.OTHERS_READ)
+                    || Files.isReadable(source);
+            return readable ? null : new ConversionError(file, "Cannot read: " + source, null);
+        } catch (NoSuchFileException e) {
+            return new ConversionError(file, "Input file missing: " + source, e);
+        } catch (IOException e) {
+            return new ConversionError(file, "Cannot read: " + source, e);
+        }
+    }
+
+    /** Only an existing path is checked: it must be a writable directory. */
+    private static ConversionError checkDirectory(Path dir) {
+        BasicFileAttributes a;
+        try {
+            a = Files.readAttributes(dir, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            return new ConversionError(dir.toString(), "Cannot write to: " + dir, e);
+        }
+        if (!a.isDirectory())
+            return new ConversionError(dir.toString(), "Output path is not a directory: " + dir, null);
+        if (!Files.isWritable(dir))
+            return new ConversionError(dir.toString(), "Cannot write to: " + dir, null);
+        return null;
     }
 }
@@ -0,0 +1,189 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.SchedulingPolicy;
+import se223.audioconverter.util.DebugLogger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs converter jobs: every job gets its own virtual thread (cheap while it blocks on
+ * pipes and {@code waitFor}), while a separate permit count, sized by the
+ * {@link ConcurrencyTuner}, limits how many of them do real work at once. A thread that
+ * gets a permit runs whichever job the {@link JobQueue} says is next, so scheduling
+ * policy still decides the start order.
+ */
+public class ExecutionEngine implements AutoCloseable {
+
+    /** One unit of work and its expected cost (e.g. media seconds) for the scheduling policy. */
+    public record Task<T>(Supplier<T> work, double weight) { }
+
+    private final ConcurrencyTuner tuner;
+    private final JobQueue queue;
+    private final Permits permits;
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("job-", 0).factory());
+
+    public ExecutionEngine(ConcurrencyTuner tuner, Duration maxQueueDelay) {
+        this.tuner = tuner;
+        this.queue = new JobQueue(maxQueueDelay.toNanos());
+        this.permits = new Permits(tuner.workers());
+    }
+
+    public ConcurrencyTuner getTuner() { return tuner; }
+
+    /** Current permit count, i.e. jobs allowed to run at once. */
+    public int getPermits() { return permits.limit(); }
+
+    public void setMaxQueueDelay(Duration maxDelay) { queue.setMaxDelayNanos(maxDelay.toNanos()); }
+
+    /**
+     * Queues a whole batch before starting any of it, so the very first pick already sees every job.
+     * After {@link #close()} nothing is queued: every future fails with a {@link RejectedExecutionException}.
+     */
+    public <T> List<CompletableFuture<T>> submitAll(List<Task<T>> tasks, SchedulingPolicy policy) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        int queued = 0;
+        for (Task<T> task : tasks) {
+            Pending<T> job = new Pending<>(task.work());
+            if (queue.add(job, task.weight(), policy)) queued++;
+            else job.future.completeExceptionally(new RejectedExecutionException("Execution engine closed"));
+            futures.add(job.future);
+        }
+        try {
+            for (int i = 0; i < queued; i++) threads.execute(this::runNextQueued);
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile: close() has already cancelled whatever these threads would have run
+        }
+        return futures;
+    }
+
+    /** Queues and starts a single task. */
+    public <T> CompletableFuture<T> submit(Task<T> task, SchedulingPolicy policy) {
+        return submitAll(List.of(task), policy).get(0);
+    }
+
+    /** Work that finishes an already running job (e.g. its segments); starts before anything queued. */
+    public void submitUrgent(Runnable work) {
+        // once closed it is dropped: urgent work is only ever help, its owner runs it if nobody else does
+        if (!queue.addUrgent(work)) return;
+        try {
+            threads.execute(this::runNextQueued);
+        } catch (RejectedExecutionException ignored) {
+            // closed meanwhile, as above
+        }
+    }
+
+    /** Re-sizes the permit count; {@code runningJobs} are our own busy processes. */
+    public void retune(int runningJobs) {
+        tuner.recalculate(runningJobs);
+        if (permits.setLimit(tuner.workers())) {
+            DebugLogger.d("Workers: " + tuner.workers() + " × " + tuner.threadsPerJob() + " ffmpeg threads");
+        }
+    }
+
+    /** Body of every virtual thread: wait for a permit, then run what the queue says is next (threads and entries are 1:1). */
+    private void runNextQueued() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            return; // engine closed
+        }
+        try {
+            Runnable next = queue.poll();
+            if (next != null) next.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Fails every job still waiting with a {@link CancellationException}, so no caller waits for work
+     * that will never start, then interrupts the running ones.
+     */
+    @Override
+    public void close() {
+        for (Runnable r : queue.close()) {
+            if (r instanceof Pending<?> p) p.future.completeExceptionally(new CancellationException("Execution engine closed"));
+        }
+        threads.shutdownNow();
+    }
+
+    /** A queued task and the future its caller holds. */
+    private static final class Pending<T> implements Runnable {
+        final Supplier<T> work;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Pending(Supplier<T> work) { this.work = work; }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /**
+     * A counting semaphore whose size can shrink below the permits already handed out.
+     * Lock/Condition rather than monitors: a virtual thread in {@code Object.wait} pins its carrier.
+     */
+    private static final class Permits {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition freed = lock.newCondition();
+        private int limit;
+        private int inUse;
+
+        Permits(int limit) { this.limit = Math.max(1, limit); }
+
+        int limit() {
+            lock.lock();
+            try { return limit; } finally { lock.unlock(); }
+        }
+
+        /** Returns whether the limit changed; shrinking takes effect as running jobs finish. */
+        boolean setLimit(int n) {
+            lock.lock();
+            try {
+                n = Math.max(1, n);
+                if (n == limit) return false;
+                limit = n;
+                freed.signalAll();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (inUse >= limit) freed.await();
+                inUse++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inUse--;
+                freed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
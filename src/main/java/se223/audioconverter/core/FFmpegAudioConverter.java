@@ -1,28 +1,81 @@
 package se223.audioconverter.core;
 
 import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.metrics.ConversionMetrics;
 import se223.audioconverter.model.*;
 import se223.audioconverter.util.DebugLogger;
 import se223.audioconverter.util.FFmpegLocator;
-import se223.audioconverter.util.FileUtils;
-import se223.audioconverter.util.Timecode;
+import se223.audioconverter.util.OutputNameIndex;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
 
 public class FFmpegAudioConverter implements AudioConverter {
 
-    private final ExecutorService pool;
+    /** No job waits longer than this behind shorter/longer ones before it is served in arrival order. */
+    public static final Duration DEFAULT_MAX_QUEUE_DELAY = Duration.ofMinutes(30);
+    /** Inputs at least this long are split into slices (of at least a quarter of it) that encode in parallel. */
+    public static final Duration DEFAULT_SEGMENT_THRESHOLD = Duration.ofMinutes(20);
+    /** A job whose encoded position has not moved for this long is considered hung and killed. */
+    public static final Duration DEFAULT_STALL_TIMEOUT = Duration.ofMinutes(2);
+    /** At most this many tiny inputs share one ffmpeg process. */
+    public static final int DEFAULT_MICRO_BATCH_SIZE = 32;
+    /** Inputs shorter than this (expected media seconds) are worth batching: spawn cost dominates their encode. */
+    private static final double SMALL_INPUT_SECONDS = 10;
+    // reading a process's CPU total is a /proc read (a syscall elsewhere); -progress ticks are far more frequent
+    private static final long CPU_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final ExecutionEngine engine;
+    private final boolean ownsEngine;
+    private final ConcurrencyTuner tuner;
+    private final AtomicInteger running = new AtomicInteger();   // live ffmpeg processes
+    private final SegmentedEncoder segmenter;
     private final Path ffmpeg;
-    private final Path ffprobe;
+    private final MediaInfoCache mediaCache;
+    private final Map<Path, OutputManifest> manifests = new ConcurrentHashMap<>();
+    private final OutputNameIndex outputNames = OutputNameIndex.shared();
+
+    // supervision: every started job, checked once a second
+    private final Set<JobWatch> watches = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ffmpeg-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Duration segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+    private volatile Duration jobTimeout = Duration.ZERO;        // ZERO: no deadline
+    private volatile Duration stallTimeout = DEFAULT_STALL_TIMEOUT;
+    private volatile int microBatchSize = DEFAULT_MICRO_BATCH_SIZE;
+    private volatile ConversionMetrics metrics = new ConversionMetrics(); // private until setMetrics
 
     public FFmpegAudioConverter(int parallelism, Path ffmpeg, Path ffprobe) {
-        this.pool = Executors.newFixedThreadPool(parallelism);
+        this(ConcurrencyTuner.fixed(parallelism), ffmpeg, new MediaInfoCache(ffprobe, null, 10_000));
+    }
+
+    public FFmpegAudioConverter(ConcurrencyTuner tuner, Path ffmpeg, MediaInfoCache mediaCache) {
+        this(new ExecutionEngine(tuner, DEFAULT_MAX_QUEUE_DELAY), true, ffmpeg, mediaCache);
+    }
+
+    /** Runs on a shared engine, which the caller closes. */
+    public FFmpegAudioConverter(ExecutionEngine engine, Path ffmpeg, MediaInfoCache mediaCache) {
+        this(engine, false, ffmpeg, mediaCache);
+    }
+
+    private FFmpegAudioConverter(ExecutionEngine engine, boolean ownsEngine, Path ffmpeg, MediaInfoCache mediaCache) {
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        this.tuner = engine.getTuner();
         this.ffmpeg = ffmpeg;
-        this.ffprobe = ffprobe;
+        this.mediaCache = mediaCache;
+        this.segmenter = new SegmentedEncoder(ffmpeg, engine::submitUrgent);
+        watchdog.scheduleAtFixedRate(this::checkWatches, 1, 1, TimeUnit.SECONDS);
     }
 
     /** Convenience creator: tries to locate binaries. */
@@ -30,144 +83,551 @@ public class FFmpegAudioConverter implements AudioConverter {
         Path ff = FFmpegLocator.findFfmpeg().orElse(null);
         Path fp = FFmpegLocator.findFfprobe().orElse(null);
         if (ff == null || fp == null) return Optional.empty();
-        int parallel = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
-        return Optional.of(new FFmpegAudioConverter(parallel, ff, fp));
+        return Optional.of(new FFmpegAudioConverter(ConcurrencyTuner.adaptive(), ff, MediaInfoCache.createDefault(fp)));
     }
 
     @Override
-    public CompletableFuture<List<ConversionResult>> convertAll(
+    public int getWorkerCount() { return engine.getPermits(); }
+
+    public MediaInfoCache getMediaCache() { return mediaCache; }
+
+    public void setMaxQueueDelay(Duration maxDelay) { engine.setMaxQueueDelay(maxDelay); }
+
+    public void setSegmentThreshold(Duration threshold) { this.segmentThreshold = threshold; }
+
+    /** Wall-clock limit per job (all its outputs/segments); ZERO disables it. */
+    public void setJobTimeout(Duration timeout) { this.jobTimeout = timeout; }
+
+    /** Largest group of tiny inputs run by one ffmpeg process; 1 gives every file its own process. */
+    public void setMicroBatchSize(int size) { this.microBatchSize = Math.max(1, size); }
+
+    /** How long a job may go without its encoded position moving; ZERO disables the watchdog. */
+    public void setStallTimeout(Duration timeout) { this.stallTimeout = timeout; }
+
+    /** Where jobs, process spawns and encodes are counted from now on. */
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+
+    @Override
+    public ConversionJob convertAll(
             List<ConversionRequest> requests, ProgressCallback progress) throws ConversionException {
+        return convertAll(requests, progress, SchedulingPolicy.FIFO);
+    }
+
+    @Override
+    public ConversionJob convertAll(
+            List<ConversionRequest> requests, ProgressCallback progress, SchedulingPolicy policy) throws ConversionException {
 
         if (requests == null || requests.isEmpty())
             throw new ConversionException("No files to convert.");
 
-        List<CompletableFuture<ConversionResult>> futures = new ArrayList<>();
         final int total = requests.size();
+        final AtomicInteger started = new AtomicInteger();
+        final ConversionJob job = new ConversionJob();
+        retune();
+        metrics.jobsQueued(total);
+        progress.onBatchScheduled(policy, total);
+
+        double[] weights = new double[total];
+        double batchWeight = 0;
+        for (int i = 0; i < total; i++) batchWeight += weights[i] = mediaCache.estimateSeconds(requests.get(i));
+        List<List<Integer>> units = units(requests, weights, microBatchSize);
+        progress.onBatchWeight(batchWeight);
+
+        List<ExecutionEngine.Task<List<List<ConversionResult>>>> tasks = new ArrayList<>();
+        for (List<Integer> unit : units) {
+            List<ConversionRequest> reqs = unit.stream().map(requests::get).toList();
+            double weight = unit.stream().mapToDouble(i -> weights[i]).sum();
+            tasks.add(new ExecutionEngine.Task<>(() -> {
+                // progress and results carry the order jobs actually started in
+                int first = started.getAndAdd(reqs.size()) + 1;
+                ConversionMetrics m = metrics;
+                m.jobsStarted(reqs.size());
+                List<List<ConversionResult>> rs;
+                if (job.isCancelRequested()) {
+                    rs = reqs.stream().map(r -> unstarted(r, ResultStatus.CANCELLED, "Cancelled")).toList();
+                } else {
+                    for (int k = 0; k < reqs.size(); k++)
+                        progress.onJobStarted(reqs.get(k).input().getFileName().toString(), first + k, weights[unit.get(k)]);
+                    rs = reqs.size() == 1
+                            ? List.of(runOne(reqs.get(0), first - 1, total, progress, job))
+                            : runGroup(reqs, first - 1, total, progress, job);
+                }
+                List<List<ConversionResult>> scheduled = new ArrayList<>(rs.size());
+                for (int k = 0; k < rs.size(); k++) {
+                    int order = first + k;
+                    m.jobFinished(reqs.get(k), rs.get(k));
+                    scheduled.add(rs.get(k).stream().map(r -> r.withSchedule(policy, order)).toList());
+                }
+                return scheduled;
+            }, weight));
+        }
+        List<CompletableFuture<List<List<ConversionResult>>>> futures = engine.submitAll(tasks, policy);
+
+        // back to request order; a multi-target request yields one result per target, in target order
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            endBatch();
+            if (ex != null) {
+                job.completeExceptionally(ex);
+                return;
+            }
+            List<List<ConversionResult>> byRequest = new ArrayList<>(Collections.nCopies(total, List.of()));
+            for (int u = 0; u < units.size(); u++) {
+                List<List<ConversionResult>> rs = futures.get(u).join();
+                for (int k = 0; k < rs.size(); k++) byRequest.set(units.get(u).get(k), rs.get(k));
+            }
+            job.complete(byRequest.stream().flatMap(List::stream).toList());
+        });
+        return job;
+    }
 
-        for (int i = 0; i < total; i++) {
-            final int idx = i;
+    /**
+     * Each unit is one task: a single request, or a micro-batch of up to {@code batchSize} tiny
+     * single-target requests with the same settings fingerprint, sharing an ffmpeg process.
+     * A group sits where its first member would have; indexes are into {@code requests}.
+     */
+    static List<List<Integer>> units(List<ConversionRequest> requests, double[] weights, int batchSize) {
+        List<List<Integer>> units = new ArrayList<>();
+        Map<String, List<Integer>> openGroups = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
             ConversionRequest req = requests.get(i);
+            // archive entries arrive on stdin, which a shared process cannot give to more than one input
+            if (batchSize > 1 && req.targets().size() == 1 && weights[i] < SMALL_INPUT_SECONDS && !req.isArchiveEntry()) {
+                String key = req.targets().get(0).fingerprint();
+                List<Integer> group = openGroups.get(key);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    units.add(group); // runs where its first member would have
+                    openGroups.put(key, group);
+                }
+                group.add(i);
+                if (group.size() == batchSize) openGroups.remove(key);
+            } else {
+                units.add(List.of(i));
+            }
+        }
+        return units;
+    }
 
-            futures.add(CompletableFuture.supplyAsync(() -> runOne(req, idx, total, progress), pool));
+    @Override
+    public Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests, ProgressCallback progress) {
+        int total = requests instanceof Collection<?> c ? c.size() : 0;
+        return new ResultPublisher(requests, 2 * engine.getPermits(), (req, index, job) -> {
+            double weight = mediaCache.estimateSeconds(req);
+            ConversionMetrics m = metrics;
+            m.jobsQueued(1);
+            return engine.submit(new ExecutionEngine.Task<>(() -> {
+                m.jobsStarted(1);
+                List<ConversionResult> rs;
+                if (job.isCancelRequested()) {
+                    rs = unstarted(req, ResultStatus.CANCELLED, "Cancelled");
+                } else {
+                    progress.onJobStarted(req.input().getFileName().toString(), index + 1, weight);
+                    rs = runOne(req, index, total, progress, job);
+                }
+                m.jobFinished(req, rs);
+                return rs;
+            }, weight), SchedulingPolicy.FIFO);
+        }, this::endBatch);
+    }
+
+    private List<ConversionResult> runOne(
+            ConversionRequest req, int idx, int total, ProgressCallback cb, ConversionJob job) {
+        JobWatch watch = new JobWatch();
+        watches.add(watch);
+        job.started(watch);
+        try {
+            return runWatched(req, idx, total, cb, watch);
+        } finally {
+            job.finished(watch);
+            watches.remove(watch);
         }
+    }
 
-        return CompletableFuture
-                .allOf(futures.toArray(new CompletableFuture[0]))
-                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+    /**
+     * A request's targets after output resolution: finished ones in {@code results}, the rest still
+     * to encode. Each output writes its reservation's part file, committed or aborted by {@link #finish}.
+     */
+    private record Resolved(ConversionResult[] results, List<FFmpegCommandBuilder.Output> outputs,
+                            List<OutputNameIndex.Reservation> reservations, List<Integer> slots) { }
+
+    private List<ConversionResult> runWatched(
+            ConversionRequest req, int idx, int total, ProgressCallback cb, JobWatch watch) {
+        return execute(req, resolve(req), idx, total, cb, watch);
     }
 
-    private ConversionResult runOne(
-            ConversionRequest req, int idx, int total, ProgressCallback cb) {
+    /** Resolves every target up front: skipped and up-to-date ones never reach ffmpeg. */
+    private Resolved resolve(ConversionRequest req) {
+        AudioFile source = null;
+        boolean sourceLooked = false;
+        ConversionResult[] results = new ConversionResult[req.targets().size()];
+        List<FFmpegCommandBuilder.Output> outputs = new ArrayList<>();
+        List<OutputNameIndex.Reservation> reservations = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
 
-        String ext = switch (req.settings().getFormat()) {
-            case MP3 -> "mp3";
-            case WAV -> "wav";
-            case M4A -> "m4a";
-            case FLAC -> "flac";
-        };
+        for (int t = 0; t < results.length; t++) {
+            ConversionSettings settings = req.targets().get(t);
+            String ext = FFmpegCommandBuilder.extensionFor(settings.getFormat());
 
-        Path out = FileUtils.resolveOutput(
-                req.input(), req.outputDir(), ext,
-                Optional.ofNullable(req.settings().getOverwritePolicy()).orElse(OverwritePolicy.RENAME));
+            OverwritePolicy policy = Optional.ofNullable(settings.getOverwritePolicy()).orElse(OverwritePolicy.RENAME);
+            OutputNameIndex.Reservation out = outputNames.reserve(req.input(), req.outputDir(), ext, policy);
 
-        if (out == null) { // SKIP
-            return new ConversionResult(req.input(), null, true, "Skipped (exists)");
+            if (out == null) { // SKIP
+                results[t] = new ConversionResult(req.input(), null, ResultStatus.SKIPPED, "Skipped (exists)");
+            } else if (policy == OverwritePolicy.INCREMENTAL
+                    && manifestFor(req.outputDir()).isUpToDate(req, settings, out.target())) {
+                out.abort();
+                results[t] = new ConversionResult(req.input(), out.target(), ResultStatus.UP_TO_DATE, "Up to date");
+            } else {
+                // only pay for a probe when the container could already hold the target codec
+                if (!sourceLooked && !req.isArchiveEntry() && mayStreamCopy(req.input(), settings.getFormat())) {
+                    source = mediaCache.get(req.input()).orElse(null);
+                    sourceLooked = true;
+                }
+                boolean copy = source != null && FFmpegCommandBuilder.canStreamCopy(source, settings);
+                outputs.add(new FFmpegCommandBuilder.Output(settings, out.part(), copy));
+                reservations.add(out);
+                slots.add(t);
+            }
         }
+        return new Resolved(results, outputs, reservations, slots);
+    }
 
-        List<String> args = new ArrayList<>();
-        args.add(ffmpeg.toString());
-        args.add("-y"); // we'll still respect policy via chosen output path; -y avoids prompts
-        args.add("-i");
-        args.add(req.input().toString());
-
-        // audio channel count
-        int channels = (req.settings().getChannels() == Channels.MONO) ? 1 : 2;
-        args.addAll(List.of("-ac", String.valueOf(channels)));
+    private List<ConversionResult> execute(
+            ConversionRequest req, Resolved resolved, int idx, int total, ProgressCallback cb, JobWatch watch) {
+        ConversionResult[] results = resolved.results();
+        List<FFmpegCommandBuilder.Output> outputs = resolved.outputs();
+        String name = req.input().getFileName().toString();
+        if (outputs.isEmpty()) {
+            cb.onProgress(name, 1.0, idx + 1, total);
+            return List.of(results);
+        }
 
-        // sample rate
-        args.addAll(List.of("-ar", String.valueOf(req.settings().getSampleRateHz())));
+        // known length if probed before, else runFfmpeg falls back to the header; never probes here
+        double cachedDuration = mediaCache.peek(req.input()).map(AudioFile::getDurationSeconds).orElse(-1.0);
+        DoubleConsumer report = p -> cb.onProgress(name, p, idx + 1, total);
+        SegmentedEncoder.Runner runner = (args, label, duration, progress, mediaScale) ->
+                runFfmpeg(args, label, duration, progress, watch, null, mediaScale);
 
-        switch (req.settings().getFormat()) {
-            case MP3 -> {
-                args.addAll(List.of("-c:a", "libmp3lame"));
-                Integer kbps = Optional.ofNullable(req.settings().getBitrateKbps()).orElse(192);
-                args.addAll(List.of("-b:a", kbps + "k"));
+        String failure;
+        int segments = 1;
+        try {
+            segments = outputs.size() == 1 && !req.isArchiveEntry() ? segmentCount(req.input(), outputs.get(0)) : 1;
+            if (req.isArchiveEntry()) {
+                // the entry is streamed out of the archive into ffmpeg's stdin: nothing is extracted
+                List<String> args = FFmpegCommandBuilder.build(ffmpeg, FFmpegCommandBuilder.STDIN, outputs, tuner.threadsPerJob());
+                failure = runFfmpeg(args, name, cachedDuration, report, watch, req.entry(), 1);
+            } else if (segments > 1) {
+                // one long file: slice it across the pool instead of leaving it to a single core
+                AudioFile src = mediaCache.get(req.input()).orElseThrow();
+                failure = segmenter.encode(src, outputs.get(0), segments, tuner.threadsPerJob(), runner, report);
+            } else {
+                // one ffmpeg process decodes the input once and encodes every remaining target
+                List<String> args = FFmpegCommandBuilder.build(ffmpeg, req.input(), outputs, tuner.threadsPerJob());
+                failure = runner.run(args, name, cachedDuration, report, 1);
             }
-            case M4A -> {
-                // write an AAC-in-mp4 container (.m4a)
-                args.addAll(List.of("-c:a", "aac"));
-                Integer kbps = Optional.ofNullable(req.settings().getBitrateKbps()).orElse(192);
-                args.addAll(List.of("-b:a", kbps + "k"));
+        } catch (RuntimeException e) {
+            failure = "Error: " + e.getMessage(); // still through finish, which ends the reservations
+        }
+
+        return finish(req, resolved, failure, segments, watch, () -> cb.onProgress(name, 1.0, idx + 1, total));
+    }
+
+    /**
+     * Turns the outcome of a request's ffmpeg run(s) into its results, moving finished outputs into
+     * place and dropping the rest; {@code onOk} reports completion.
+     */
+    private List<ConversionResult> finish(ConversionRequest req, Resolved resolved, String failure, int segments,
+                                          JobWatch watch, Runnable onOk) {
+        ConversionResult[] results = resolved.results();
+        List<FFmpegCommandBuilder.Output> outputs = resolved.outputs();
+        List<OutputNameIndex.Reservation> reservations = resolved.reservations();
+        List<Integer> slots = resolved.slots();
+
+        // killed by cancel/deadline/watchdog: the exit code says nothing useful
+        ResultStatus killed = watch.killedAs();
+        if (killed != null) {
+            String why = killMessage(killed);
+            for (int o = 0; o < outputs.size(); o++) {
+                reservations.get(o).abort();
+                results[slots.get(o)] = new ConversionResult(req.input(), null, killed, why);
             }
-            case WAV -> {
-                args.addAll(List.of("-c:a", "pcm_s16le"));
+            return List.of(results);
+        }
+
+        boolean ok = failure == null;
+        if (ok) onOk.run();
+
+        for (int o = 0; o < outputs.size(); o++) {
+            FFmpegCommandBuilder.Output target = outputs.get(o);
+            OutputNameIndex.Reservation out = reservations.get(o);
+            String message = failure;
+            if (ok) {
+                try {
+                    out.commit();
+                } catch (IOException e) {
+                    message = "Could not move output into place: " + e.getMessage();
+                }
+            } else {
+                out.abort();
             }
-            case FLAC -> {
-                args.addAll(List.of("-c:a", "flac"));
-                // you can add -compression_level 5 if you want
+            boolean done = message == null;
+            if (done && target.settings().getOverwritePolicy() == OverwritePolicy.INCREMENTAL)
+                manifestFor(req.outputDir()).record(req, target.settings(), out.target());
+            ConversionStrategy strategy = segments > 1 ? ConversionStrategy.SEGMENTED
+                    : target.streamCopy() ? ConversionStrategy.REMUX : ConversionStrategy.TRANSCODE;
+            if (done) message = segments > 1 ? "OK (" + segments + " segments)"
+                    : target.streamCopy() ? "OK (stream copy)" : "OK";
+            results[slots.get(o)] = new ConversionResult(req.input(), out.target(),
+                    done ? ResultStatus.OK : ResultStatus.FAILED, strategy, message);
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Runs tiny single-target requests through one ffmpeg process (one input and one mapped
+     * output each) to save a process spawn per file. Members that turn out to need something
+     * else (skip, remux) are handled on their own. If a shared process fails, the group is
+     * split in halves and retried, so only the file that caused it fails, at log2(size) extra runs.
+     */
+    private List<List<ConversionResult>> runGroup(
+            List<ConversionRequest> reqs, int firstIdx, int total, ProgressCallback cb, ConversionJob job) {
+        JobWatch watch = new JobWatch();
+        watches.add(watch);
+        job.started(watch);
+        try {
+            List<List<ConversionResult>> out = new ArrayList<>(Collections.nCopies(reqs.size(), List.of()));
+            List<Integer> members = new ArrayList<>();
+            Resolved[] resolved = new Resolved[reqs.size()];
+            for (int k = 0; k < reqs.size(); k++) {
+                resolved[k] = resolve(reqs.get(k));
+                List<FFmpegCommandBuilder.Output> o = resolved[k].outputs();
+                if (o.size() == 1 && !o.get(0).streamCopy()) members.add(k);
+                else out.set(k, execute(reqs.get(k), resolved[k], firstIdx + k, total, cb, watch));
             }
+            encodeGroup(reqs, resolved, members, firstIdx, total, cb, watch, out);
+            return out;
+        } finally {
+            job.finished(watch);
+            watches.remove(watch);
         }
+    }
 
-        args.add(out.toString());
+    private void encodeGroup(List<ConversionRequest> reqs, Resolved[] resolved, List<Integer> members, int firstIdx,
+                             int total, ProgressCallback cb, JobWatch watch, List<List<ConversionResult>> out) {
+        if (members.isEmpty()) return;
+        if (members.size() == 1) {
+            int k = members.get(0);
+            out.set(k, execute(reqs.get(k), resolved[k], firstIdx + k, total, cb, watch));
+            return;
+        }
 
+        List<Path> inputs = new ArrayList<>();
+        List<FFmpegCommandBuilder.Output> outputs = new ArrayList<>();
+        double[] seconds = new double[members.size()];
+        double longest = 0;
+        for (int m = 0; m < members.size(); m++) {
+            int k = members.get(m);
+            inputs.add(reqs.get(k).input());
+            outputs.add(resolved[k].outputs().get(0));
+            seconds[m] = Math.max(0.01, mediaCache.estimateSeconds(reqs.get(k).input()));
+            longest = Math.max(longest, seconds[m]);
+        }
+        // inputs are read side by side, so at out_time t each member is at min(t, its length)
+        double span = longest;
+        double media = Arrays.stream(seconds).sum();
+        String failure = runFfmpeg(FFmpegCommandBuilder.buildGroup(ffmpeg, inputs, outputs, tuner.threadsPerJob()),
+                members.size() + " files", span, p -> {
+                    for (int m = 0; m < members.size(); m++) {
+                        int k = members.get(m);
+                        cb.onProgress(reqs.get(k).input().getFileName().toString(),
+                                Math.min(1.0, p * span / seconds[m]), firstIdx + k + 1, total);
+                    }
+                }, watch, null, media / span);
+
+        if (failure != null && watch.killedAs() == null) {
+            DebugLogger.d("Batch of " + members.size() + " failed (" + failure + "); splitting");
+            outputs.forEach(o -> deletePartial(o.file()));
+            int half = members.size() / 2;
+            encodeGroup(reqs, resolved, members.subList(0, half), firstIdx, total, cb, watch, out);
+            encodeGroup(reqs, resolved, members.subList(half, members.size()), firstIdx, total, cb, watch, out);
+            return;
+        }
+        for (int k : members) {
+            ConversionRequest req = reqs.get(k);
+            int index = firstIdx + k + 1;
+            out.set(k, finish(req, resolved[k], failure, 1, watch,
+                    () -> cb.onProgress(req.input().getFileName().toString(), 1.0, index, total)));
+        }
+    }
+
+    /**
+     * Runs one ffmpeg command to completion under {@code watch}; returns null on success, else a failure message.
+     * Progress is out_time over {@code knownDuration}, or over the input header's duration when that is &lt;= 0.
+     * With a non-null {@code feed}, the archive entry is written to ffmpeg's stdin while it runs,
+     * and progress falls back to the share of the entry's bytes fed when no duration is known.
+     * {@code mediaScale} turns the final out_time into media seconds encoded, for the metrics:
+     * inputs read side by side by one process each count, a slice only its own span, a join nothing.
+     */
+    private String runFfmpeg(List<String> args, String name, double knownDuration, DoubleConsumer onProgress, JobWatch watch,
+                             ArchiveEntry feed, double mediaScale) {
+        if (watch.killedAs() != null) return killMessage(watch.killedAs()); // e.g. a slice dispatched before a cancel
         ProcessBuilder pb = new ProcessBuilder(args);
-        pb.redirectErrorStream(false); // we want stderr for progress
+        pb.redirectErrorStream(false); // stdout carries -progress, stderr only diagnostics
         DebugLogger.d("FFmpeg: " + String.join(" ", args));
 
-        double duration = probeDurationSeconds(req.input());
-
+        running.incrementAndGet();
+        ConversionMetrics m = metrics;
+        long started = System.nanoTime();
+        long lastUs = -1;
+        Duration cpu = null;
+        long cpuTried = started, cpuSampled = started;
+        Process p = null;
         try {
-            Process p = pb.start();
-
-            // Read stderr for progress tokens
-            BufferedReader err = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-            String line;
-            while ((line = err.readLine()) != null) {
-                // ffmpeg writes lines like: "time=00:00:12.34"
-                int t = line.indexOf("time=");
-                if (t >= 0) {
-                    int end = line.indexOf(' ', t);
-                    String token = (end > t) ? line.substring(t + 5, end) : line.substring(t + 5);
-                    double sec = Timecode.parseSeconds(token);
-                    if (sec >= 0 && duration > 0) {
-                        double progress = Math.min(1.0, sec / duration);
-                        cb.onProgress(req.input().getFileName().toString(), progress, idx + 1, total);
+            p = pb.start();
+            m.spawned(System.nanoTime() - started);
+            watch.attach(p);
+            StderrMonitor diag = StderrMonitor.start(p, name);
+            StdinFeed stdin = feed == null ? null : StdinFeed.start(feed, p);
+
+            // one -progress block ("out_time_us=12340000 ... progress=continue") per tick, parsed without allocating
+            ProgressParser out = new ProgressParser(p.getInputStream());
+            while (out.next()) {
+                double duration = knownDuration > 0 ? knownDuration : diag.durationSeconds();
+                long us = out.outTimeUs(); // -1 ("N/A") before the first frame
+                if (us > lastUs) {
+                    lastUs = us;
+                    watch.advanced();
+                }
+                if (us >= 0 && duration > 0) {
+                    onProgress.accept(Math.min(1.0, us / 1_000_000.0 / duration));
+                } else if (stdin != null && feed.size() > 0) {
+                    onProgress.accept(Math.min(1.0, (double) stdin.fed() / feed.size()));
+                }
+                // sample while alive, as CPU totals are gone once the process is reaped: on the final
+                // block, and every few seconds in case the process is already gone by then
+                long now = System.nanoTime();
+                if (out.ended() || now - cpuTried >= CPU_SAMPLE_NANOS) {
+                    cpuTried = now;
+                    Duration sample = p.toHandle().info().totalCpuDuration().orElse(null);
+                    if (sample != null) {
+                        cpu = sample;
+                        cpuSampled = now;
                     }
                 }
             }
 
             int exit = p.waitFor();
-            if (exit == 0) {
-                cb.onProgress(req.input().getFileName().toString(), 1.0, idx + 1, total);
-                return new ConversionResult(req.input(), out, true, "OK");
-            } else {
-                return new ConversionResult(req.input(), out, false, "ffmpeg failed (exit " + exit + ")");
-            }
+            String feedError = stdin == null ? null : stdin.awaitError();
+            if (feedError != null) return "Cannot read " + feed + ": " + feedError; // ffmpeg may take a cut-off input as complete
+            if (exit == 0) return null;
+            diag.awaitEof();
+            String why = diag.lastLine();
+            return "ffmpeg failed (exit " + exit + ")" + (why.isEmpty() ? "" : ": " + why);
         } catch (Exception e) {
-            return new ConversionResult(req.input(), out, false, "Error: " + e.getMessage());
+            return "Error: " + e.getMessage();
+        } finally {
+            if (p != null) watch.detach(p);
+            running.decrementAndGet();
+            long wall = System.nanoTime() - started;
+            if (p != null) m.encoded(wall, lastUs > 0 ? lastUs / 1e6 * mediaScale : 0);
+            tuner.recordJob(cpu, Duration.ofNanos(cpuSampled - started)); // CPU over the wall time up to its sample
+            retune();
         }
     }
 
-    private double probeDurationSeconds(Path input) {
-        try {
-            List<String> cmd = List.of(
-                    ffprobe.toString(),
-                    "-v", "error",
-                    "-show_entries", "format=duration",
-                    "-of", "default=noprint_wrappers=1:nokey=1",
-                    input.toString()
-            );
-            Process p = new ProcessBuilder(cmd).start();
-            try (var r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String s = r.readLine();
-                if (s != null) {
-                    double d = Double.parseDouble(s.trim());
-                    return (d > 0) ? d : -1;
-                }
+    /**
+     * How many slices to cut an input into: 1 unless it is a long, single-target WAV or FLAC re-encode
+     * and there is more than one worker. Only probes inputs whose size already suggests a long file.
+     */
+    private int segmentCount(Path input, FFmpegCommandBuilder.Output target) {
+        int workers = tuner.workers();
+        double threshold = segmentThreshold.toSeconds();
+        if (target.streamCopy() || !SegmentedEncoder.supports(target.settings().getFormat())) return 1;
+        if (workers < 2 || mediaCache.estimateSeconds(input) < threshold / 2) return 1;
+        double duration = mediaCache.get(input).map(AudioFile::getDurationSeconds).orElse(-1.0);
+        if (duration < threshold) return 1;
+        return (int) Math.min(workers, Math.ceil(duration / (threshold / 4)));
+    }
+
+    /** Watchdog tick: enforce the per-job deadline and kill jobs whose progress stopped moving. */
+    private void checkWatches() {
+        long now = System.nanoTime();
+        long deadline = jobTimeout.toNanos();
+        long stall = stallTimeout.toNanos();
+        for (JobWatch w : watches) {
+            if (w.killedAs() != null) continue;
+            if (deadline > 0 && now - w.startedNanos > deadline) {
+                DebugLogger.d("Job exceeded " + jobTimeout.toSeconds() + "s deadline; killing");
+                w.kill(ResultStatus.TIMED_OUT);
+            } else if (stall > 0 && now - w.lastAdvanceNanos() > stall) {
+                DebugLogger.d("Job made no progress for " + stallTimeout.toSeconds() + "s; killing");
+                w.kill(ResultStatus.STALLED);
             }
-        } catch (Exception ignored) { }
-        return -1;
+        }
+    }
+
+    private String killMessage(ResultStatus why) {
+        return switch (why) {
+            case TIMED_OUT -> "Timed out after " + jobTimeout.toSeconds() + "s";
+            case STALLED -> "Stalled: no progress for " + stallTimeout.toSeconds() + "s";
+            default -> "Cancelled";
+        };
+    }
+
+    /** One result per target for a job that never ran. */
+    private static List<ConversionResult> unstarted(ConversionRequest req, ResultStatus status, String message) {
+        return req.targets().stream().map(t -> new ConversionResult(req.input(), null, status, message)).toList();
+    }
+
+    /** A failed shared run leaves truncated part files behind; the retries write them afresh. */
+    private static void deletePartial(Path out) {
+        try {
+            Files.deleteIfExists(out);
+        } catch (Exception e) {
+            DebugLogger.e("Could not delete partial output " + out, e);
+        }
+    }
+
+    /** Applies the tuner's current worker count to the engine's permits. */
+    private void retune() {
+        engine.retune(running.get());
     }
 
-    @Override public void close() { pool.shutdownNow(); }
+    /** Whether the input's container commonly carries the codec of {@code format}. */
+    private static boolean mayStreamCopy(Path input, AudioFormat format) {
+        String name = input.getFileName().toString().toLowerCase();
+        String ext = name.substring(name.lastIndexOf('.') + 1);
+        return switch (format) {
+            case MP3 -> ext.equals("mp3");
+            case M4A -> Set.of("m4a", "mp4", "m4b", "aac").contains(ext);
+            case FLAC -> ext.equals("flac");
+            case WAV -> ext.equals("wav");
+        };
+    }
+
+    private OutputManifest manifestFor(Path outputDir) {
+        return manifests.computeIfAbsent(outputDir.toAbsolutePath().normalize(), OutputManifest::load);
+    }
+
+    /**
+     * After a batch or stream, cancelled or not. Manifest records are already on disk; the next batch
+     * re-reads them rather than trusting this one's copy. Probes made during it are written out now,
+     * so a killed app loses at most the current batch's.
+     */
+    private void endBatch() {
+        for (Path dir : manifests.keySet()) {
+            OutputManifest m = manifests.remove(dir);
+            if (m != null) m.compact();
+        }
+        mediaCache.flush();
+    }
+
+    /** Kills every running ffmpeg process tree, then stops the engine unless it is shared. */
+    @Override
+    public void close() {
+        watches.forEach(w -> w.kill(ResultStatus.CANCELLED));
+        watchdog.shutdownNow();
+        if (ownsEngine) engine.close();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.Channels;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/** Builds ffmpeg argument lists: one input with any number of encoded outputs, or paired inputs and outputs. */
+public final class FFmpegCommandBuilder {
+    private FFmpegCommandBuilder() {}
+
+    /** Input URL for data written to ffmpeg's standard input. */
+    public static final String STDIN = "pipe:0";
+
+    /** A single output of an ffmpeg invocation; {@code streamCopy} copies the audio instead of encoding it. */
+    public record Output(ConversionSettings settings, Path file, boolean streamCopy) {
+        public Output(ConversionSettings settings, Path file) { this(settings, file, false); }
+    }
+
+    public static String extensionFor(AudioFormat format) {
+        return switch (format) {
+            case MP3 -> "mp3";
+            case WAV -> "wav";
+            case M4A -> "m4a";
+            case FLAC -> "flac";
+        };
+    }
+
+    /** ffprobe codec_name that a target format is encoded to. */
+    public static String codecFor(AudioFormat format) {
+        return switch (format) {
+            case MP3 -> "mp3";
+            case WAV -> "pcm_s16le";
+            case M4A -> "aac";
+            case FLAC -> "flac";
+        };
+    }
+
+    /** Codec a target is encoded to; WAV follows the configured bit depth. */
+    public static String codecFor(ConversionSettings target) {
+        if (target.getFormat() != AudioFormat.WAV) return codecFor(target.getFormat());
+        return switch (target.getBitDepth()) {
+            case 8 -> "pcm_u8";
+            case 24 -> "pcm_s24le";
+            case 32 -> "pcm_s32le";
+            default -> "pcm_s16le";
+        };
+    }
+
+    /** The ffmpeg encoder {@link #addEncoderArgs} selects for a target. */
+    public static String encoderFor(ConversionSettings target) {
+        return target.getFormat() == AudioFormat.MP3 ? "libmp3lame" : codecFor(target);
+    }
+
+    /**
+     * True if the source's first audio stream can be copied as-is: same codec, sample rate and
+     * channel count, and for lossy targets no more bitrate than was asked for.
+     */
+    public static boolean canStreamCopy(AudioFile source, ConversionSettings target) {
+        if (source == null || !source.hasAudio()) return false;
+        if (!codecFor(target).equals(source.getCodec())) return false;
+        if (source.getSampleRateHz() != target.getSampleRateHz()) return false;
+        int channels = (target.getChannels() == Channels.MONO) ? 1 : 2;
+        if (source.getChannelCount() != channels) return false;
+
+        if (target.getFormat() == AudioFormat.MP3 || target.getFormat() == AudioFormat.M4A) {
+            int kbps = Optional.ofNullable(target.getBitrateKbps()).orElse(192);
+            // reported bitrates are measured, so allow a little slack (e.g. 191 kbps for a 192k encode)
+            return source.getBitrateKbps() > 0 && source.getBitrateKbps() <= kbps * 1.05;
+        }
+        return true;
+    }
+
+    public static List<String> build(Path ffmpeg, Path input, List<Output> outputs) {
+        return build(ffmpeg, input, outputs, 0);
+    }
+
+    /** {@code threads} > 0 caps ffmpeg's decoder and encoder threads; 0 leaves ffmpeg's default (one per core). */
+    public static List<String> build(Path ffmpeg, Path input, List<Output> outputs, int threads) {
+        return build(ffmpeg, input.toString(), outputs, threads);
+    }
+
+    /** Same, with the input given as an ffmpeg URL such as {@link #STDIN}. */
+    public static List<String> build(Path ffmpeg, String input, List<Output> outputs, int threads) {
+        List<String> args = globalArgs(ffmpeg, threads);
+        args.add("-i");
+        args.add(input);
+
+        // output options apply to the next output file, so each target gets its own block
+        for (Output o : outputs) {
+            if (o.streamCopy()) {
+                // audio only: drops cover art / video that the target container may not take
+                args.addAll(List.of("-vn", "-c:a", "copy"));
+            } else {
+                if (threads > 0) args.addAll(List.of("-threads", String.valueOf(threads))); // encoder
+                addEncoderArgs(args, o.settings());
+            }
+            args.add(o.file().toString());
+        }
+        return args;
+    }
+
+    /**
+     * Several inputs in one process: output k gets the first audio stream of input k, so
+     * {@code inputs} and {@code outputs} pair up by position.
+     */
+    public static List<String> buildGroup(Path ffmpeg, List<Path> inputs, List<Output> outputs, int threads) {
+        List<String> args = globalArgs(ffmpeg, threads);
+        for (Path input : inputs) {
+            args.add("-i");
+            args.add(input.toString());
+        }
+        for (int k = 0; k < outputs.size(); k++) {
+            args.addAll(List.of("-map", k + ":a:0"));
+            if (threads > 0) args.addAll(List.of("-threads", String.valueOf(threads)));
+            addEncoderArgs(args, outputs.get(k).settings());
+            args.add(outputs.get(k).file().toString());
+        }
+        return args;
+    }
+
+    /**
+     * One slice of a segmented encode: decodes from {@code seekSeconds} (whole seconds, so the
+     * seek lands on a sample boundary at any integer rate) and keeps output samples
+     * [startSample, endSample) counted from that point; endSample &lt; 0 runs to the end.
+     * Slices are written as WAV at the target's bit depth for WAV targets, otherwise as fast lossless FLAC.
+     */
+    public static List<String> buildSegment(Path ffmpeg, Path input, long seekSeconds, long startSample, long endSample,
+                                            ConversionSettings target, Path file, int threads) {
+        List<String> args = globalArgs(ffmpeg, threads);
+        if (seekSeconds > 0) args.addAll(List.of("-ss", String.valueOf(seekSeconds)));
+        args.add("-i");
+        args.add(input.toString());
+        args.add("-vn");
+
+        // resample first, then trim on the output sample grid: boundaries are exact in samples
+        String trim = "atrim=start_sample=" + startSample + (endSample >= 0 ? ":end_sample=" + endSample : "");
+        args.addAll(List.of("-af", "aresample=" + target.getSampleRateHz() + "," + trim));
+        int channels = (target.getChannels() == Channels.MONO) ? 1 : 2;
+        args.addAll(List.of("-ac", String.valueOf(channels)));
+        if (target.getFormat() == AudioFormat.WAV) {
+            args.addAll(List.of("-c:a", codecFor(target)));
+        } else {
+            args.addAll(List.of("-c:a", "flac", "-compression_level", "0"));
+        }
+        args.add(file.toString());
+        return args;
+    }
+
+    /**
+     * Joins segment files listed in a concat-demuxer list. WAV segments are copied as they are;
+     * FLAC segments are encoded once more so the output has one STREAMINFO for the whole file.
+     */
+    public static List<String> buildJoin(Path ffmpeg, Path listFile, Output target, int threads) {
+        List<String> args = globalArgs(ffmpeg, threads);
+        args.addAll(List.of("-f", "concat", "-safe", "0", "-i", listFile.toString()));
+        if (target.settings().getFormat() == AudioFormat.WAV) {
+            args.addAll(List.of("-c:a", "copy"));
+        } else {
+            if (threads > 0) args.addAll(List.of("-threads", String.valueOf(threads)));
+            addEncoderArgs(args, target.settings());
+        }
+        args.add(target.file().toString());
+        return args;
+    }
+
+    private static List<String> globalArgs(Path ffmpeg, int threads) {
+        List<String> args = new ArrayList<>();
+        args.add(ffmpeg.toString());
+        args.add("-y"); // we'll still respect policy via chosen output path; -y avoids prompts
+        args.addAll(List.of("-hide_banner", "-nostdin", "-nostats"));
+        // machine-readable key=value progress on stdout; stderr is left for diagnostics
+        args.addAll(List.of("-progress", "pipe:1"));
+        if (threads > 0) args.addAll(List.of("-threads", String.valueOf(threads))); // decoder
+        return args;
+    }
+
+    static void addEncoderArgs(List<String> args, ConversionSettings s) {
+        // audio channel count
+        int channels = (s.getChannels() == Channels.MONO) ? 1 : 2;
+        args.addAll(List.of("-ac", String.valueOf(channels)));
+
+        // sample rate
+        args.addAll(List.of("-ar", String.valueOf(s.getSampleRateHz())));
+
+        switch (s.getFormat()) {
+            case MP3 -> {
+                args.addAll(List.of("-c:a", encoderFor(s)));
+                Integer kbps = Optional.ofNullable(s.getBitrateKbps()).orElse(192);
+                args.addAll(List.of("-b:a", kbps + "k"));
+            }
+            case M4A -> {
+                // write an AAC-in-mp4 container (.m4a)
+                args.addAll(List.of("-c:a", encoderFor(s)));
+                Integer kbps = Optional.ofNullable(s.getBitrateKbps()).orElse(192);
+                args.addAll(List.of("-b:a", kbps + "k"));
+            }
+            case WAV -> {
+                args.addAll(List.of("-c:a", encoderFor(s)));
+            }
+            case FLAC -> {
+                args.addAll(List.of("-c:a", encoderFor(s)));
+                // you can add -compression_level 5 if you want
+            }
+        }
+    }
+}
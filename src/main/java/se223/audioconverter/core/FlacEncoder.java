@@ -0,0 +1,460 @@
+package se223.audioconverter.core;
+
+import java.util.Arrays;
+
+/**
+ * FLAC bitstream encoding with a fixed block size. Every frame is encoded on its own from its
+ * samples and frame number, so frames of one file can be encoded on any number of threads
+ * and written out in order afterwards. Per channel it picks the smallest of constant,
+ * verbatim, fixed (orders 0-4) and LPC (up to order 8, Tukey-windowed Levinson-Durbin)
+ * subframes; stereo also tries left/side, right/side and mid/side. Residuals are
+ * partitioned Rice codes with per-partition parameters.
+ */
+final class FlacEncoder {
+
+    static final int BLOCK_SIZE = 4096;
+    /** Size of what {@link #streamHeader} returns. */
+    static final int HEADER_BYTES = 4 + 4 + 34;
+
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_LPC_ORDER = 8;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAM = 30;
+
+    private static final int[] CRC8 = new int[256];
+    private static final int[] CRC16 = new int[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c8 = i, c16 = i << 8;
+            for (int b = 0; b < 8; b++) {
+                c8 = (c8 & 0x80) != 0 ? (c8 << 1) ^ 0x07 : c8 << 1;
+                c16 = (c16 & 0x8000) != 0 ? (c16 << 1) ^ 0x8005 : c16 << 1;
+            }
+            CRC8[i] = c8 & 0xFF;
+            CRC16[i] = c16 & 0xFFFF;
+        }
+    }
+
+    private static final double[] BLOCK_WINDOW = tukey(BLOCK_SIZE);
+
+    private FlacEncoder() {}
+
+    /** The "fLaC" marker and a STREAMINFO block; {@code md5} is of the samples as signed little-endian PCM. */
+    static byte[] streamHeader(int sampleRate, int channels, int bits, long totalSamples,
+                               int minFrameBytes, int maxFrameBytes, byte[] md5) {
+        int blockSize = (int) Math.max(16, Math.min(BLOCK_SIZE, totalSamples));
+        BitWriter w = new BitWriter(HEADER_BYTES);
+        w.write(0x664C6143L, 32);                 // "fLaC"
+        w.write(1, 1);                            // last metadata block
+        w.write(0, 7);                            // STREAMINFO
+        w.write(34, 24);
+        w.write(blockSize, 16);
+        w.write(blockSize, 16);
+        w.write(minFrameBytes, 24);
+        w.write(maxFrameBytes, 24);
+        w.write(sampleRate, 20);
+        w.write(channels - 1, 3);
+        w.write(bits - 1, 5);
+        w.write(totalSamples >>> 32, 4);
+        w.write(totalSamples & 0xFFFF_FFFFL, 32);
+        for (byte b : md5) w.write(b & 0xFF, 8);
+        return w.toByteArray();
+    }
+
+    /** One complete frame: {@code samples[channel][0..n)} at {@code bits} per sample (16 or 24). */
+    static byte[] encodeFrame(int[][] samples, int n, int bits, long frameNumber) {
+        int channels = samples.length;
+        int[][] coded = samples;
+        int[] codedBits = new int[channels];
+        Arrays.fill(codedBits, bits);
+        int assignment = channels - 1;
+
+        if (channels == 2) {
+            int[] left = samples[0], right = samples[1];
+            int[] mid = new int[n], side = new int[n];
+            for (int i = 0; i < n; i++) {
+                mid[i] = (left[i] + right[i]) >> 1;
+                side[i] = left[i] - right[i];
+            }
+            long l = fixedEstimate(left, n), r = fixedEstimate(right, n);
+            long m = fixedEstimate(mid, n), s = fixedEstimate(side, n);
+            long best = Math.min(Math.min(l + r, l + s), Math.min(s + r, m + s));
+            if (best == l + r) {
+                // independent
+            } else if (best == l + s) {
+                assignment = 8; coded = new int[][] { left, side }; codedBits[1]++;
+            } else if (best == s + r) {
+                assignment = 9; coded = new int[][] { side, right }; codedBits[0]++;
+            } else {
+                assignment = 10; coded = new int[][] { mid, side }; codedBits[1]++;
+            }
+        }
+
+        BitWriter w = new BitWriter(n * channels * (bits / 8) + 64);
+        int blockCode = blockSizeCode(n);
+        w.write(0x3FFE, 14);                      // sync
+        w.write(0, 1);
+        w.write(0, 1);                            // fixed block size
+        w.write(blockCode, 4);
+        w.write(0, 4);                            // sample rate: from STREAMINFO
+        w.write(assignment, 4);
+        w.write(bits == 16 ? 4 : 6, 3);
+        w.write(0, 1);
+        writeUtf8(w, frameNumber);
+        if (blockCode == 6) w.write(n - 1, 8);
+        else if (blockCode == 7) w.write(n - 1, 16);
+        w.write(w.crc8(), 8);
+
+        for (int c = 0; c < channels; c++) writeSubframe(w, coded[c], n, codedBits[c]);
+        w.alignToByte();
+        w.write(w.crc16(), 16);
+        return w.toByteArray();
+    }
+
+    private static int blockSizeCode(int n) {
+        if (n == 192) return 1;
+        for (int k = 0; k < 4; k++) if (n == 576 << k) return 2 + k;
+        for (int k = 0; k < 8; k++) if (n == 256 << k) return 8 + k;
+        return n <= 256 ? 6 : 7;
+    }
+
+    private static void writeUtf8(BitWriter w, long v) {
+        if (v < 0x80) { w.write(v, 8); return; }
+        int extra = v < 0x800 ? 1 : v < 0x10000 ? 2 : v < 0x200000 ? 3 : v < 0x4000000 ? 4 : 5;
+        int lead = (0xFF00 >> (extra + 1)) & 0xFF;                     // 110xxxxx, 1110xxxx, ...
+        w.write(lead | (v >>> (6 * extra)), 8);
+        for (int i = extra - 1; i >= 0; i--) w.write(0x80 | ((v >>> (6 * i)) & 0x3F), 8);
+    }
+
+    // === Subframes ===
+
+    private static void writeSubframe(BitWriter w, int[] x, int n, int bits) {
+        boolean constant = true;
+        for (int i = 1; i < n && constant; i++) constant = x[i] == x[0];
+        if (constant) {
+            w.write(0, 8);                        // CONSTANT
+            w.writeSigned(x[0], bits);
+            return;
+        }
+
+        int[] fixedResidual = new int[n];
+        int fixedOrder = bestFixedOrder(x, n);
+        fixedResidual(x, n, fixedOrder, fixedResidual);
+        Rice fixedRice = Rice.plan(fixedResidual, n, fixedOrder);
+        long fixedBits = 8 + (long) fixedOrder * bits + fixedRice.bits;
+
+        Lpc lpc = Lpc.plan(x, n, bits);
+        if (lpc != null && lpc.bits < fixedBits && lpc.bits < (long) n * bits) {
+            w.write(0x40 | (lpc.order - 1) << 1, 8);
+            for (int i = 0; i < lpc.order; i++) w.writeSigned(x[i], bits);
+            w.write(lpc.precision - 1, 4);
+            w.write(lpc.shift, 5);
+            for (int q : lpc.coefs) w.writeSigned(q, lpc.precision);
+            lpc.rice.write(w, lpc.residual, n, lpc.order);
+        } else if (fixedBits < (long) n * bits) {
+            w.write(0x10 | fixedOrder << 1, 8);
+            for (int i = 0; i < fixedOrder; i++) w.writeSigned(x[i], bits);
+            fixedRice.write(w, fixedResidual, n, fixedOrder);
+        } else {
+            w.write(0x02, 8);                     // VERBATIM
+            for (int i = 0; i < n; i++) w.writeSigned(x[i], bits);
+        }
+    }
+
+    /** Rough size of a channel under its best fixed predictor, for choosing the stereo mode. */
+    private static long fixedEstimate(int[] x, int n) {
+        long[] sums = fixedSums(x, n);
+        long best = Long.MAX_VALUE;
+        for (long s : sums) best = Math.min(best, s);
+        return best;
+    }
+
+    private static int bestFixedOrder(int[] x, int n) {
+        long[] sums = fixedSums(x, n);
+        int order = 0;
+        for (int k = 1; k < sums.length; k++) if (sums[k] < sums[order]) order = k;
+        return order;
+    }
+
+    /** Σ|residual| of each fixed order over the samples all orders can predict. */
+    private static long[] fixedSums(int[] x, int n) {
+        long[] sums = new long[MAX_FIXED_ORDER + 1];
+        if (n <= MAX_FIXED_ORDER) return sums;
+        long e0, e1, e2, e3, e4;
+        long last0 = x[3], last1 = x[3] - x[2];
+        long last2 = last1 - (x[2] - x[1]);
+        long last3 = last2 - (x[2] - 2L * x[1] + x[0]);
+        for (int i = MAX_FIXED_ORDER; i < n; i++) {
+            e0 = x[i];
+            e1 = e0 - last0;
+            e2 = e1 - last1;
+            e3 = e2 - last2;
+            e4 = e3 - last3;
+            sums[0] += Math.abs(e0);
+            sums[1] += Math.abs(e1);
+            sums[2] += Math.abs(e2);
+            sums[3] += Math.abs(e3);
+            sums[4] += Math.abs(e4);
+            last0 = e0; last1 = e1; last2 = e2; last3 = e3;
+        }
+        return sums;
+    }
+
+    private static void fixedResidual(int[] x, int n, int order, int[] r) {
+        for (int i = order; i < n; i++) {
+            r[i] = switch (order) {
+                case 0 -> x[i];
+                case 1 -> x[i] - x[i - 1];
+                case 2 -> x[i] - 2 * x[i - 1] + x[i - 2];
+                case 3 -> x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                default -> x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+            };
+        }
+    }
+
+    /** Linear prediction from windowed autocorrelation, with coefficients quantised as libFLAC does. */
+    private static final class Lpc {
+        int order, precision, shift;
+        int[] coefs;
+        int[] residual;
+        Rice rice;
+        long bits;
+
+        static Lpc plan(int[] x, int n, int bits) {
+            if (n <= 2 * MAX_LPC_ORDER) return null;
+            double[] window = n == BLOCK_SIZE ? BLOCK_WINDOW : tukey(n);
+            double[] autoc = new double[MAX_LPC_ORDER + 1];
+            double[] xw = new double[n];
+            for (int i = 0; i < n; i++) xw[i] = x[i] * window[i];
+            for (int lag = 0; lag <= MAX_LPC_ORDER; lag++) {
+                double s = 0;
+                for (int i = lag; i < n; i++) s += xw[i] * xw[i - lag];
+                autoc[lag] = s;
+            }
+            if (autoc[0] == 0) return null;
+
+            // Levinson-Durbin: predictor coefficients and prediction error for every order
+            double[][] coefs = new double[MAX_LPC_ORDER][];
+            double[] error = new double[MAX_LPC_ORDER];
+            double[] lpc = new double[MAX_LPC_ORDER];
+            double err = autoc[0];
+            int maxOrder = MAX_LPC_ORDER;
+            for (int i = 0; i < MAX_LPC_ORDER; i++) {
+                double r = -autoc[i + 1];
+                for (int j = 0; j < i; j++) r -= lpc[j] * autoc[i - j];
+                r /= err;
+                lpc[i] = r;
+                int j = 0;
+                for (; j < (i >> 1); j++) {
+                    double tmp = lpc[j];
+                    lpc[j] += r * lpc[i - 1 - j];
+                    lpc[i - 1 - j] += r * tmp;
+                }
+                if ((i & 1) != 0) lpc[j] += lpc[j] * r;
+                err *= 1.0 - r * r;
+                coefs[i] = new double[i + 1];
+                for (j = 0; j <= i; j++) coefs[i][j] = -lpc[j];
+                error[i] = err;
+                if (err <= 0) { maxOrder = i + 1; break; }
+            }
+
+            int precision = bits <= 16 ? 12 : 15;
+            int order = 1;
+            double bestBits = Double.MAX_VALUE;
+            for (int k = 1; k <= maxOrder; k++) {
+                double bps = error[k - 1] > 0 ? Math.max(0, 0.5 * Math.log(0.5 / n * error[k - 1]) / Math.log(2)) : 0;
+                double total = bps * (n - k) + k * (double) (precision + bits);
+                if (total < bestBits) { bestBits = total; order = k; }
+            }
+
+            Lpc p = new Lpc();
+            p.order = order;
+            p.precision = precision;
+            if (!p.quantize(coefs[order - 1])) return null;
+            p.residual = new int[n];
+            for (int i = order; i < n; i++) {
+                long sum = 0;
+                for (int j = 0; j < order; j++) sum += (long) p.coefs[j] * x[i - 1 - j];
+                long r = x[i] - (sum >> p.shift);
+                if (r != (int) r) return null; // residual must fit 32 bits
+                p.residual[i] = (int) r;
+            }
+            p.rice = Rice.plan(p.residual, n, order);
+            p.bits = 8 + (long) order * bits + 4 + 5 + (long) order * precision + p.rice.bits;
+            return p;
+        }
+
+        private boolean quantize(double[] lp) {
+            double cmax = 0;
+            for (double c : lp) cmax = Math.max(cmax, Math.abs(c));
+            if (cmax <= 0 || Double.isNaN(cmax) || Double.isInfinite(cmax)) return false;
+            int qmax = (1 << (precision - 1)) - 1, qmin = -(1 << (precision - 1));
+            shift = Math.min(15, precision - 2 - Math.getExponent(cmax));
+            if (shift < 0) return false;
+            coefs = new int[lp.length];
+            double carry = 0; // error feedback keeps the rounding from adding up
+            for (int i = 0; i < lp.length; i++) {
+                carry += lp[i] * (1 << shift);
+                long q = Math.round(carry);
+                q = Math.max(qmin, Math.min(qmax, q));
+                carry -= q;
+                coefs[i] = (int) q;
+            }
+            return true;
+        }
+    }
+
+    /** A partitioned Rice coding plan: partition order and one parameter per partition. */
+    private static final class Rice {
+        int partitionOrder;
+        int[] params;
+        boolean wide;       // some parameter needs the 5-bit (RICE2) field
+        long bits;
+
+        static Rice plan(int[] r, int n, int predictorOrder) {
+            int maxOrder = 0;
+            while (maxOrder < MAX_PARTITION_ORDER && n % (2 << maxOrder) == 0 && (n >> (maxOrder + 1)) > predictorOrder) {
+                maxOrder++;
+            }
+            // sums of zigzag-coded residuals per partition at the finest order, merged pairwise for coarser ones
+            int parts = 1 << maxOrder;
+            long[] sums = new long[parts];
+            int size = n >> maxOrder;
+            for (int p = 0, i = predictorOrder; p < parts; p++) {
+                long s = 0;
+                for (int end = (p + 1) * size; i < end; i++) s += zigzag(r[i]);
+                sums[p] = s;
+            }
+
+            Rice best = null;
+            for (int order = maxOrder; order >= 0; order--) {
+                int count = 1 << order;
+                int partSize = n >> order;
+                int[] params = new int[count];
+                long bits = 2 + 4;
+                boolean wide = false;
+                for (int p = 0; p < count; p++) {
+                    int samples = p == 0 ? partSize - predictorOrder : partSize;
+                    long s = sums[p];
+                    int k = bestParam(s, samples);
+                    params[p] = k;
+                    wide |= k > 14;
+                    bits += (long) samples * (k + 1) + (s >>> k);
+                }
+                bits += (long) count * (wide ? 5 : 4);
+                if (best == null || bits < best.bits) {
+                    best = new Rice();
+                    best.partitionOrder = order;
+                    best.params = params;
+                    best.wide = wide;
+                    best.bits = bits;
+                }
+                for (int p = 0; p < count / 2; p++) sums[p] = sums[2 * p] + sums[2 * p + 1];
+            }
+            return best;
+        }
+
+        private static int bestParam(long sum, int samples) {
+            if (samples <= 0 || sum == 0) return 0;
+            long mean = sum / samples;
+            int k0 = mean > 0 ? 63 - Long.numberOfLeadingZeros(mean) : 0;
+            int best = 0;
+            long bestBits = Long.MAX_VALUE;
+            for (int k = Math.max(0, k0 - 1); k <= Math.min(MAX_RICE_PARAM, k0 + 1); k++) {
+                long bits = (long) samples * (k + 1) + (sum >>> k);
+                if (bits < bestBits) { bestBits = bits; best = k; }
+            }
+            return best;
+        }
+
+        void write(BitWriter w, int[] r, int n, int predictorOrder) {
+            w.write(wide ? 1 : 0, 2);
+            w.write(partitionOrder, 4);
+            int partSize = n >> partitionOrder;
+            int i = predictorOrder;
+            for (int p = 0; p < params.length; p++) {
+                int k = params[p];
+                w.write(k, wide ? 5 : 4);
+                long mask = (1L << k) - 1;
+                for (int end = (p + 1) * partSize; i < end; i++) {
+                    long u = zigzag(r[i]);
+                    long q = u >>> k;
+                    if (q + 1 + k <= BitWriter.MAX_BITS) {
+                        w.write((1L << k) | (u & mask), (int) q + 1 + k); // q zeros, the stop bit, k low bits
+                    } else {
+                        w.writeUnary(q);
+                        if (k > 0) w.write(u & mask, k);
+                    }
+                }
+            }
+        }
+
+        private static long zigzag(int v) {
+            long l = v;
+            return (l << 1) ^ (l >> 63);
+        }
+    }
+
+    private static double[] tukey(int n) {
+        double[] w = new double[n];
+        int taper = Math.max(1, (int) (0.25 * n)); // Tukey(0.5): a quarter of the block at each end
+        for (int i = 0; i < n; i++) {
+            int d = Math.min(i, n - 1 - i);
+            w[i] = d >= taper ? 1 : 0.5 - 0.5 * Math.cos(Math.PI * d / taper);
+        }
+        return w;
+    }
+
+    /** MSB-first bit packing into a growing byte array, with the frame CRCs over what was written. */
+    private static final class BitWriter {
+        private byte[] buf;
+        private int len;
+        private long acc;
+        private int accBits;
+
+        BitWriter(int capacity) { buf = new byte[Math.max(16, capacity)]; }
+
+        static final int MAX_BITS = 56;
+
+        /** The low {@code n} (at most {@link #MAX_BITS}) bits of {@code v}. */
+        void write(long v, int n) {
+            acc = (acc << n) | (v & ((1L << n) - 1));
+            accBits += n;
+            while (accBits >= 8) {
+                accBits -= 8;
+                put((byte) (acc >>> accBits));
+            }
+        }
+
+        void writeSigned(int v, int n) { write(v, n); }
+
+        /** {@code q} zeros and a one. */
+        void writeUnary(long q) {
+            while (q >= MAX_BITS) { write(0, MAX_BITS); q -= MAX_BITS; }
+            write(1, (int) q + 1);
+        }
+
+        void alignToByte() {
+            if (accBits > 0) write(0, 8 - accBits);
+        }
+
+        int crc8() {
+            int crc = 0;
+            for (int i = 0; i < len; i++) crc = CRC8[(crc ^ buf[i]) & 0xFF];
+            return crc;
+        }
+
+        int crc16() {
+            int crc = 0;
+            for (int i = 0; i < len; i++) crc = ((crc << 8) ^ CRC16[((crc >>> 8) ^ buf[i]) & 0xFF]) & 0xFFFF;
+            return crc;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buf, len); }
+
+        private void put(byte b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = b;
+        }
+    }
+}
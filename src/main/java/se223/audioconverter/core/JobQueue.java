@@ -0,0 +1,120 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pending jobs ordered by a {@link SchedulingPolicy}, with a bound on queueing delay:
+ * once the oldest waiting job has waited longer than {@code maxDelayNanos} it is served
+ * next, whatever its weight. Each entry sits in both an arrival-ordered deque and a
+ * policy-ordered heap; whichever structure hands it out first claims it. Guarded by a
+ * ReentrantLock rather than a monitor, as every virtual job thread polls it (see ExecutionEngine.Permits).
+ */
+final class JobQueue {
+
+    private static final class Entry {
+        final Runnable job;
+        final double weight;
+        final long seq;
+        final long enqueuedNanos;
+        final SchedulingPolicy policy;   // null: urgent, ahead of every policy
+        boolean claimed;
+
+        Entry(Runnable job, double weight, long seq, long enqueuedNanos, SchedulingPolicy policy) {
+            this.job = job; this.weight = weight; this.seq = seq; this.enqueuedNanos = enqueuedNanos; this.policy = policy;
+        }
+
+        /** Smaller key runs first; FIFO and ties fall back to arrival order. */
+        double key() {
+            if (policy == null) return Double.NEGATIVE_INFINITY;
+            return switch (policy) {
+                case FIFO -> 0;
+                case LONGEST_FIRST -> -weight;
+                case SHORTEST_FIRST -> weight;
+            };
+        }
+    }
+
+    private volatile long maxDelayNanos;
+    private final ArrayDeque<Entry> byArrival = new ArrayDeque<>();
+    private final PriorityQueue<Entry> byPolicy = new PriorityQueue<>(
+            Comparator.comparingDouble(Entry::key).thenComparingLong(e -> e.seq));
+    private final ReentrantLock lock = new ReentrantLock();
+    private long seq;
+    private boolean closed;
+
+    JobQueue(long maxDelayNanos) { this.maxDelayNanos = maxDelayNanos; }
+
+    void setMaxDelayNanos(long maxDelayNanos) { this.maxDelayNanos = maxDelayNanos; }
+
+    /** {@code weight} is the expected work, e.g. media seconds. False, and not queued, once closed. */
+    boolean add(Runnable job, double weight, SchedulingPolicy policy) {
+        lock.lock();
+        try {
+            if (closed) return false;
+            Entry e = new Entry(job, weight, seq++, System.nanoTime(), policy);
+            byArrival.addLast(e);
+            byPolicy.add(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Work that finishes an already started job (e.g. its segments); served before anything else. */
+    boolean addUrgent(Runnable job) {
+        lock.lock();
+        try {
+            if (closed) return false;
+            Entry e = new Entry(job, 0, seq++, System.nanoTime(), null);
+            byArrival.addLast(e);
+            byPolicy.add(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Next job to start, or null if none are waiting. */
+    Runnable poll() {
+        lock.lock();
+        try {
+            dropClaimed();
+            if (byArrival.isEmpty()) return null;
+
+            Entry oldest = byArrival.peekFirst();
+            Entry next = (System.nanoTime() - oldest.enqueuedNanos > maxDelayNanos) ? oldest : byPolicy.peek();
+            next.claimed = true;
+            dropClaimed();
+            return next.job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Refuses further adds and hands back every job that was still waiting, in arrival order. */
+    List<Runnable> close() {
+        lock.lock();
+        try {
+            closed = true;
+            List<Runnable> pending = new ArrayList<>();
+            for (Entry e : byArrival) if (!e.claimed) pending.add(e.job);
+            byArrival.clear();
+            byPolicy.clear();
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dropClaimed() {
+        while (!byArrival.isEmpty() && byArrival.peekFirst().claimed) byArrival.pollFirst();
+        while (!byPolicy.isEmpty() && byPolicy.peek().claimed) byPolicy.poll();
+    }
+}
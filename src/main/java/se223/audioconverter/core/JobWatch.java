@@ -0,0 +1,49 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.ResultStatus;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Supervision state of one started job: its ffmpeg processes (several for segmented
+ * encodes), when it started, when its progress last moved, and why it was killed, if it was.
+ */
+final class JobWatch {
+    final long startedNanos = System.nanoTime();
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private volatile long lastAdvanceNanos = startedNanos;
+    private volatile ResultStatus killedAs;
+
+    /** Registers a freshly started process; destroys it at once if the job is already dead. */
+    void attach(Process p) {
+        processes.add(p);
+        if (killedAs != null) destroyTree(p);
+    }
+
+    void detach(Process p) {
+        processes.remove(p);
+    }
+
+    /** Call when the encoded position moved forward. */
+    void advanced() {
+        lastAdvanceNanos = System.nanoTime();
+    }
+
+    long lastAdvanceNanos() { return lastAdvanceNanos; }
+
+    /** CANCELLED, TIMED_OUT or STALLED once killed, otherwise null. */
+    ResultStatus killedAs() { return killedAs; }
+
+    /** Destroys every process tree of this job; the first reason given wins. */
+    synchronized void kill(ResultStatus why) {
+        if (killedAs == null) killedAs = why;
+        processes.forEach(JobWatch::destroyTree);
+    }
+
+    /** ffmpeg may have children (e.g. protocol helpers); take those down too. */
+    private static void destroyTree(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
+}
@@ -0,0 +1,287 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.metrics.ConversionMetrics;
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.util.DebugLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Probed media metadata keyed by absolute path + size + mtime.
+ * Entries live in 64 access-ordered shards; each shard is loaded from its own file
+ * under the cache directory on first touch and evicts its least recently used entries
+ * beyond its share of {@code maxEntries}. Only misses spawn ffprobe.
+ */
+public class MediaInfoCache {
+    private static final int SHARDS = 64;
+    private static final String HEADER = "# audioconverter media cache v1";
+
+    private volatile Path ffprobe; // null: never probe, only serve what is cached
+    private volatile ConversionMetrics metrics = new ConversionMetrics(); // private until setMetrics
+    private final Path dir;       // null: memory only
+    private final int perShard;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    public MediaInfoCache(Path ffprobe, Path dir, int maxEntries) {
+        this.ffprobe = ffprobe;
+        this.dir = dir;
+        this.perShard = Math.max(1, maxEntries / SHARDS);
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard(i);
+    }
+
+    /** Cache under ~/.audioconverter/media-cache, bounded to 100k files. */
+    public static MediaInfoCache createDefault(Path ffprobe) {
+        Path dir = Paths.get(System.getProperty("user.home"), ".audioconverter", "media-cache");
+        return new MediaInfoCache(ffprobe, dir, 100_000);
+    }
+
+    /** Lets a cache created before ffprobe was found start probing; null goes back to cache-only. */
+    public void setFfprobe(Path ffprobe) { this.ffprobe = ffprobe; }
+
+    /** Where ffprobe run times are recorded from now on. */
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+
+    /** Cached metadata if it is still valid for the file on disk; never spawns ffprobe. */
+    public Optional<AudioFile> peek(Path file) {
+        BasicFileAttributes attrs = attributes(file);
+        if (attrs == null) return Optional.empty();
+        String key = keyOf(file);
+        AudioFile hit = shardOf(key).lookup(key);
+        if (hit != null && hit.matches(attrs.size(), attrs.lastModifiedTime().toMillis())) return Optional.of(hit);
+        return Optional.empty();
+    }
+
+    /** Expected media seconds of an input: cached duration, else a guess from size and typical bitrate. */
+    public double estimateSeconds(Path input) {
+        var cached = peek(input);
+        if (cached.isPresent() && cached.get().getDurationSeconds() > 0) return cached.get().getDurationSeconds();
+        try {
+            return guessSeconds(input, Files.size(input));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /** {@link #estimateSeconds(Path)}, guessed from the entry's size for an archive entry (those are never probed). */
+    public double estimateSeconds(ConversionRequest req) {
+        return req.isArchiveEntry() ? guessSeconds(req.input(), req.entry().size()) : estimateSeconds(req.input());
+    }
+
+    private static double guessSeconds(Path input, long bytes) {
+        String name = input.getFileName().toString().toLowerCase();
+        double bytesPerSecond = name.endsWith(".wav") ? 176_400      // 44.1 kHz 16-bit stereo
+                : name.endsWith(".flac") ? 88_200                     // ~50% of PCM
+                : 24_000;                                             // ~192 kbps lossy
+        return Math.max(0, bytes) / bytesPerSecond;
+    }
+
+    /** Cached metadata, probing (and remembering) the file on a miss. */
+    public Optional<AudioFile> get(Path file) {
+        BasicFileAttributes attrs = attributes(file);
+        if (attrs == null) return Optional.empty();
+        String key = keyOf(file);
+        Shard shard = shardOf(key);
+        long size = attrs.size();
+        long mtime = attrs.lastModifiedTime().toMillis();
+
+        AudioFile hit = shard.lookup(key);
+        if (hit != null && hit.matches(size, mtime)) return Optional.of(hit);
+        Path ffprobe = this.ffprobe; // read once: setFfprobe may run meanwhile
+        if (ffprobe == null) return Optional.empty();
+
+        long probeStart = System.nanoTime();
+        AudioFile probed = probe(ffprobe, file.toAbsolutePath().normalize(), size, mtime);
+        metrics.probed(System.nanoTime() - probeStart);
+        if (probed == null) return Optional.empty();
+        remember(probed);
+        return Optional.of(probed);
+    }
+
+    /** Caches metadata found without ffprobe; like a probe result it stops matching once the file changes. */
+    void remember(AudioFile info) {
+        String key = keyOf(info.getPath());
+        shardOf(key).store(key, info);
+    }
+
+    /** Makes sure every file is cached, probing the misses in parallel. Returns how many were probed. */
+    public int warm(Collection<Path> files) {
+        List<Path> misses = files.stream().filter(f -> peek(f).isEmpty()).toList();
+        misses.parallelStream().forEach(this::get);
+        if (!misses.isEmpty()) flush();
+        return misses.size();
+    }
+
+    /** Writes every modified shard back to disk; cheap when nothing changed. */
+    public void flush() {
+        if (dir == null) return;
+        for (Shard s : shards) {
+            try {
+                s.save();
+            } catch (IOException e) {
+                DebugLogger.e("Could not write media cache shard " + s.index, e);
+            }
+        }
+    }
+
+    private Shard shardOf(String key) {
+        return shards[(key.hashCode() & 0x7fffffff) % SHARDS];
+    }
+
+    private static String keyOf(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    private static BasicFileAttributes attributes(Path file) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class);
+            return a.isRegularFile() ? a : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static AudioFile probe(Path ffprobe, Path file, long size, long mtime) {
+        try {
+            List<String> cmd = List.of(
+                    ffprobe.toString(),
+                    "-v", "error",
+                    "-select_streams", "a:0",
+                    "-show_entries", "format=duration,bit_rate:stream=codec_name,sample_rate,channels,bit_rate",
+                    "-of", "flat",
+                    file.toString()
+            );
+            Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            Map<String, String> kv = new HashMap<>();
+            try (var r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    // flat output: streams.stream.0.codec_name="aac", format.duration="5.000000"
+                    int eq = line.indexOf('=');
+                    if (eq < 0) continue;
+                    String v = line.substring(eq + 1).trim();
+                    if (v.startsWith("\"") && v.endsWith("\"") && v.length() >= 2) v = v.substring(1, v.length() - 1);
+                    kv.put(line.substring(0, eq), v);
+                }
+            }
+            if (p.waitFor() != 0) return null;
+
+            String codec = kv.get("streams.stream.0.codec_name");
+            String bitrate = kv.getOrDefault("streams.stream.0.bit_rate", kv.get("format.bit_rate"));
+            return new AudioFile(file, size, mtime,
+                    parseDouble(kv.get("format.duration"), -1),
+                    codec,
+                    (int) parseDouble(kv.get("streams.stream.0.sample_rate"), 0),
+                    (int) parseDouble(kv.get("streams.stream.0.channels"), 0),
+                    (int) (parseDouble(bitrate, 0) / 1000));
+        } catch (Exception e) {
+            DebugLogger.e("ffprobe failed for " + file, e);
+            return null;
+        }
+    }
+
+    private static double parseDouble(String s, double fallback) {
+        if (s == null) return fallback;
+        try { return Double.parseDouble(s); } catch (NumberFormatException e) { return fallback; } // "N/A"
+    }
+
+    /** One access-ordered slice of the cache, backed by {@code <dir>/<index>.tsv}. */
+    private final class Shard {
+        final int index;
+        final ReentrantLock lock = new ReentrantLock(); // loads and saves do file I/O, often on virtual threads
+        final LinkedHashMap<String, AudioFile> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, AudioFile> eldest) {
+                if (size() <= perShard) return false;
+                dirty = true;
+                return true;
+            }
+        };
+        boolean loaded;
+        boolean dirty;
+
+        Shard(int index) { this.index = index; }
+
+        AudioFile lookup(String key) {
+            lock.lock();
+            try {
+                load();
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void store(String key, AudioFile file) {
+            lock.lock();
+            try {
+                load();
+                entries.put(key, file);
+                dirty = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Path file() { return dir.resolve(String.format("%02d.tsv", index)); }
+
+        private void load() {
+            if (loaded) return;
+            loaded = true;
+            if (dir == null || !Files.isRegularFile(file())) return;
+            try (BufferedReader r = Files.newBufferedReader(file())) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.startsWith("#")) continue;
+                    String[] f = line.split("\t", -1);
+                    if (f.length != 8) continue;
+                    // file is written eldest-first, so re-inserting restores the LRU order
+                    entries.put(f[0], new AudioFile(Paths.get(f[0]),
+                            Long.parseLong(f[1]), Long.parseLong(f[2]), Double.parseDouble(f[3]),
+                            "-".equals(f[4]) ? null : f[4],
+                            Integer.parseInt(f[5]), Integer.parseInt(f[6]), Integer.parseInt(f[7])));
+                }
+            } catch (IOException | RuntimeException e) {
+                // a damaged shard is only a cache miss
+                entries.clear();
+                DebugLogger.e("Ignoring unreadable media cache shard " + file(), e);
+            }
+            dirty = false;
+        }
+
+        void save() throws IOException {
+            lock.lock();
+            try {
+                saveLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void saveLocked() throws IOException {
+            if (!dirty) return;
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve(String.format("%02d.tsv.tmp", index));
+            try (BufferedWriter w = Files.newBufferedWriter(tmp)) {
+                w.write(HEADER);
+                w.newLine();
+                for (var e : entries.entrySet()) {
+                    AudioFile a = e.getValue();
+                    if (e.getKey().indexOf('\t') >= 0 || e.getKey().indexOf('\n') >= 0) continue;
+                    w.write(e.getKey() + "\t" + a.getSizeBytes() + "\t" + a.getLastModifiedMillis() + "\t"
+                            + a.getDurationSeconds() + "\t" + (a.hasAudio() ? a.getCodec() : "-") + "\t"
+                            + a.getSampleRateHz() + "\t" + a.getChannelCount() + "\t" + a.getBitrateKbps());
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, file(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        }
+    }
+}
@@ -3,22 +3,46 @@ package se223.audioconverter.core;
 import se223.audioconverter.exception.ConversionException;
 import se223.audioconverter.model.ConversionRequest;
 import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.ConversionSettings;
+import se223.audioconverter.model.ResultStatus;
+import se223.audioconverter.model.SchedulingPolicy;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 public class MockAudioConverter implements AudioConverter {
 
-    private final ExecutorService pool;
+    /** Pause between the 20 simulated progress steps, so a job takes about 1.2 s. */
+    public static final Duration DEFAULT_STEP_DELAY = Duration.ofMillis(60);
+
+    private final ExecutionEngine engine;
+    private final boolean ownsEngine;
+    private volatile Duration stepDelay = DEFAULT_STEP_DELAY;
 
     public MockAudioConverter(int parallelism) {
-        this.pool = Executors.newFixedThreadPool(parallelism);
+        this.engine = new ExecutionEngine(ConcurrencyTuner.fixed(parallelism), FFmpegAudioConverter.DEFAULT_MAX_QUEUE_DELAY);
+        this.ownsEngine = true;
+    }
+
+    /** Runs on a shared engine, which the caller closes. */
+    public MockAudioConverter(ExecutionEngine engine) {
+        this.engine = engine;
+        this.ownsEngine = false;
     }
 
     @Override
-    public CompletableFuture<List<ConversionResult>> convertAll(
+    public int getWorkerCount() { return engine.getPermits(); }
+
+    /** ZERO runs the steps back to back, leaving only the scheduling and callback cost. */
+    public void setStepDelay(Duration delay) { this.stepDelay = delay; }
+
+    @Override
+    public ConversionJob convertAll(
             List<ConversionRequest> requests,
             ProgressCallback progress) throws ConversionException {
 
@@ -26,35 +50,63 @@ public class MockAudioConverter implements AudioConverter {
             throw new ConversionException("No files to convert.");
         }
 
-        List<CompletableFuture<ConversionResult>> futures = new ArrayList<>();
+        List<ExecutionEngine.Task<List<ConversionResult>>> tasks = new ArrayList<>();
         final int total = requests.size();
+        final ConversionJob job = new ConversionJob();
+        progress.onBatchScheduled(SchedulingPolicy.FIFO, total);
+        progress.onBatchWeight(total); // every simulated job is the same length
 
         for (int i = 0; i < total; i++) {
             final int idx = i;
             var req = requests.get(i);
-
-            CompletableFuture<ConversionResult> f = CompletableFuture.supplyAsync(() -> {
-                String name = req.input().getFileName().toString();
-                // simulate work in 20 steps
-                for (int step = 1; step <= 20; step++) {
-                    try { Thread.sleep(60); } catch (InterruptedException ignored) {}
-                    double p = step / 20.0;
-                    progress.onProgress(name, p, idx + 1, total);
-                }
-                Path out = req.outputDir().resolve(name + ".mock");
-                return new ConversionResult(req.input(), out, true, "Mock OK");
-            }, pool);
-
-            futures.add(f);
+            tasks.add(new ExecutionEngine.Task<>(() -> simulate(req, idx, total, progress, job), 0));
         }
+        List<CompletableFuture<List<ConversionResult>>> futures = engine.submitAll(tasks, SchedulingPolicy.FIFO);
 
-        return CompletableFuture
-                .allOf(futures.toArray(new CompletableFuture[0]))
-                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            if (ex != null) job.completeExceptionally(ex);
+            else job.complete(futures.stream().flatMap(f -> f.join().stream()).toList());
+        });
+        return job;
+    }
+
+    @Override
+    public Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests, ProgressCallback progress) {
+        int total = requests instanceof Collection<?> c ? c.size() : 0;
+        return new ResultPublisher(requests, 2 * engine.getPermits(), (req, idx, job) -> engine.submit(
+                new ExecutionEngine.Task<>(() -> simulate(req, idx, total, progress, job), 0), SchedulingPolicy.FIFO),
+                () -> { });
+    }
+
+    private List<ConversionResult> simulate(
+            ConversionRequest req, int idx, int total, ProgressCallback progress, ConversionJob job) {
+        String name = req.input().getFileName().toString();
+        progress.onJobStarted(name, idx + 1, 1);
+        // simulate work in 20 steps
+        long delayMs = stepDelay.toMillis();
+        boolean cancelled = false;
+        for (int step = 1; step <= 20 && !(cancelled = job.isCancelRequested()); step++) {
+            if (delayMs > 0) try { Thread.sleep(delayMs); } catch (InterruptedException ignored) {}
+            double p = step / 20.0;
+            progress.onProgress(name, p, idx + 1, total);
+        }
+        // one result per target, like the real converter
+        List<ConversionResult> results = new ArrayList<>();
+        for (ConversionSettings target : req.targets()) {
+            if (cancelled) {
+                results.add(new ConversionResult(req.input(), null, ResultStatus.CANCELLED, "Cancelled"));
+                continue;
+            }
+            String ext = FFmpegCommandBuilder.extensionFor(target.getFormat());
+            Path out = req.outputDir().resolve(name + "." + ext + ".mock");
+            results.add(new ConversionResult(req.input(), out, true, "Mock OK"));
+        }
+        return results;
     }
 
     @Override
     public void close() {
-        pool.shutdownNow();
+        if (ownsEngine) engine.close();
     }
 }
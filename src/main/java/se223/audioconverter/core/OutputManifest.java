@@ -0,0 +1,171 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.ArchiveEntry;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionSettings;
+import se223.audioconverter.util.DebugLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What every output in one directory was built from (input size/mtime + settings fingerprint),
+ * stored as {@value #FILE_NAME}. Used by OverwritePolicy.INCREMENTAL to skip unchanged work.
+ * An archive entry is keyed by {@code archive!/name}, its size and the archive's mtime, as it has no
+ * file of its own. Every record is appended to the file straight away, so a crash or cancel loses nothing that
+ * finished; {@link #compact} later drops the lines that newer ones superseded.
+ */
+public class OutputManifest {
+    public static final String FILE_NAME = ".audioconverter-manifest";
+    private static final String HEADER = "# audioconverter output manifest v1";
+
+    /** Appends and rewrites of any manifest; converters sharing an output directory each hold their own instance. */
+    private static final ReentrantLock FILE_LOCK = new ReentrantLock();
+
+    private record Entry(String input, long inputSize, long inputMtime, String settings, long outputSize) {}
+
+    /** What an output was built from, as far as the manifest can tell. */
+    private record Source(String key, long size, long mtime) {}
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean appended;
+
+    private OutputManifest(Path file) { this.file = file; }
+
+    /** Reads the manifest of {@code outputDir}; a missing file gives an empty one, damaged lines are skipped. */
+    public static OutputManifest load(Path outputDir) {
+        OutputManifest m = new OutputManifest(outputDir.resolve(FILE_NAME));
+        m.entries.putAll(read(m.file));
+        return m;
+    }
+
+    /** True if {@code output} exists untouched and was built from this exact input state and settings. */
+    public boolean isUpToDate(Path input, ConversionSettings settings, Path output) {
+        return isUpToDate(sourceOf(input), settings, output);
+    }
+
+    /** Same for a request's input, which may be an archive entry. */
+    public boolean isUpToDate(ConversionRequest req, ConversionSettings settings, Path output) {
+        return isUpToDate(sourceOf(req), settings, output);
+    }
+
+    private boolean isUpToDate(Source in, ConversionSettings settings, Path output) {
+        Entry e = entries.get(output.getFileName().toString());
+        if (e == null || in == null) return false;
+        if (!e.input().equals(in.key()) || !e.settings().equals(settings.fingerprint())) return false;
+        BasicFileAttributes out = attributes(output);
+        return out != null && in.size() == e.inputSize() && in.mtime() == e.inputMtime() && out.size() == e.outputSize();
+    }
+
+    /** Remembers a freshly written output, on disk before returning; call only after it was produced successfully. */
+    public void record(Path input, ConversionSettings settings, Path output) {
+        record(sourceOf(input), settings, output);
+    }
+
+    /** Same for a request's input, which may be an archive entry. */
+    public void record(ConversionRequest req, ConversionSettings settings, Path output) {
+        record(sourceOf(req), settings, output);
+    }
+
+    private void record(Source in, ConversionSettings settings, Path output) {
+        BasicFileAttributes out = attributes(output);
+        if (in == null || out == null) return;
+        String name = output.getFileName().toString();
+        Entry e = new Entry(in.key(), in.size(), in.mtime(), settings.fingerprint(), out.size());
+        entries.put(name, e);
+        if (name.indexOf('\t') >= 0 || e.input().indexOf('\t') >= 0) return;
+        FILE_LOCK.lock();
+        try {
+            String line = lineOf(name, e) + System.lineSeparator();
+            if (!Files.exists(file)) line = HEADER + System.lineSeparator() + line;
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            appended = true;
+        } catch (IOException ex) {
+            DebugLogger.e("Could not append to manifest " + file, ex);
+        } finally {
+            FILE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the file with one line per output if this instance appended to it. Starts from what is
+     * on disk, not from memory, so records another converter appended meanwhile are kept.
+     */
+    public void compact() {
+        if (!appended) return;
+        FILE_LOCK.lock();
+        try {
+            appended = false;
+            Map<String, Entry> latest = read(file);
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp)) {
+                w.write(HEADER);
+                w.newLine();
+                for (var me : latest.entrySet()) {
+                    w.write(lineOf(me.getKey(), me.getValue()));
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            DebugLogger.e("Could not compact manifest " + file, e);
+        } finally {
+            FILE_LOCK.unlock();
+        }
+    }
+
+    /** Later lines win; a line cut short by a crash is skipped. */
+    private static Map<String, Entry> read(Path file) {
+        Map<String, Entry> read = new HashMap<>();
+        if (!Files.isRegularFile(file)) return read;
+        try (BufferedReader r = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                String[] f = line.split("\t", -1);
+                if (f.length != 6) continue;
+                try {
+                    read.put(f[0], new Entry(f[1], Long.parseLong(f[2]), Long.parseLong(f[3]), f[4], Long.parseLong(f[5])));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            DebugLogger.e("Ignoring unreadable manifest " + file, e);
+        }
+        return read;
+    }
+
+    private static String lineOf(String output, Entry e) {
+        return output + "\t" + e.input() + "\t" + e.inputSize() + "\t" + e.inputMtime()
+                + "\t" + e.settings() + "\t" + e.outputSize();
+    }
+
+    private static Source sourceOf(Path input) {
+        BasicFileAttributes a = attributes(input);
+        return a == null ? null : new Source(input.toAbsolutePath().normalize().toString(), a.size(), a.lastModifiedTime().toMillis());
+    }
+
+    private static Source sourceOf(ConversionRequest req) {
+        if (!req.isArchiveEntry()) return sourceOf(req.input());
+        ArchiveEntry entry = req.entry();
+        Source archive = sourceOf(entry.archive());
+        return archive == null ? null : new Source(archive.key() + "!/" + entry.name(), entry.size(), archive.mtime());
+    }
+
+    private static BasicFileAttributes attributes(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
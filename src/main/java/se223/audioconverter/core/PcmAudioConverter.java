@@ -0,0 +1,590 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.metrics.ConversionMetrics;
+import se223.audioconverter.model.*;
+import se223.audioconverter.util.DebugLogger;
+import se223.audioconverter.util.OutputNameIndex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Converts PCM WAV input to WAV or FLAC inside the JVM: resampling, mono/stereo mixing and
+ * bit-depth changes, without starting a process. Input (and WAV output) is memory-mapped a
+ * window at a time and samples move through fixed-size blocks, so memory use does not depend
+ * on file size. FLAC frames of one file are encoded in parallel on a shared frame pool.
+ * Requests it cannot take (see {@link #supports}) belong to another converter.
+ */
+public class PcmAudioConverter implements AudioConverter {
+
+    private static final int BLOCK_FRAMES = 8192;
+    private static final long WINDOW_BYTES = 64L << 20;   // mapped at once, per file
+    private static final float SQRT_HALF = 0.70710677f;
+    private static final int FLAC_ROUND_PER_THREAD = 4;   // FLAC frames queued per pool thread while the last round is written
+
+    private final ExecutionEngine engine;
+    private final boolean ownsEngine;
+    private final MediaInfoCache mediaCache;
+    private final Map<Path, OutputManifest> manifests = new ConcurrentHashMap<>();
+    private final OutputNameIndex outputNames = OutputNameIndex.shared();
+    private final ForkJoinPool framePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private volatile ConversionMetrics metrics = new ConversionMetrics(); // private until setMetrics
+
+    public PcmAudioConverter(int parallelism, MediaInfoCache mediaCache) {
+        this.engine = new ExecutionEngine(ConcurrencyTuner.fixed(parallelism), FFmpegAudioConverter.DEFAULT_MAX_QUEUE_DELAY);
+        this.ownsEngine = true;
+        this.mediaCache = mediaCache;
+    }
+
+    /** Runs on a shared engine, which the caller closes. */
+    public PcmAudioConverter(ExecutionEngine engine, MediaInfoCache mediaCache) {
+        this.engine = engine;
+        this.ownsEngine = false;
+        this.mediaCache = mediaCache;
+    }
+
+    /** True if every target is FLAC or WAV (at a depth we write) and the input is a PCM or float WAV file; reads only the header. */
+    public boolean supports(ConversionRequest req) {
+        for (ConversionSettings target : req.targets()) {
+            boolean ok = switch (target.getFormat()) {
+                case WAV -> isSupportedDepth(target.getBitDepth());
+                case FLAC -> true;
+                default -> false;
+            };
+            if (!ok) return false;
+        }
+        if (req.isArchiveEntry() || !req.input().getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav")) return false;
+        try (FileChannel ch = FileChannel.open(req.input(), StandardOpenOption.READ)) {
+            WavFormat.read(ch);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static boolean isSupportedDepth(int bits) {
+        return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+    }
+
+    @Override
+    public int getWorkerCount() { return engine.getPermits(); }
+
+    /** Where jobs and in-process encodes are counted from now on. */
+    public void setMetrics(ConversionMetrics metrics) { this.metrics = metrics; }
+
+    @Override
+    public ConversionJob convertAll(
+            List<ConversionRequest> requests, ProgressCallback progress) throws ConversionException {
+        return convertAll(requests, progress, SchedulingPolicy.FIFO);
+    }
+
+    @Override
+    public ConversionJob convertAll(
+            List<ConversionRequest> requests, ProgressCallback progress, SchedulingPolicy policy) throws ConversionException {
+
+        if (requests == null || requests.isEmpty())
+            throw new ConversionException("No files to convert.");
+
+        final int total = requests.size();
+        final AtomicInteger started = new AtomicInteger();
+        final ConversionJob job = new ConversionJob();
+        ConversionMetrics m = metrics;
+        m.jobsQueued(total);
+        progress.onBatchScheduled(policy, total);
+
+        List<ExecutionEngine.Task<List<ConversionResult>>> tasks = new ArrayList<>();
+        double batchWeight = 0;
+        for (ConversionRequest req : requests) {
+            double weight = mediaCache.estimateSeconds(req.input());
+            batchWeight += weight;
+            tasks.add(new ExecutionEngine.Task<>(() -> {
+                int order = started.incrementAndGet();
+                m.jobsStarted(1);
+                List<ConversionResult> rs;
+                if (job.isCancelRequested()) {
+                    rs = cancelled(req);
+                } else {
+                    progress.onJobStarted(req.input().getFileName().toString(), order, weight);
+                    rs = run(req, order - 1, total, progress, job);
+                }
+                m.jobFinished(req, rs);
+                return rs.stream().map(r -> r.withSchedule(policy, order)).toList();
+            }, weight));
+        }
+        progress.onBatchWeight(batchWeight);
+        List<CompletableFuture<List<ConversionResult>>> futures = engine.submitAll(tasks, policy);
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, ex) -> {
+            releaseManifests();
+            if (ex != null) job.completeExceptionally(ex);
+            else job.complete(futures.stream().flatMap(f -> f.join().stream()).toList());
+        });
+        return job;
+    }
+
+    @Override
+    public Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests, ProgressCallback progress) {
+        int total = requests instanceof Collection<?> c ? c.size() : 0;
+        return new ResultPublisher(requests, 2 * engine.getPermits(), (req, index, job) -> {
+            double weight = mediaCache.estimateSeconds(req.input());
+            ConversionMetrics m = metrics;
+            m.jobsQueued(1);
+            return engine.submit(new ExecutionEngine.Task<>(() -> {
+                m.jobsStarted(1);
+                List<ConversionResult> rs;
+                if (job.isCancelRequested()) {
+                    rs = cancelled(req);
+                } else {
+                    progress.onJobStarted(req.input().getFileName().toString(), index + 1, weight);
+                    rs = run(req, index, total, progress, job);
+                }
+                m.jobFinished(req, rs);
+                return rs;
+            }, weight), SchedulingPolicy.FIFO);
+        }, this::releaseManifests);
+    }
+
+    private static List<ConversionResult> cancelled(ConversionRequest req) {
+        return req.targets().stream()
+                .map(t -> new ConversionResult(req.input(), null, ResultStatus.CANCELLED, "Cancelled")).toList();
+    }
+
+    /** One request: every target is read from the same open input, one after another. */
+    private List<ConversionResult> run(ConversionRequest req, int idx, int total, ProgressCallback cb, ConversionJob job) {
+        String name = req.input().getFileName().toString();
+        List<ConversionSettings> targets = req.targets();
+        ConversionResult[] results = new ConversionResult[targets.size()];
+
+        try (FileChannel src = FileChannel.open(req.input(), StandardOpenOption.READ)) {
+            WavFormat format = WavFormat.read(src);
+            for (int t = 0; t < results.length; t++) {
+                ConversionSettings settings = targets.get(t);
+                OverwritePolicy policy = Optional.ofNullable(settings.getOverwritePolicy()).orElse(OverwritePolicy.RENAME);
+                String ext = FFmpegCommandBuilder.extensionFor(settings.getFormat());
+                OutputNameIndex.Reservation out = outputNames.reserve(req.input(), req.outputDir(), ext, policy);
+
+                if (out == null) {
+                    results[t] = new ConversionResult(req.input(), null, ResultStatus.SKIPPED, "Skipped (exists)");
+                } else if (policy == OverwritePolicy.INCREMENTAL
+                        && manifestFor(req.outputDir()).isUpToDate(req, settings, out.target())) {
+                    out.abort();
+                    results[t] = new ConversionResult(req.input(), out.target(), ResultStatus.UP_TO_DATE, "Up to date");
+                } else if (job.isCancelRequested()) {
+                    out.abort();
+                    results[t] = new ConversionResult(req.input(), null, ResultStatus.CANCELLED, "Cancelled");
+                } else {
+                    int done = t;
+                    DoubleConsumer progress = p -> cb.onProgress(name, (done + p) / results.length, idx + 1, total);
+                    long encodeStart = System.nanoTime();
+                    results[t] = convert(req.input(), src, format, settings, out, progress, job);
+                    metrics.encoded(System.nanoTime() - encodeStart, results[t].getStatus() == ResultStatus.OK
+                            ? (double) format.frames() / format.sampleRate() : 0);
+                    if (results[t].getStatus() == ResultStatus.OK && policy == OverwritePolicy.INCREMENTAL)
+                        manifestFor(req.outputDir()).record(req, settings, out.target());
+                }
+            }
+        } catch (IOException e) {
+            DebugLogger.e("Cannot read " + req.input(), e);
+            for (int t = 0; t < results.length; t++) {
+                if (results[t] == null) results[t] = new ConversionResult(req.input(), null, false, e.getMessage());
+            }
+        }
+        cb.onProgress(name, 1.0, idx + 1, total);
+        return Arrays.asList(results);
+    }
+
+    /** Writes the reservation's part file and commits it; every outcome ends the reservation. */
+    private ConversionResult convert(Path input, FileChannel src, WavFormat in, ConversionSettings target,
+                                     OutputNameIndex.Reservation out, DoubleConsumer progress, ConversionJob job) {
+        int outChannels = target.getChannels() == Channels.MONO ? 1 : 2;
+        int outRate = target.getSampleRateHz() > 0 ? target.getSampleRateHz() : in.sampleRate();
+        long outFrames = SincResampler.outputFrames(in.frames(), in.sampleRate(), outRate);
+        boolean flac = target.getFormat() == AudioFormat.FLAC;
+        // FLAC keeps 16-bit sources at 16 bits; anything wider (or float) becomes 24-bit
+        int outBytes = flac ? (in.floating() || in.bytesPerSample() > 2 ? 3 : 2) : target.getBitDepth() / 8;
+        long dataBytes = outFrames * outChannels * outBytes;
+        if (!flac && dataBytes > WavFormat.MAX_DATA_BYTES) {
+            out.abort();
+            return new ConversionResult(input, null, false, "Output exceeds the 4 GB WAV size limit");
+        }
+
+        // same layout: the sample bytes are copied as they are
+        boolean copy = !flac && !in.floating() && in.channels() == outChannels && in.sampleRate() == outRate
+                && in.bytesPerSample() == outBytes;
+        boolean finished;
+        try (FileChannel dst = FileChannel.open(out.part(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (flac) {
+                finished = new FlacFrames(src, in, outChannels, outRate, outBytes * 8, outFrames)
+                        .encode(dst, framePool, progress, job);
+            } else {
+                dst.write(WavFormat.header(outChannels, outRate, outBytes * 8, dataBytes), 0);
+                finished = copy
+                        ? copyData(src, in, dst, progress, job)
+                        : transcode(src, in, dst, outChannels, outRate, outBytes, outFrames, progress, job);
+                if (finished && (dataBytes & 1) != 0) {
+                    dst.write(ByteBuffer.allocate(1), WavFormat.HEADER_BYTES + dataBytes); // RIFF pad byte
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            DebugLogger.e("In-process conversion failed for " + input, e);
+            out.abort();
+            return new ConversionResult(input, null, false, e.getMessage());
+        }
+        if (!finished) {
+            out.abort();
+            return new ConversionResult(input, null, ResultStatus.CANCELLED, "Cancelled");
+        }
+        try {
+            out.commit();
+        } catch (IOException e) {
+            return new ConversionResult(input, null, false, "Could not move output into place: " + e.getMessage());
+        }
+        return copy
+                ? new ConversionResult(input, out.target(), ResultStatus.OK, ConversionStrategy.REMUX, "Copied PCM data")
+                : new ConversionResult(input, out.target(), ResultStatus.OK, ConversionStrategy.TRANSCODE, "Converted in-process");
+    }
+
+    private static boolean copyData(FileChannel src, WavFormat in, FileChannel dst, DoubleConsumer progress,
+                                    ConversionJob job) throws IOException {
+        long length = in.dataLength();
+        long copied = 0;
+        dst.position(WavFormat.HEADER_BYTES);
+        while (copied < length) {
+            if (job.isCancelRequested()) return false;
+            long n = src.transferTo(in.dataOffset() + copied, Math.min(WINDOW_BYTES, length - copied), dst);
+            if (n <= 0) throw new IOException("Input ended early");
+            copied += n;
+            progress.accept((double) copied / length);
+        }
+        return true;
+    }
+
+    private static boolean transcode(FileChannel src, WavFormat in, FileChannel dst, int outChannels, int outRate,
+                                     int outBytes, long outFrames, DoubleConsumer progress, ConversionJob job) throws IOException {
+        int inChannels = in.channels();
+        long inFrames = in.frames();
+        MappedWindow reader = new MappedWindow(src, FileChannel.MapMode.READ_ONLY, in.dataOffset(), in.frameBytes());
+        MappedWindow writer = new MappedWindow(dst, FileChannel.MapMode.READ_WRITE, WavFormat.HEADER_BYTES, outChannels * outBytes);
+
+        float[][] mix = inChannels == outChannels ? null : mixMatrix(inChannels, outChannels);
+        SincResampler resampler = in.sampleRate() == outRate ? null : new SincResampler(outChannels, in.sampleRate(), outRate);
+        float[] decoded = new float[BLOCK_FRAMES * inChannels];
+        float[] mixed = mix == null ? decoded : new float[BLOCK_FRAMES * outChannels];
+        float[] resampled = resampler == null ? mixed : new float[resampler.maxOutput(BLOCK_FRAMES) * outChannels];
+
+        long read = 0, written = 0; // the resampler's count matches outFrames exactly
+        double reported = 0;
+        while (read < inFrames) {
+            if (job.isCancelRequested()) return false;
+            int n = (int) Math.min(BLOCK_FRAMES, Math.min(inFrames - read, reader.seek(read, inFrames)));
+            decode(reader.buffer(), reader.buffer().position(), in, decoded, n * inChannels);
+            read += n;
+            if (mix != null) SampleKernels.PREFERRED.mix(decoded, n, inChannels, mix, mixed, outChannels);
+            int m = resampler == null ? n : resampler.process(mixed, n, resampled, read == inFrames);
+            written += write(writer, written, outFrames, resampled, m, outChannels, outBytes);
+
+            double p = (double) read / inFrames;
+            if (p - reported >= 0.01) {
+                progress.accept(p);
+                reported = p;
+            }
+        }
+        return true;
+    }
+
+    /** Encodes {@code frames} frames at output frame {@code at}, spanning mapping windows as needed. */
+    private static long write(MappedWindow writer, long at, long outFrames, float[] samples, int frames,
+                              int channels, int bytes) throws IOException {
+        int todo = (int) Math.min(frames, outFrames - at);
+        int done = 0;
+        while (done < todo) {
+            int n = (int) Math.min(todo - done, writer.seek(at + done, outFrames));
+            encode(samples, done * channels, n * channels, writer.buffer(), bytes);
+            done += n;
+        }
+        return done;
+    }
+
+    /** Interleaved samples from byte {@code p} of a mapped buffer, scaled to [-1, 1). */
+    private static void decode(ByteBuffer b, int p, WavFormat f, float[] dst, int count) {
+        switch (f.bytesPerSample()) {
+            case 1 -> { for (int i = 0; i < count; i++) dst[i] = ((b.get(p + i) & 0xFF) - 128) * (1f / 128); }
+            case 2 -> { for (int i = 0; i < count; i++) dst[i] = b.getShort(p + 2 * i) * (1f / 32768); }
+            case 3 -> {
+                for (int i = 0, q = p; i < count; i++, q += 3) {
+                    int v = (b.get(q) & 0xFF) | (b.get(q + 1) & 0xFF) << 8 | b.get(q + 2) << 16;
+                    dst[i] = v * (1f / 8388608);
+                }
+            }
+            case 4 -> {
+                if (f.floating()) for (int i = 0; i < count; i++) dst[i] = b.getFloat(p + 4 * i);
+                else for (int i = 0; i < count; i++) dst[i] = b.getInt(p + 4 * i) * (1f / 2147483648f);
+            }
+            default -> { for (int i = 0; i < count; i++) dst[i] = (float) b.getDouble(p + 8 * i); }
+        }
+    }
+
+    /** Rounds and clips {@code count} samples from {@code src[from]} into the buffer at its position. */
+    private static void encode(float[] src, int from, int count, ByteBuffer b, int bytes) {
+        int p = b.position();
+        switch (bytes) {
+            case 1 -> {
+                for (int i = 0; i < count; i++) b.put(p + i, (byte) (clip(Math.round(src[from + i] * 128f), 127) + 128));
+            }
+            case 2 -> {
+                for (int i = 0; i < count; i++) b.putShort(p + 2 * i, (short) clip(Math.round(src[from + i] * 32768f), 32767));
+            }
+            case 3 -> {
+                for (int i = 0, q = p; i < count; i++, q += 3) {
+                    int v = clip(Math.round(src[from + i] * 8388608f), 8388607);
+                    b.put(q, (byte) v).put(q + 1, (byte) (v >> 8)).put(q + 2, (byte) (v >> 16));
+                }
+            }
+            default -> {
+                for (int i = 0; i < count; i++) {
+                    long v = Math.round(src[from + i] * 2147483648.0);
+                    b.putInt(p + 4 * i, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, v)));
+                }
+            }
+        }
+    }
+
+    private static int clip(int v, int max) {
+        return Math.max(-max - 1, Math.min(max, v));
+    }
+
+    /**
+     * Gains from each input channel to each output channel, in WAV channel order
+     * (FL, FR, FC, LFE, BL, BR, ...). Stereo takes centre and surrounds at -3 dB and drops LFE;
+     * mono is the average of that. Rows are normalised so a full-scale input cannot clip.
+     */
+    static float[][] mixMatrix(int inChannels, int outChannels) {
+        float[][] stereo = new float[2][inChannels];
+        if (inChannels == 1) {
+            stereo[0][0] = stereo[1][0] = 1;
+        } else {
+            stereo[0][0] = stereo[1][1] = 1;
+            for (int c = 2; c < inChannels; c++) {
+                if (c == 3) continue; // LFE
+                if (c == 2) { stereo[0][c] = stereo[1][c] = SQRT_HALF; }
+                else stereo[c % 2][c] = SQRT_HALF; // even: left side, odd: right side
+            }
+        }
+        for (float[] row : stereo) {
+            float sum = 0;
+            for (float g : row) sum += g;
+            if (sum > 1) for (int c = 0; c < row.length; c++) row[c] /= sum;
+        }
+        if (outChannels == 2) return stereo;
+        float[] mono = new float[inChannels];
+        for (int c = 0; c < inChannels; c++) mono[c] = (stereo[0][c] + stereo[1][c]) / 2;
+        return new float[][] { mono };
+    }
+
+    private OutputManifest manifestFor(Path outputDir) {
+        return manifests.computeIfAbsent(outputDir.toAbsolutePath().normalize(), OutputManifest::load);
+    }
+
+    /** Records are already on disk; the next batch re-reads them rather than trusting this one's copy. */
+    private void releaseManifests() {
+        for (Path dir : manifests.keySet()) {
+            OutputManifest m = manifests.remove(dir);
+            if (m != null) m.compact();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsEngine) engine.close();
+        framePool.shutdownNow();
+    }
+
+    /** One encoded FLAC frame and its samples as little-endian PCM, for the stream MD5. */
+    private record EncodedFrame(byte[] data, byte[] pcm) { }
+
+    /**
+     * Produces the FLAC frames of one output. Each frame decodes, mixes and resamples exactly
+     * the input it needs, so frames encode independently on the pool; the caller's thread
+     * writes and hashes one round in order while the next round is being encoded.
+     */
+    private static final class FlacFrames {
+        private final WavFormat in;
+        private final MappedWindow reader;
+        private final int outChannels, outRate, bits;
+        private final long outFrames;
+        private final float[][] mix;
+
+        FlacFrames(FileChannel src, WavFormat in, int outChannels, int outRate, int bits, long outFrames) {
+            this.in = in;
+            this.reader = new MappedWindow(src, FileChannel.MapMode.READ_ONLY, in.dataOffset(), in.frameBytes());
+            this.outChannels = outChannels;
+            this.outRate = outRate;
+            this.bits = bits;
+            this.outFrames = outFrames;
+            this.mix = in.channels() == outChannels ? null : mixMatrix(in.channels(), outChannels);
+        }
+
+        boolean encode(FileChannel dst, ForkJoinPool pool, DoubleConsumer progress, ConversionJob job) throws IOException {
+            MessageDigest md5;
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JRE has MD5
+            }
+            dst.write(ByteBuffer.wrap(FlacEncoder.streamHeader(outRate, outChannels, bits, outFrames, 0, 0, new byte[16])), 0);
+            dst.position(FlacEncoder.HEADER_BYTES);
+
+            long blocks = (outFrames + FlacEncoder.BLOCK_SIZE - 1) / FlacEncoder.BLOCK_SIZE;
+            int perRound = FLAC_ROUND_PER_THREAD * pool.getParallelism();
+            int minFrame = Integer.MAX_VALUE, maxFrame = 0;
+            List<ForkJoinTask<EncodedFrame>> round = blocks == 0 ? List.of() : submit(pool, 0, Math.min(blocks, perRound));
+            for (long first = 0; first < blocks; first += perRound) {
+                if (job.isCancelRequested()) {
+                    round.forEach(t -> t.cancel(false));
+                    return false;
+                }
+                long next = first + perRound;
+                List<ForkJoinTask<EncodedFrame>> upcoming = next < blocks
+                        ? submit(pool, next, Math.min(blocks, next + perRound)) : List.of();
+                ByteBuffer[] data = new ByteBuffer[round.size()];
+                for (int i = 0; i < data.length; i++) {
+                    EncodedFrame f = round.get(i).join();
+                    md5.update(f.pcm());
+                    data[i] = ByteBuffer.wrap(f.data());
+                    minFrame = Math.min(minFrame, f.data().length);
+                    maxFrame = Math.max(maxFrame, f.data().length);
+                }
+                long remaining = Arrays.stream(data).mapToLong(ByteBuffer::remaining).sum();
+                while (remaining > 0) remaining -= dst.write(data);
+                round = upcoming;
+                progress.accept((double) Math.min(blocks, next) / blocks);
+            }
+            byte[] header = FlacEncoder.streamHeader(outRate, outChannels, bits, outFrames,
+                    blocks == 0 ? 0 : minFrame, maxFrame, md5.digest());
+            dst.write(ByteBuffer.wrap(header), 0);
+            return true;
+        }
+
+        /** Maps the input blocks [from, to) need and queues one task per block. */
+        private List<ForkJoinTask<EncodedFrame>> submit(ForkJoinPool pool, long from, long to) throws IOException {
+            long start = from * FlacEncoder.BLOCK_SIZE;
+            long end = Math.min(outFrames, to * FlacEncoder.BLOCK_SIZE);
+            ByteBuffer buffer = reader.cover(inputStart(start), inputEnd(end), in.frames());
+            long base = reader.first();
+            List<ForkJoinTask<EncodedFrame>> tasks = new ArrayList<>();
+            for (long b = from; b < to; b++) {
+                long block = b;
+                tasks.add(pool.submit(() -> encodeBlock(buffer, base, block)));
+            }
+            return tasks;
+        }
+
+        private long inputStart(long outFrame) {
+            return in.sampleRate() == outRate ? outFrame : SincResampler.firstInputFor(outFrame, in.sampleRate(), outRate);
+        }
+
+        /** First input frame after everything output frames before {@code outEnd} are filtered from. */
+        private long inputEnd(long outEnd) {
+            if (in.sampleRate() == outRate) return outEnd;
+            return Math.min(in.frames(), SincResampler.inputEndFor(outEnd, in.sampleRate(), outRate));
+        }
+
+        private EncodedFrame encodeBlock(ByteBuffer buffer, long base, long block) {
+            long start = block * FlacEncoder.BLOCK_SIZE;
+            int n = (int) Math.min(FlacEncoder.BLOCK_SIZE, outFrames - start);
+            long from = inputStart(start), to = inputEnd(start + n);
+            int count = (int) (to - from);
+
+            float[] samples = new float[count * in.channels()];
+            decode(buffer, (int) ((from - base) * in.frameBytes()), in, samples, samples.length);
+            if (mix != null) {
+                float[] mixed = new float[count * outChannels];
+                SampleKernels.PREFERRED.mix(samples, count, in.channels(), mix, mixed, outChannels);
+                samples = mixed;
+            }
+            if (in.sampleRate() != outRate) {
+                SincResampler resampler = new SincResampler(outChannels, in.sampleRate(), outRate, start);
+                float[] resampled = new float[resampler.maxOutput(count) * outChannels];
+                resampler.process(samples, count, resampled, to == in.frames());
+                samples = resampled;
+            }
+
+            int bytes = bits / 8;
+            int scale = 1 << (bits - 1);
+            int[][] channels = new int[outChannels][n];
+            byte[] pcm = new byte[n * outChannels * bytes];
+            for (int f = 0, q = 0; f < n; f++) {
+                for (int c = 0; c < outChannels; c++) {
+                    int v = clip(Math.round(samples[f * outChannels + c] * scale), scale - 1);
+                    channels[c][f] = v;
+                    for (int k = 0; k < bytes; k++) pcm[q++] = (byte) (v >> (8 * k));
+                }
+            }
+            return new EncodedFrame(FlacEncoder.encodeFrame(channels, n, bits, block), pcm);
+        }
+    }
+
+    /**
+     * A region of a file mapped {@link #WINDOW_BYTES} at a time. Windows hold whole frames, so no
+     * frame straddles two mappings; mapping past the end of a writable file grows it.
+     */
+    private static final class MappedWindow {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long start;
+        private final int frameBytes;
+        private final long windowFrames;
+        private ByteBuffer buffer;
+        private long first = -1, count;
+
+        MappedWindow(FileChannel channel, FileChannel.MapMode mode, long start, int frameBytes) {
+            this.channel = channel;
+            this.mode = mode;
+            this.start = start;
+            this.frameBytes = frameBytes;
+            this.windowFrames = Math.max(1, WINDOW_BYTES / frameBytes);
+        }
+
+        /** Positions the buffer at {@code frame}; returns how many frames the current window holds from there. */
+        long seek(long frame, long totalFrames) throws IOException {
+            if (buffer == null || frame < first || frame >= first + count) {
+                first = frame;
+                count = Math.min(windowFrames, totalFrames - frame);
+                buffer = channel.map(mode, start + frame * frameBytes, count * frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.position((int) ((frame - first) * frameBytes));
+            return first + count - frame;
+        }
+
+        ByteBuffer buffer() { return buffer; }
+
+        long first() { return first; }
+
+        /** Makes sure frames [from, to) are mapped, remapping from {@code from} if not, and returns the buffer. */
+        ByteBuffer cover(long from, long to, long totalFrames) throws IOException {
+            if (buffer == null || from < first || to > first + count) {
+                first = from;
+                count = Math.min(Math.max(windowFrames, to - from), totalFrames - from);
+                buffer = channel.map(mode, start + from * frameBytes, count * frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return buffer;
+        }
+    }
+}
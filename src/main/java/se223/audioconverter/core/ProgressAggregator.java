@@ -0,0 +1,92 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.util.Arrays;
+
+/**
+ * Collects progress from any number of concurrently running jobs into a few flat arrays
+ * (one slot per job) and keeps the weighted batch total up to date in O(1) per report.
+ * Reporters never touch the UI; the UI polls {@link #snapshot()} at its own frame rate,
+ * so its cost does not grow with the number of jobs or reports.
+ * <p>
+ * Batch progress is duration-weighted: a job's share is its expected work over the batch's.
+ * Without an up-front total (streamed batches), unstarted jobs count at the average weight
+ * of the started ones.
+ */
+public final class ProgressAggregator implements ProgressCallback {
+
+    /** What the UI shows: overall 0..1 plus the most recent reporter. */
+    public record Snapshot(double overall, int started, int finished, int total, String latestFile, int latestIndex) { }
+
+    private double[] weight;
+    private double[] progress;
+    private int started;
+    private int finished;
+    private int total;
+    private double totalWeight;     // 0: unknown
+    private double startedWeight;
+    private double doneWeight;      // Σ weight × progress
+    private String latestFile = "";
+    private int latestIndex;
+
+    public ProgressAggregator(int expectedJobs) {
+        int n = Math.max(16, expectedJobs);
+        weight = new double[n];
+        progress = new double[n];
+        total = expectedJobs;
+    }
+
+    @Override
+    public synchronized void onBatchScheduled(SchedulingPolicy policy, int totalCount) {
+        total = totalCount;
+    }
+
+    @Override
+    public synchronized void onBatchWeight(double totalWeight) {
+        this.totalWeight = totalWeight;
+    }
+
+    @Override
+    public synchronized void onJobStarted(String fileName, int totalIndex, double w) {
+        int slot = slot(totalIndex);
+        if (weight[slot] > 0) return; // already counted
+        weight[slot] = w > 0 ? w : 1e-3; // unknown length: nearly no share, but still counted
+        startedWeight += weight[slot];
+        doneWeight += weight[slot] * progress[slot];
+        started++;
+    }
+
+    @Override
+    public synchronized void onProgress(String fileName, double p, int totalIndex, int totalCount) {
+        int slot = slot(totalIndex);
+        if (weight[slot] == 0) onJobStarted(fileName, totalIndex, 0); // converter without start events
+        p = Math.max(0, Math.min(1, p));
+        double old = progress[slot];
+        if (p == old) return;
+        if (old < 1 && p >= 1) finished++;
+        else if (old >= 1 && p < 1) finished--;
+        doneWeight += weight[slot] * (p - old);
+        progress[slot] = p;
+        latestFile = fileName;
+        latestIndex = totalIndex;
+    }
+
+    public synchronized Snapshot snapshot() {
+        double denominator = totalWeight > 0 ? Math.max(totalWeight, startedWeight)
+                : started == 0 ? 0
+                : startedWeight + Math.max(0, total - started) * (startedWeight / started);
+        double overall = denominator > 0 ? Math.min(1, doneWeight / denominator) : 0;
+        return new Snapshot(overall, started, finished, total, latestFile, latestIndex);
+    }
+
+    private int slot(int totalIndex) {
+        int slot = Math.max(0, totalIndex - 1);
+        if (slot >= weight.length) { // streamed batches have no known size
+            int n = Math.max(slot + 1, weight.length * 2);
+            weight = Arrays.copyOf(weight, n);
+            progress = Arrays.copyOf(progress, n);
+        }
+        return slot;
+    }
+}
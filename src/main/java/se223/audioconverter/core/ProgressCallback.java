@@ -1,5 +1,23 @@
 package se223.audioconverter.core;
+
+import se223.audioconverter.model.SchedulingPolicy;
+
 public interface ProgressCallback {
-    // 0.0..1.0 per-file progress; totalIndex starts at 1
+    // 0.0..1.0 per-file progress; totalIndex starts at 1; totalCount is 0 when unknown (streamed batches)
     void onProgress(String fileName, double progress, int totalIndex, int totalCount);
+
+    /** Called once before any progress, with the order jobs will be started in. */
+    default void onBatchScheduled(SchedulingPolicy policy, int totalCount) {
+        // no-op
+    }
+
+    /** Expected work of the whole batch (sum of job weights), when the converter knows it up front. */
+    default void onBatchWeight(double totalWeight) {
+        // no-op
+    }
+
+    /** Called as a job starts, before its first progress; {@code weight} is its expected work, e.g. media seconds. */
+    default void onJobStarted(String fileName, int totalIndex, double weight) {
+        // no-op
+    }
 }
@@ -0,0 +1,149 @@
+package se223.audioconverter.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads ffmpeg's {@code -progress} stream straight from the process's byte stream. Blocks
+ * look like {@code key=value} lines ending with {@code progress=continue|end}; only
+ * {@code out_time_us} and {@code speed} are kept, parsed into primitives. Nothing is
+ * allocated per line or per block, only the read buffer once.
+ */
+public final class ProgressParser {
+
+    private static final byte[] OUT_TIME_US = ascii("out_time_us");
+    private static final byte[] SPEED = ascii("speed");
+    private static final byte[] PROGRESS = ascii("progress");
+
+    private static final int KEY = 0, VALUE = 1, SKIP = 2;
+    private static final int K_OTHER = 0, K_OUT_TIME_US = 1, K_SPEED = 2, K_PROGRESS = 3;
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos, limit;
+
+    // per-line state
+    private final byte[] key = new byte[16];
+    private int keyLen;
+    private int state = KEY;
+    private int keyId;
+    private long num;           // digits of the value so far
+    private long frac;          // speed: digits after the dot, as an integer
+    private long fracScale;     // 10^(digits after the dot), 0 before the dot
+    private boolean negative, valid, endFlag;
+
+    // last complete block
+    private long outTimeUs = -1;
+    private double speed = -1;
+    private boolean ended;
+
+    public ProgressParser(InputStream in) { this(in, 8192); }
+
+    public ProgressParser(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    /** Encoded position in microseconds from the last block, or -1 if ffmpeg reported N/A. */
+    public long outTimeUs() { return outTimeUs; }
+
+    /** Encoding speed as a multiple of real time from the last block, or -1 if N/A. */
+    public double speed() { return speed; }
+
+    /** Whether the last block was the final one ({@code progress=end}). */
+    public boolean ended() { return ended; }
+
+    /** Consumes input up to the end of the next block; false at end of stream. */
+    public boolean next() throws IOException {
+        while (true) {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return false;
+                }
+            }
+            byte b = buf[pos++];
+            if (b == '\n') {
+                if (endLine()) return true;
+                continue;
+            }
+            switch (state) {
+                case KEY -> {
+                    if (b == '=') {
+                        keyId = identify();
+                        state = keyId == K_OTHER ? SKIP : VALUE;
+                        num = 0; frac = 0; fracScale = 0; negative = false; valid = false; endFlag = false;
+                    } else if (keyLen < key.length) {
+                        key[keyLen++] = b;
+                    } else {
+                        state = SKIP; // longer than any key we want
+                    }
+                }
+                case VALUE -> value(b);
+                default -> { } // SKIP: ignore the rest of the line
+            }
+        }
+    }
+
+    private void value(byte b) {
+        if (keyId == K_PROGRESS) {
+            if (!valid) endFlag = b == 'e'; // "end" vs "continue"
+            valid = true;
+        } else if (b >= '0' && b <= '9') {
+            if (fracScale > 0) {
+                if (fracScale < 1_000_000_000L) { frac = frac * 10 + (b - '0'); fracScale *= 10; }
+            } else {
+                num = num * 10 + (b - '0');
+            }
+            valid = true;
+        } else if (b == '-' && !valid) {
+            negative = true;
+        } else if (b == '.' && keyId == K_SPEED && fracScale == 0) {
+            fracScale = 1;
+        } else if (b != 'x' && b != ' ' && b != '\r') {
+            valid = false;                 // "N/A" and anything else unexpected
+            state = SKIP;
+        }
+    }
+
+    /** Finishes a line; returns true when it closed a block. */
+    private boolean endLine() {
+        boolean blockEnd = false;
+        if (state == VALUE) {
+            switch (keyId) {
+                case K_OUT_TIME_US -> outTimeUs = valid && !negative ? num : -1;
+                case K_SPEED -> speed = valid ? num + (fracScale > 1 ? (double) frac / fracScale : 0) : -1;
+                case K_PROGRESS -> { ended = endFlag; blockEnd = true; }
+                default -> { }
+            }
+        } else if (state == SKIP && keyId == K_OUT_TIME_US) {
+            outTimeUs = -1;
+        } else if (state == SKIP && keyId == K_SPEED) {
+            speed = -1;
+        }
+        state = KEY;
+        keyLen = 0;
+        keyId = K_OTHER;
+        return blockEnd;
+    }
+
+    private int identify() {
+        if (matches(OUT_TIME_US)) return K_OUT_TIME_US;
+        if (matches(SPEED)) return K_SPEED;
+        if (matches(PROGRESS)) return K_PROGRESS;
+        return K_OTHER;
+    }
+
+    private boolean matches(byte[] k) {
+        if (keyLen != k.length) return false;
+        for (int i = 0; i < keyLen; i++) if (key[i] != k[i]) return false;
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
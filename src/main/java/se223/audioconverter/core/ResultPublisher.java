@@ -0,0 +1,156 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionResult;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a batch's results in completion order. Requests are pulled from the iterator only
+ * while the subscriber has unmet demand and fewer than {@code maxInFlight} jobs are running,
+ * so memory depends on the window, not the batch size. Single subscriber; cancelling the
+ * subscription cancels the running jobs.
+ */
+final class ResultPublisher implements Flow.Publisher<ConversionResult> {
+
+    /** Starts one request; results are reported once the returned future completes. */
+    interface Starter {
+        CompletableFuture<List<ConversionResult>> start(ConversionRequest req, int index, ConversionJob job);
+    }
+
+    private final Iterator<? extends ConversionRequest> requests;
+    private final int maxInFlight;
+    private final Starter starter;
+    private final Runnable onTerminate;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    ResultPublisher(Iterable<? extends ConversionRequest> requests, int maxInFlight, Starter starter, Runnable onTerminate) {
+        this.requests = requests.iterator();
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.starter = starter;
+        this.onTerminate = onTerminate;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ConversionResult> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) { }
+                @Override public void cancel() { }
+            });
+            subscriber.onError(new IllegalStateException("Results can only be consumed once"));
+            return;
+        }
+        Subscription s = new Subscription(subscriber);
+        subscriber.onSubscribe(s);
+        s.drain();
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ConversionResult> subscriber;
+        private final ConversionJob job = new ConversionJob(); // cancel token shared by every started request
+        private final Queue<ConversionResult> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger readyCount = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger(); // drain loop runs on one thread at a time
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private boolean exhausted;   // drain-loop only
+        private boolean done;        // drain-loop only
+        private int started;         // drain-loop only
+
+        Subscription(Flow.Subscriber<? super ConversionResult> subscriber) { this.subscriber = subscriber; }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Demand must be positive, got " + n);
+            } else {
+                requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b); // saturate
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            job.cancel(true); // now, not whenever the drain loop next runs: the caller may be a shutdown hook
+            drain();
+        }
+
+        /** Emits what the subscriber asked for, tops up the running window, and terminates once. */
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                if (!done) step();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void step() {
+            if (cancelled || error != null) {
+                finish();
+                if (!cancelled) subscriber.onError(error);
+                return;
+            }
+
+            long emitted = 0;
+            long demand = requested.get();
+            ConversionResult next;
+            while (emitted < demand && (next = ready.poll()) != null) {
+                readyCount.decrementAndGet();
+                subscriber.onNext(next);
+                emitted++;
+                if (cancelled) { finish(); return; }
+            }
+            if (emitted > 0 && demand != Long.MAX_VALUE) demand = requested.addAndGet(-emitted);
+
+            // start only what the subscriber could take: running + unsent results stay within demand
+            while (!exhausted && inFlight.get() < maxInFlight && inFlight.get() + readyCount.get() < demand) {
+                ConversionRequest req;
+                try {
+                    if (!requests.hasNext()) { exhausted = true; break; }
+                    req = requests.next();
+                } catch (RuntimeException e) {
+                    error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    wip.incrementAndGet(); // come back around to report it
+                    return;
+                }
+                inFlight.incrementAndGet();
+                starter.start(req, started++, job).whenComplete((rs, ex) -> {
+                    if (ex != null) {
+                        error = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    } else {
+                        rs.forEach(ready::add);
+                        readyCount.addAndGet(rs.size());
+                    }
+                    inFlight.decrementAndGet();
+                    drain();
+                });
+            }
+
+            if (exhausted && inFlight.get() == 0 && readyCount.get() == 0) {
+                finish();
+                subscriber.onComplete();
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (inFlight.get() > 0) job.cancel(true);
+            ready.clear();
+            onTerminate.run();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Sends the requests the in-process {@link PcmAudioConverter} supports to it, and everything
+ * else to a fallback converter (ffmpeg, or the mock without it). A mixed batch runs as two
+ * sub-batches side by side; to the caller it is still one job with one progress numbering,
+ * results in request order and one cancel.
+ */
+public class RoutingAudioConverter implements AudioConverter {
+
+    private final PcmAudioConverter pcm;
+    private final AudioConverter fallback;
+    private final ExecutionEngine shared;
+
+    public RoutingAudioConverter(PcmAudioConverter pcm, AudioConverter fallback) {
+        this(pcm, fallback, null);
+    }
+
+    /** Both converters run on {@code shared} (which the caller closes), so its workers are counted once. */
+    public RoutingAudioConverter(PcmAudioConverter pcm, AudioConverter fallback, ExecutionEngine shared) {
+        this.pcm = pcm;
+        this.fallback = fallback;
+        this.shared = shared;
+    }
+
+    public AudioConverter getFallback() { return fallback; }
+
+    @Override
+    public int getWorkerCount() {
+        return shared != null ? shared.getPermits() : pcm.getWorkerCount() + fallback.getWorkerCount();
+    }
+
+    @Override
+    public ConversionJob convertAll(
+            List<ConversionRequest> requests, ProgressCallback progress) throws ConversionException {
+        return convertAll(requests, progress, SchedulingPolicy.FIFO);
+    }
+
+    @Override
+    public ConversionJob convertAll(
+            List<ConversionRequest> requests, ProgressCallback progress, SchedulingPolicy policy) throws ConversionException {
+
+        if (requests == null || requests.isEmpty())
+            throw new ConversionException("No files to convert.");
+
+        List<ConversionRequest> inProcess = new ArrayList<>();
+        List<ConversionRequest> other = new ArrayList<>();
+        boolean[] routed = new boolean[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            routed[i] = pcm.supports(requests.get(i));
+            (routed[i] ? inProcess : other).add(requests.get(i));
+        }
+        if (other.isEmpty()) return pcm.convertAll(requests, progress, policy);
+        if (inProcess.isEmpty()) return fallback.convertAll(requests, progress, policy);
+
+        // fallback jobs keep progress slots 1..k, in-process ones follow
+        int total = requests.size();
+        progress.onBatchScheduled(policy, total);
+        WeightSum weights = new WeightSum(progress);
+        ConversionJob job = new ConversionJob();
+        ConversionJob a = fallback.convertAll(other, new Offset(progress, 0, total, weights), policy);
+        ConversionJob b = pcm.convertAll(inProcess, new Offset(progress, other.size(), total, weights), policy);
+        job.include(a);
+        job.include(b);
+
+        CompletableFuture.allOf(a, b).whenComplete((v, ex) -> {
+            if (ex != null) {
+                job.completeExceptionally(ex);
+                return;
+            }
+            // each request has one result per target, so the two lists merge back in request order
+            Iterator<ConversionResult> fromA = a.join().iterator();
+            Iterator<ConversionResult> fromB = b.join().iterator();
+            List<ConversionResult> merged = new ArrayList<>();
+            for (int i = 0; i < total; i++) {
+                for (int t = 0; t < requests.get(i).targets().size(); t++) {
+                    if (!routed[i]) merged.add(fromA.next());
+                    else merged.add(shifted(fromB.next(), other.size()));
+                }
+            }
+            job.complete(merged);
+        });
+        return job;
+    }
+
+    /** Each streamed request runs as a one-request batch on the converter that takes it. */
+    @Override
+    public Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests, ProgressCallback progress) {
+        int total = requests instanceof Collection<?> c ? c.size() : 0;
+        return new ResultPublisher(requests, 2 * getWorkerCount(), (req, index, job) -> {
+            AudioConverter target = pcm.supports(req) ? pcm : fallback;
+            ConversionJob part;
+            try {
+                part = target.convertAll(List.of(req), new Offset(progress, index, total, null), SchedulingPolicy.FIFO);
+            } catch (ConversionException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            job.include(part);
+            return part.thenApply(rs -> rs.stream().map(r -> shifted(r, index)).toList());
+        }, () -> { });
+    }
+
+    private static ConversionResult shifted(ConversionResult r, int offset) {
+        return r.getStartOrder() > 0 ? r.withSchedule(r.getSchedulingPolicy(), r.getStartOrder() + offset) : r;
+    }
+
+    @Override
+    public void close() {
+        pcm.close();
+        fallback.close();
+    }
+
+    /** Re-numbers a sub-batch's progress into the caller's batch; batch-level events are reported once by us. */
+    private static final class Offset implements ProgressCallback {
+        private final ProgressCallback target;
+        private final int offset;
+        private final int total;
+        private final WeightSum weights;
+
+        Offset(ProgressCallback target, int offset, int total, WeightSum weights) {
+            this.target = target; this.offset = offset; this.total = total; this.weights = weights;
+        }
+
+        @Override
+        public void onProgress(String fileName, double progress, int totalIndex, int totalCount) {
+            target.onProgress(fileName, progress, totalIndex + offset, total);
+        }
+
+        @Override
+        public void onBatchWeight(double totalWeight) {
+            if (weights != null) weights.add(totalWeight);
+        }
+
+        @Override
+        public void onJobStarted(String fileName, int totalIndex, double weight) {
+            target.onJobStarted(fileName, totalIndex + offset, weight);
+        }
+    }
+
+    /** Passes on the batch weight once both sub-batches have reported theirs. */
+    private static final class WeightSum {
+        private final ProgressCallback target;
+        private double sum;
+        private int reported;
+
+        WeightSum(ProgressCallback target) { this.target = target; }
+
+        void add(double weight) {
+            synchronized (this) {
+                sum += weight;
+                if (++reported < 2) return;
+            }
+            target.onBatchWeight(sum);
+        }
+    }
+}
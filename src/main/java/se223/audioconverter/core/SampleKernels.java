@@ -0,0 +1,37 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.util.DebugLogger;
+
+/**
+ * The inner loops of in-process sample processing: the FIR dot product behind
+ * {@link SincResampler} and channel mixing. {@link #PREFERRED} uses the Vector API when
+ * the JVM was started with {@code --add-modules jdk.incubator.vector} (and
+ * {@code -Daudioconverter.simd=false} is not set), otherwise the scalar loops.
+ */
+interface SampleKernels {
+
+    SampleKernels PREFERRED = select();
+
+    /** Sum of {@code x[from + i] * h[i]} for {@code i < n}. */
+    float dot(float[] x, int from, float[] h, int n);
+
+    /** Interleaved {@code out[f][o] = sum over c of matrix[o][c] * in[f][c]}. */
+    void mix(float[] in, int frames, int inChannels, float[][] matrix, float[] out, int outChannels);
+
+    /** Whether these kernels use SIMD instructions. */
+    boolean vectorized();
+
+    private static SampleKernels select() {
+        boolean present = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (!present || !Boolean.parseBoolean(System.getProperty("audioconverter.simd", "true")))
+            return ScalarKernels.INSTANCE;
+        try {
+            // only loaded once the module is known to be there
+            return (SampleKernels) Class.forName("se223.audioconverter.core.VectorKernels")
+                    .getDeclaredField("INSTANCE").get(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            DebugLogger.e("Vector kernels unavailable, using scalar ones", e);
+            return ScalarKernels.INSTANCE;
+        }
+    }
+}
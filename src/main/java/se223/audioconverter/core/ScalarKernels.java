@@ -0,0 +1,44 @@
+package se223.audioconverter.core;
+
+/** Plain-Java {@link SampleKernels}; the dot product keeps four partial sums so the adds overlap. */
+final class ScalarKernels implements SampleKernels {
+
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() { }
+
+    @Override
+    public float dot(float[] x, int from, float[] h, int n) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += x[from + i] * h[i];
+            s1 += x[from + i + 1] * h[i + 1];
+            s2 += x[from + i + 2] * h[i + 2];
+            s3 += x[from + i + 3] * h[i + 3];
+        }
+        for (; i < n; i++) s0 += x[from + i] * h[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public void mix(float[] in, int frames, int inChannels, float[][] matrix, float[] out, int outChannels) {
+        mixRange(in, 0, frames, inChannels, matrix, out, outChannels);
+    }
+
+    /** {@link #mix} over frames [from, to) only. */
+    static void mixRange(float[] in, int from, int to, int inChannels, float[][] matrix, float[] out, int outChannels) {
+        for (int f = from; f < to; f++) {
+            int i = f * inChannels;
+            for (int o = 0; o < outChannels; o++) {
+                float[] row = matrix[o];
+                float acc = 0;
+                for (int c = 0; c < inChannels; c++) acc += row[c] * in[i + c];
+                out[f * outChannels + o] = acc;
+            }
+        }
+    }
+
+    @Override
+    public boolean vectorized() { return false; }
+}
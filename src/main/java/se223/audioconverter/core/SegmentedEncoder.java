@@ -0,0 +1,157 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.util.DebugLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Encodes one long input as parallel time slices. Slices are cut on the output sample
+ * grid, handed to other workers as urgent work, and joined with ffmpeg's concat demuxer:
+ * WAV slices are joined by copy, FLAC slices by one FLAC-to-FLAC pass that writes a single
+ * STREAMINFO; both are sample-exact. Lossy targets are never sliced: their join would be a
+ * full serial encode, so slicing would only add work.
+ */
+final class SegmentedEncoder {
+
+    /**
+     * Runs one ffmpeg command; returns null on success or a failure message. {@code mediaScale} is the
+     * share of its final out_time that is new media, so the slices together count the input once.
+     */
+    interface Runner {
+        String run(List<String> args, String name, double durationSeconds, DoubleConsumer progress, double mediaScale);
+    }
+
+    private static final long PREROLL_SECONDS = 2; // warms up the resampler before each cut
+
+    private final Path ffmpeg;
+    private final Consumer<Runnable> dispatch;
+
+    /** {@code dispatch} queues work ahead of not-yet-started jobs; any worker may pick it up. */
+    SegmentedEncoder(Path ffmpeg, Consumer<Runnable> dispatch) {
+        this.ffmpeg = ffmpeg;
+        this.dispatch = dispatch;
+    }
+
+    /** Formats whose join is cheap next to decoding and resampling the source. */
+    static boolean supports(AudioFormat format) {
+        return format == AudioFormat.WAV || format == AudioFormat.FLAC;
+    }
+
+    /**
+     * Returns null on success or a failure message; {@code runner} runs each ffmpeg step
+     * (under the job's supervision) and {@code progress} gets the rolled-up 0..1 value.
+     */
+    String encode(AudioFile source, FFmpegCommandBuilder.Output target, int segments, int threads,
+                  Runner runner, DoubleConsumer progress) {
+        if (!supports(target.settings().getFormat())) return "Error: cannot segment " + target.settings().getFormat();
+        Path input = source.getPath();
+        String name = input.getFileName().toString();
+        int rate = target.settings().getSampleRateHz();
+        long totalSamples = (long) Math.floor(source.getDurationSeconds() * rate);
+        boolean wav = target.settings().getFormat() == AudioFormat.WAV;
+        String ext = wav ? "wav" : "flac";
+        // WAV joins by copy; re-encoding FLAC slices takes a fraction of the time cutting them did
+        double sliceShare = wav ? 1.0 : 0.8;
+
+        Path tmp;
+        try {
+            tmp = Files.createTempDirectory(target.file().toAbsolutePath().getParent(), ".segments-");
+        } catch (IOException e) {
+            return "Error: " + e.getMessage();
+        }
+
+        try {
+            double[] sliceProgress = new double[segments];
+            double[] sliceWeight = new double[segments];
+            List<Slice> slices = new ArrayList<>();
+            long per = totalSamples / segments;
+
+            for (int k = 0; k < segments; k++) {
+                long start = k * per;
+                long end = (k == segments - 1) ? -1 : (k + 1) * per; // last slice runs to the real end
+                long seek = Math.max(0, start / rate - PREROLL_SECONDS);
+                Path file = tmp.resolve(String.format("part%03d.%s", k, ext));
+                List<String> args = FFmpegCommandBuilder.buildSegment(ffmpeg, input,
+                        seek, start - seek * rate, end < 0 ? -1 : end - seek * rate, target.settings(), file, threads);
+
+                final int slot = k;
+                double seconds = (double) ((end < 0 ? totalSamples : end) - start) / rate;
+                sliceWeight[k] = seconds / Math.max(1e-9, totalSamples / (double) rate);
+                double outSeconds = seconds + (start / (double) rate - seek); // the pre-roll is trimmed, but its time still counts
+                slices.add(new Slice(file, () -> runner.run(args, name + " [" + (slot + 1) + "/" + segments + "]",
+                        outSeconds, p -> {
+                            synchronized (sliceProgress) {
+                                sliceProgress[slot] = p;
+                                double sum = 0;
+                                for (int i = 0; i < segments; i++) sum += sliceProgress[i] * sliceWeight[i];
+                                progress.accept(sum * sliceShare);
+                            }
+                        }, seconds / outSeconds)));
+            }
+
+            // every slice except the first goes to the pool; this thread then helps with whatever is left
+            for (Slice s : slices.subList(1, slices.size())) dispatch.accept(s::runIfUnclaimed);
+            for (Slice s : slices) s.runIfUnclaimed();
+
+            StringBuilder list = new StringBuilder();
+            for (Slice s : slices) {
+                String failure = s.result.join();
+                if (failure != null) return failure;
+                // concat list syntax: single quotes, with ' written as '\''
+                list.append("file '").append(s.file.toString().replace("'", "'\\''")).append("'\n");
+            }
+            Path listFile = tmp.resolve("list.txt");
+            Files.writeString(listFile, list);
+
+            // the slices already counted this media
+            return runner.run(FFmpegCommandBuilder.buildJoin(ffmpeg, listFile, target, threads), name,
+                    source.getDurationSeconds(), p -> progress.accept(sliceShare + p * (1 - sliceShare)), 0);
+        } catch (Exception e) {
+            return "Error: " + e.getMessage();
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /** A slice that runs exactly once, on whichever thread claims it first. */
+    private static final class Slice {
+        final Path file;
+        final Supplier<String> work;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        Slice(Path file, Supplier<String> work) {
+            this.file = file;
+            this.work = work;
+        }
+
+        void runIfUnclaimed() {
+            if (!claimed.compareAndSet(false, true)) return;
+            try {
+                result.complete(work.get());
+            } catch (Throwable t) {
+                result.complete("Error: " + t.getMessage());
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try (var files = Files.list(dir)) {
+            for (Path f : files.toList()) Files.deleteIfExists(f);
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            DebugLogger.e("Could not clean up " + dir, e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package se223.audioconverter.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming sample-rate conversion of interleaved frames with a polyphase Kaiser-windowed sinc
+ * filter. The rate ratio is reduced to {@code up/down}; output frame {@code j} sits at input
+ * position {@code j * down / up}, kept as a whole frame plus an exact phase in 1/up steps, so
+ * it never drifts. Each phase has its own precomputed filter row (ratios with more than
+ * {@value #MAX_PHASES} phases use the nearest of that many). When downsampling the cutoff
+ * follows the output Nyquist frequency and the filter widens to match.
+ * <p>
+ * Samples are kept per channel so every output sample is one dot product, done by
+ * {@link SampleKernels#PREFERRED} (SIMD when the Vector API is available). Input before the
+ * start of the stream and past its end counts as silence.
+ */
+public final class SincResampler {
+
+    private static final int ZERO_CROSSINGS = 32;      // filter half-width in input samples at full bandwidth
+    private static final double PASSBAND = 0.91;       // cutoff as a fraction of the lower Nyquist frequency
+    private static final double KAISER_BETA = 8.5;     // about 85 dB stopband
+    private static final int MAX_PHASES = 1024;
+    private static final int TAP_ALIGN = 16;           // whole vectors up to 512-bit, no tail loop
+
+    private static final Map<Long, Filter> FILTERS = new ConcurrentHashMap<>();
+
+    private final int channels;
+    private final Filter filter;
+    private final SampleKernels kernels;
+    private float[][] history;                    // per channel; history[c][0] is input frame start
+    private long start;
+    private int length;
+    private long index;                           // input frame at or before the next output frame
+    private long phase;                           // distance past index, in 1/up frames
+
+    public SincResampler(int channels, int inRate, int outRate) {
+        this(channels, inRate, outRate, 0);
+    }
+
+    /**
+     * Starts at output frame {@code outFrame}, so independent pieces of one stream can be
+     * converted separately; the first input passed in must be frame {@link #firstInputFor}(outFrame).
+     */
+    public SincResampler(int channels, int inRate, int outRate, long outFrame) {
+        this(channels, inRate, outRate, outFrame, SampleKernels.PREFERRED);
+    }
+
+    SincResampler(int channels, int inRate, int outRate, long outFrame, SampleKernels kernels) {
+        this.channels = channels;
+        this.filter = filter(inRate, outRate);
+        this.kernels = kernels;
+        this.index = outFrame * filter.down / filter.up;
+        this.phase = outFrame * filter.down % filter.up;
+        this.start = index - filter.left;
+        this.length = (int) Math.max(0, -start); // leading silence before frame 0
+        this.history = new float[channels][Math.max(64, 2 * filter.taps)];
+    }
+
+    /** The same conversion on the plain-Java kernels, for comparison with the default. */
+    public static SincResampler scalar(int channels, int inRate, int outRate) {
+        return new SincResampler(channels, inRate, outRate, 0, ScalarKernels.INSTANCE);
+    }
+
+    /** Whether new resamplers use SIMD kernels in this JVM. */
+    public static boolean isVectorized() { return SampleKernels.PREFERRED.vectorized(); }
+
+    /** Output frames produced for {@code inFrames} input frames in total. */
+    public static long outputFrames(long inFrames, int inRate, int outRate) {
+        return (inFrames * outRate + inRate - 1) / inRate;
+    }
+
+    /** First input frame output frame {@code outFrame} (and everything after it) depends on. */
+    public static long firstInputFor(long outFrame, int inRate, int outRate) {
+        Filter f = filter(inRate, outRate);
+        return Math.max(0, outFrame * f.down / f.up - f.left);
+    }
+
+    /** Input frame just past everything output frames before {@code outEnd} depend on; may exceed the input. */
+    public static long inputEndFor(long outEnd, int inRate, int outRate) {
+        Filter f = filter(inRate, outRate);
+        return (outEnd - 1) * f.down / f.up + f.taps - f.left;
+    }
+
+    /** Capacity (in frames) {@code out} needs for one call with {@code frames} input frames. */
+    public int maxOutput(int frames) {
+        return (int) ((long) (frames + filter.taps) * filter.up / filter.down) + 2;
+    }
+
+    /**
+     * Converts one block; {@code end} marks the final one, after which silence is assumed.
+     * Returns the number of frames written to {@code out}.
+     */
+    public int process(float[] in, int frames, float[] out, boolean end) {
+        int right = filter.taps - filter.left;     // padding the last outputs read past the input
+        append(in, frames, end ? right : 0);
+        long inputEnd = start + length - (end ? right : 0);
+        long last = end ? inputEnd - 1 : start + length - right;
+
+        int taps = filter.taps;
+        float[][] rows = filter.rows;
+        int n = 0;
+        while (index <= last) {
+            float[] row = rows[filter.row(phase)];
+            int at = (int) (index - filter.left - start);
+            for (int c = 0; c < channels; c++) out[n * channels + c] = kernels.dot(history[c], at, row, taps);
+            n++;
+            phase += filter.down;
+            index += phase / filter.up;
+            phase %= filter.up;
+        }
+        return n;
+    }
+
+    /** Drops frames no later output reads, then de-interleaves {@code in} and {@code silence} zero frames after them. */
+    private void append(float[] in, int frames, int silence) {
+        int drop = (int) Math.min(length, Math.max(0, index - filter.left - start));
+        int keep = length - drop;
+        int need = keep + frames + silence;
+        for (int c = 0; c < channels; c++) {
+            float[] h = history[c];
+            if (need > h.length) {
+                float[] grown = new float[Math.max(need, 2 * h.length)];
+                System.arraycopy(h, drop, grown, 0, keep);
+                h = history[c] = grown;
+            } else if (drop > 0) {
+                System.arraycopy(h, drop, h, 0, keep);
+            }
+            for (int f = 0; f < frames; f++) h[keep + f] = in[f * channels + c];
+            Arrays.fill(h, keep + frames, need, 0f);
+        }
+        start += drop;
+        length = need;
+    }
+
+    private static Filter filter(int inRate, int outRate) {
+        return FILTERS.computeIfAbsent((long) inRate << 32 | outRate, k -> new Filter(inRate, outRate));
+    }
+
+    /** Filter rows of one rate pair, shared by every resampler for it. */
+    private static final class Filter {
+        final int up, down;
+        final int taps;      // per row, a multiple of TAP_ALIGN (the extra taps are zero)
+        final int left;      // taps before the input frame at or before the output position
+        final int phases;    // rows are at fractional positions k / phases
+        final float[][] rows;
+
+        Filter(int inRate, int outRate) {
+            int g = gcd(inRate, outRate);
+            up = outRate / g;
+            down = inRate / g;
+            phases = Math.min(up, MAX_PHASES);
+
+            double cutoff = PASSBAND * Math.min(1.0, (double) up / down); // cycles per input sample, times two
+            int half = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+            left = half - 1;
+            taps = (2 * half + TAP_ALIGN - 1) / TAP_ALIGN * TAP_ALIGN;
+
+            double norm = besselI0(KAISER_BETA);
+            rows = new float[phases + 1][taps]; // the extra row is a whole frame on, for rounding up
+            for (int r = 0; r <= phases; r++) {
+                double mu = (double) r / phases;
+                double[] h = new double[taps];
+                double sum = 0;
+                for (int k = 0; k < taps; k++) {
+                    double d = k - left - mu;   // distance from the output position, in input frames
+                    if (Math.abs(d) >= half) continue;
+                    double x = Math.PI * cutoff * d;
+                    double sinc = d == 0 ? 1 : Math.sin(x) / x;
+                    double w = d / half;
+                    h[k] = cutoff * sinc * besselI0(KAISER_BETA * Math.sqrt(1 - w * w)) / norm;
+                    sum += h[k];
+                }
+                for (int k = 0; k < taps; k++) rows[r][k] = (float) (h[k] / sum); // unity gain at DC
+            }
+        }
+
+        int row(long phase) {
+            return phases == up ? (int) phase : (int) ((2 * phase * phases + up) / (2L * up));
+        }
+
+        private static double besselI0(double x) {
+            double sum = 1, term = 1, q = x * x / 4;
+            for (int k = 1; term > sum * 1e-12; k++) {
+                term *= q / ((double) k * k);
+                sum += term;
+            }
+            return sum;
+        }
+
+        private static int gcd(int a, int b) {
+            while (b != 0) { int t = a % b; a = b; b = t; }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.util.Timecode;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Drains ffmpeg's stderr on its own thread. Picks the input duration out of the
+ * header ("Duration: 00:01:02.50, ...") and keeps the last few lines for error messages.
+ */
+final class StderrMonitor implements Runnable {
+    private static final int TAIL_LINES = 8;
+
+    private final InputStream stderr;
+    private final Deque<String> tail = new ArrayDeque<>(TAIL_LINES);
+    private volatile double durationSeconds = -1;
+    private Thread thread;
+
+    StderrMonitor(InputStream stderr) { this.stderr = stderr; }
+
+    /** Starts draining on a virtual thread so a full pipe never blocks ffmpeg. */
+    static StderrMonitor start(Process p, String name) {
+        StderrMonitor m = new StderrMonitor(p.getErrorStream());
+        m.thread = Thread.ofVirtual().name("ffmpeg-stderr-" + name).start(m);
+        return m;
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(stderr))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                // only the first input's header counts
+                if (durationSeconds < 0) {
+                    String trimmed = line.trim();
+                    if (trimmed.startsWith("Duration: ")) {
+                        int comma = trimmed.indexOf(',');
+                        String token = trimmed.substring(10, comma > 0 ? comma : trimmed.length());
+                        double d = Timecode.parseSeconds(token);
+                        if (d > 0) durationSeconds = d;
+                    }
+                }
+                synchronized (tail) {
+                    if (tail.size() == TAIL_LINES) tail.removeFirst();
+                    tail.addLast(line);
+                }
+            }
+        } catch (Exception ignored) { }
+    }
+
+    /** Waits briefly for the drain to reach EOF so the tail is complete after the process exits. */
+    void awaitEof() throws InterruptedException {
+        if (thread != null) thread.join(1000);
+    }
+
+    /** Input duration from the header, or -1 while unknown (not printed yet, or N/A). */
+    double durationSeconds() { return durationSeconds; }
+
+    /** Last non-blank stderr line, usually the reason ffmpeg gave up. */
+    String lastLine() {
+        synchronized (tail) {
+            for (var it = tail.descendingIterator(); it.hasNext(); ) {
+                String s = it.next().trim();
+                if (!s.isEmpty()) return s;
+            }
+        }
+        return "";
+    }
+}
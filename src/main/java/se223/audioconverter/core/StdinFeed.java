@@ -0,0 +1,84 @@
+package se223.audioconverter.core;
+
+import se223.audioconverter.model.ArchiveEntry;
+import se223.audioconverter.util.ArchiveReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams an archive entry into ffmpeg's stdin on its own thread, channel to channel through
+ * one direct buffer, and closes stdin at the end so ffmpeg sees EOF. Counts the bytes fed for
+ * progress. A failed write just means ffmpeg stopped reading (it exited or was killed); a failed
+ * read is kept, since ffmpeg would otherwise take the truncated input as a complete file.
+ */
+final class StdinFeed implements Runnable {
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final ArchiveEntry entry;
+    private final Process process;
+    private volatile long fed;
+    private volatile String readError;
+    private Thread thread;
+
+    private StdinFeed(ArchiveEntry entry, Process process) {
+        this.entry = entry;
+        this.process = process;
+    }
+
+    static StdinFeed start(ArchiveEntry entry, Process p) {
+        StdinFeed f = new StdinFeed(entry, p);
+        f.thread = Thread.ofVirtual().name("ffmpeg-stdin-" + entry.name()).start(f);
+        return f;
+    }
+
+    @Override
+    public void run() {
+        WritableByteChannel out = Channels.newChannel(process.getOutputStream());
+        try (out; ReadableByteChannel in = open(entry)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            while (read(in, buf) >= 0) {
+                buf.flip();
+                while (buf.hasRemaining()) fed += out.write(buf); // single writer
+                buf.clear();
+            }
+        } catch (EntryReadException e) {
+            readError = e.getMessage();
+        } catch (IOException ignored) {
+            // stdin is gone: ffmpeg exited or was killed
+        }
+    }
+
+    private static ReadableByteChannel open(ArchiveEntry entry) throws EntryReadException {
+        try {
+            return ArchiveReader.open(entry);
+        } catch (IOException e) {
+            throw new EntryReadException(e);
+        }
+    }
+
+    private static int read(ReadableByteChannel in, ByteBuffer buf) throws EntryReadException {
+        try {
+            return in.read(buf);
+        } catch (IOException e) {
+            throw new EntryReadException(e);
+        }
+    }
+
+    /** Bytes written to ffmpeg so far. */
+    long fed() { return fed; }
+
+    /** Waits for the feed to finish; the read failure, or null if the entry was read through. */
+    String awaitError() throws InterruptedException {
+        thread.join();
+        return readError;
+    }
+
+    /** Marks failures on the archive side, as opposed to ffmpeg closing its end. */
+    private static final class EntryReadException extends IOException {
+        EntryReadException(IOException cause) { super(cause.getMessage(), cause); }
+    }
+}
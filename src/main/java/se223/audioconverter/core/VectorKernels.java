@@ -0,0 +1,67 @@
+package se223.audioconverter.core;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link SampleKernels} on the incubating Vector API, at the widest float shape the CPU has.
+ * Only loaded through {@link SampleKernels#PREFERRED} when {@code jdk.incubator.vector} is resolved.
+ */
+final class VectorKernels implements SampleKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    static final VectorKernels INSTANCE = new VectorKernels(); // after LANES, which it uses
+
+    // gather/scatter offsets of one sample per frame, for the channel counts we mix (1..8)
+    private final int[][] strides = new int[9][];
+
+    private VectorKernels() {
+        for (int c = 1; c < strides.length; c++) {
+            strides[c] = new int[LANES];
+            for (int i = 0; i < LANES; i++) strides[c][i] = i * c;
+        }
+    }
+
+    @Override
+    public float dot(float[] x, int from, float[] h, int n) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += LANES) {
+            acc = FloatVector.fromArray(SPECIES, x, from + i).fma(FloatVector.fromArray(SPECIES, h, i), acc);
+        }
+        float s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) s += x[from + i] * h[i];
+        return s;
+    }
+
+    /** One vector of output frames per step: each input channel is gathered across frames and scaled in. */
+    @Override
+    public void mix(float[] in, int frames, int inChannels, float[][] matrix, float[] out, int outChannels) {
+        if (inChannels >= strides.length || outChannels >= strides.length) {
+            ScalarKernels.INSTANCE.mix(in, frames, inChannels, matrix, out, outChannels);
+            return;
+        }
+        int[] inMap = strides[inChannels], outMap = strides[outChannels];
+        int f = 0;
+        for (int bound = SPECIES.loopBound(frames); f < bound; f += LANES) {
+            for (int o = 0; o < outChannels; o++) {
+                float[] row = matrix[o];
+                FloatVector acc = FloatVector.zero(SPECIES);
+                for (int c = 0; c < inChannels; c++) {
+                    if (row[c] == 0) continue;
+                    acc = FloatVector.fromArray(SPECIES, in, f * inChannels + c, inMap, 0)
+                            .fma(FloatVector.broadcast(SPECIES, row[c]), acc);
+                }
+                if (outChannels == 1) acc.intoArray(out, f);
+                else acc.intoArray(out, f * outChannels + o, outMap, 0);
+            }
+        }
+        ScalarKernels.mixRange(in, f, frames, inChannels, matrix, out, outChannels);
+    }
+
+    @Override
+    public boolean vectorized() { return true; }
+}
@@ -0,0 +1,98 @@
+package se223.audioconverter.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sample layout and data location of a RIFF/WAVE file: integer PCM (8/16/24/32-bit containers)
+ * or IEEE float (32/64-bit), including their WAVE_FORMAT_EXTENSIBLE forms.
+ * {@code bytesPerSample} is the container width; valid bits below it are left-justified.
+ */
+record WavFormat(int channels, int sampleRate, int bytesPerSample, boolean floating, long dataOffset, long dataLength) {
+
+    /** Size of the header {@link #header} writes. */
+    static final int HEADER_BYTES = 44;
+    /** Largest data chunk a RIFF header can describe (its sizes are unsigned 32-bit). */
+    static final long MAX_DATA_BYTES = 0xFFFF_FFFFL - (HEADER_BYTES - 8) - 1;
+
+    private static final int RIFF = fourCC("RIFF"), WAVE = fourCC("WAVE"), FMT = fourCC("fmt "), DATA = fourCC("data");
+    private static final int TAG_PCM = 1, TAG_FLOAT = 3, TAG_EXTENSIBLE = 0xFFFE;
+
+    int frameBytes() { return channels * bytesPerSample; }
+
+    long frames() { return dataLength / frameBytes(); }
+
+    /**
+     * Walks the chunk list with small positional reads, so large metadata chunks before the
+     * samples cost nothing. Throws if the file is not WAV or its encoding is not plain PCM/float.
+     */
+    static WavFormat read(FileChannel ch) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, b, 0, 12);
+        if (b.getInt(0) != RIFF || b.getInt(8) != WAVE) throw new IOException("Not a RIFF/WAVE file");
+
+        long size = ch.size();
+        long pos = 12;
+        int tag = -1, channels = 0, rate = 0, blockAlign = 0, bits = 0;
+        while (pos + 8 <= size) {
+            readFully(ch, b, pos, 8);
+            int id = b.getInt(0);
+            long len = b.getInt(4) & 0xFFFF_FFFFL;
+            if (id == FMT) {
+                if (len < 16) throw new IOException("Truncated WAV fmt chunk");
+                readFully(ch, b, pos + 8, (int) Math.min(len, 40));
+                tag = b.getShort(0) & 0xFFFF;
+                channels = b.getShort(2) & 0xFFFF;
+                rate = b.getInt(4);
+                blockAlign = b.getShort(12) & 0xFFFF;
+                bits = b.getShort(14) & 0xFFFF;
+                // the sub-format GUID of an extensible header starts with the plain format tag
+                if (tag == TAG_EXTENSIBLE && len >= 40) tag = b.getShort(24) & 0xFFFF;
+            } else if (id == DATA) {
+                if (tag < 0) throw new IOException("WAV data chunk before fmt chunk");
+                return validated(tag, channels, rate, blockAlign, bits, pos + 8,
+                        Math.min(len, size - pos - 8)); // streamed writers may leave the size at 0xFFFFFFFF
+            }
+            pos += 8 + len + (len & 1); // chunks are word aligned
+        }
+        throw new IOException("WAV file has no data chunk");
+    }
+
+    private static WavFormat validated(int tag, int channels, int rate, int blockAlign, int bits,
+                                       long offset, long length) throws IOException {
+        if (channels < 1 || rate <= 0 || blockAlign % channels != 0)
+            throw new IOException("Malformed WAV header");
+        int width = blockAlign / channels;
+        boolean ok = tag == TAG_PCM ? width >= 1 && width <= 4 && bits <= 8 * width
+                : tag == TAG_FLOAT && (width == 4 || width == 8) && bits == 8 * width;
+        if (!ok) throw new IOException("Unsupported WAV encoding (format " + tag + ", " + bits + "-bit)");
+        return new WavFormat(channels, rate, width, tag == TAG_FLOAT, offset, length - length % blockAlign);
+    }
+
+    /** Canonical 44-byte PCM header for {@code dataBytes} of samples (the pad byte of an odd chunk is not counted). */
+    static ByteBuffer header(int channels, int sampleRate, int bitsPerSample, long dataBytes) {
+        int blockAlign = channels * bitsPerSample / 8;
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        h.putInt(RIFF).putInt((int) (HEADER_BYTES - 8 + dataBytes + (dataBytes & 1))).putInt(WAVE);
+        h.putInt(FMT).putInt(16)
+                .putShort((short) TAG_PCM).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * blockAlign)
+                .putShort((short) blockAlign).putShort((short) bitsPerSample);
+        h.putInt(DATA).putInt((int) dataBytes);
+        return h.flip();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos, int n) throws IOException {
+        b.clear().limit(n);
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new EOFException("Truncated WAV header");
+        }
+    }
+
+    private static int fourCC(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+}
@@ -0,0 +1,15 @@
+package se223.audioconverter.exception;
+
+import se223.audioconverter.model.ValidationReport;
+
+/** A batch that failed pre-flight validation; the report holds every problem, the message a summary. */
+public class ValidationException extends ConversionException {
+    private final transient ValidationReport report;
+
+    public ValidationException(ValidationReport report) {
+        super(report.summary());
+        this.report = report;
+    }
+
+    public ValidationReport getReport() { return report; }
+}
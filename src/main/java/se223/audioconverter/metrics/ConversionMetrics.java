@@ -0,0 +1,146 @@
+package se223.audioconverter.metrics;
+
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.util.DebugLogger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms the converters record into while they run. Every record is a few
+ * {@link LongAdder} or atomic increments, so worker threads never wait on each other or on a
+ * reader; gauges such as queued and running are derived from monotonic counters when read.
+ */
+public final class ConversionMetrics implements ConversionMetricsMXBean {
+    public static final String OBJECT_NAME = "se223.audioconverter:type=ConversionMetrics";
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder mediaMicros = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LatencyHistogram spawn = new LatencyHistogram();
+    private final LatencyHistogram probe = new LatencyHistogram();
+    private final LatencyHistogram encode = new LatencyHistogram();
+    private final Map<String, LongAdder> bytesRead = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytesWritten = new ConcurrentHashMap<>();
+
+    /** Registers with the platform MBean server; false if the name is taken or JMX refused it. */
+    public boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            return true;
+        } catch (InstanceAlreadyExistsException e) {
+            DebugLogger.d("Metrics already registered as " + OBJECT_NAME);
+            return false;
+        } catch (JMException e) {
+            DebugLogger.e("Could not register metrics", e);
+            return false;
+        }
+    }
+
+    // --- recording, called from worker threads ---
+
+    public void jobsQueued(int n) { queued.add(n); }
+
+    /** A worker picked the job up, whether it will run or find the batch cancelled. */
+    public void jobsStarted(int n) { started.add(n); }
+
+    /** Counts the job by its worst result; for finished outputs, adds input and output sizes. */
+    public void jobFinished(ConversionRequest req, List<ConversionResult> results) {
+        boolean anyFailed = false, anyCancelled = false, anyWritten = false;
+        for (ConversionResult r : results) {
+            switch (r.getStatus()) {
+                case FAILED, TIMED_OUT, STALLED -> anyFailed = true;
+                case CANCELLED -> anyCancelled = true;
+                case OK -> {
+                    if (r.getOutput() != null) {
+                        add(bytesWritten, r.getOutput(), sizeOf(r.getOutput()));
+                        anyWritten = true;
+                    }
+                }
+                default -> { }
+            }
+        }
+        if (anyWritten) add(bytesRead, req.input(), req.isArchiveEntry() ? req.entry().size() : sizeOf(req.input()));
+        (anyFailed ? failed : anyCancelled ? cancelled : completed).increment();
+    }
+
+    public void spawned(long nanos) { spawn.record(nanos); }
+
+    public void probed(long nanos) { probe.record(nanos); }
+
+    /** One encode of {@code mediaSeconds} of audio (0 if unknown: left out of the realtime factor) taking {@code nanos}. */
+    public void encoded(long nanos, double mediaSeconds) {
+        encode.record(nanos);
+        if (mediaSeconds <= 0) return;
+        encodeNanos.add(nanos);
+        mediaMicros.add((long) (mediaSeconds * 1_000_000));
+    }
+
+    // --- MXBean ---
+
+    @Override
+    public long getJobsQueued() {
+        long picked = started.sum(); // read first, as it never runs ahead of queued
+        return Math.max(0, queued.sum() - picked);
+    }
+
+    @Override
+    public long getJobsRunning() {
+        // finished first, as it never runs ahead of started
+        long finished = completed.sum() + failed.sum() + cancelled.sum();
+        return Math.max(0, started.sum() - finished);
+    }
+
+    @Override public long getJobsCompleted() { return completed.sum(); }
+    @Override public long getJobsFailed() { return failed.sum(); }
+    @Override public long getJobsCancelled() { return cancelled.sum(); }
+    @Override public double getMediaSecondsEncoded() { return mediaMicros.sum() / 1e6; }
+
+    @Override
+    public double getRealtimeFactor() {
+        long nanos = encodeNanos.sum();
+        return nanos == 0 ? 0 : mediaMicros.sum() * 1000.0 / nanos;
+    }
+
+    @Override public LatencySnapshot getSpawnLatency() { return spawn.snapshot(); }
+    @Override public LatencySnapshot getProbeTime() { return probe.snapshot(); }
+    @Override public LatencySnapshot getEncodeTime() { return encode.snapshot(); }
+    @Override public Map<String, Long> getBytesReadByFormat() { return sums(bytesRead); }
+    @Override public Map<String, Long> getBytesWrittenByFormat() { return sums(bytesWritten); }
+
+    private static void add(Map<String, LongAdder> bytes, Path file, long size) {
+        if (size <= 0) return;
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        bytes.computeIfAbsent(dot < 0 ? "" : name.substring(dot + 1), k -> new LongAdder()).add(size);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> bytes) {
+        Map<String, Long> out = new TreeMap<>();
+        bytes.forEach((format, sum) -> out.put(format, sum.sum()));
+        return out;
+    }
+}
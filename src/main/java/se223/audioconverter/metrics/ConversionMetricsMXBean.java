@@ -0,0 +1,32 @@
+package se223.audioconverter.metrics;
+
+import java.util.Map;
+
+/** What JConsole shows under {@value ConversionMetrics#OBJECT_NAME}; every attribute is read live. */
+public interface ConversionMetricsMXBean {
+
+    /** Submitted, not yet picked up by a worker. */
+    long getJobsQueued();
+    long getJobsRunning();
+    /** Finished without a failure: converted, skipped or already up to date. */
+    long getJobsCompleted();
+    /** At least one target failed, timed out or stalled. */
+    long getJobsFailed();
+    long getJobsCancelled();
+
+    double getMediaSecondsEncoded();
+    /** Media seconds encoded per wall second of encoding, over all jobs so far (like ffmpeg's "speed"). */
+    double getRealtimeFactor();
+
+    /** From asking for an ffmpeg process to having it. */
+    LatencySnapshot getSpawnLatency();
+    /** One ffprobe run per media cache miss. */
+    LatencySnapshot getProbeTime();
+    /** One ffmpeg process (or one in-process request) from start to exit. */
+    LatencySnapshot getEncodeTime();
+
+    /** Input bytes of completed jobs, by input file extension. */
+    Map<String, Long> getBytesReadByFormat();
+    /** Output bytes written, by output file extension. */
+    Map<String, Long> getBytesWrittenByFormat();
+}
@@ -0,0 +1,73 @@
+package se223.audioconverter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations in log-linear microsecond buckets: eight per power of two, so a percentile is off by
+ * at most 1/16 of its value. Recording is a handful of lock-free increments; reading walks 512 counters.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long us = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(indexOf(us));
+        count.increment();
+        sumMicros.add(us);
+        maxMicros.accumulate(us);
+    }
+
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts[i] = buckets.get(i);
+        long sum = sumMicros.sum();
+        double max = maxMicros.get() / 1000.0;
+        // a bucket's midpoint may lie above the largest value that landed in it
+        return new LatencySnapshot(total,
+                total == 0 ? 0 : sum / 1000.0 / total,
+                Math.min(max, percentile(counts, total, 0.50)),
+                Math.min(max, percentile(counts, total, 0.90)),
+                Math.min(max, percentile(counts, total, 0.99)),
+                max);
+    }
+
+    /** Values below 8 µs get a bucket each; above, the top three bits after the leading one pick the bucket. */
+    static int indexOf(long us) {
+        if (us < SUB) return (int) us;
+        int exp = 63 - Long.numberOfLeadingZeros(us);
+        int sub = (int) (us >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Midpoint of a bucket's range, in microseconds. */
+    static double midpointOf(int index) {
+        if (index < SUB) return index;
+        int exp = index / SUB + SUB_BITS - 1;
+        long width = 1L << (exp - SUB_BITS);
+        long low = (long) (SUB + index % SUB) << (exp - SUB_BITS);
+        return low + (width - 1) / 2.0;
+    }
+
+    /** In milliseconds; 0 when nothing was recorded. */
+    private static double percentile(long[] counts, long total, double q) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return midpointOf(i) / 1000.0;
+        }
+        return midpointOf(counts.length - 1) / 1000.0;
+    }
+}
@@ -0,0 +1,43 @@
+package se223.audioconverter.metrics;
+
+import javax.management.openmbean.CompositeData;
+
+/**
+ * A {@link LatencyHistogram} at one moment, in milliseconds. Shown by JConsole as a composite
+ * attribute (one row per getter); {@link #from} lets an MXBean proxy rebuild it on the client side.
+ */
+public final class LatencySnapshot {
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    public LatencySnapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public static LatencySnapshot from(CompositeData cd) {
+        return new LatencySnapshot((Long) cd.get("count"), (Double) cd.get("meanMillis"), (Double) cd.get("p50Millis"),
+                (Double) cd.get("p90Millis"), (Double) cd.get("p99Millis"), (Double) cd.get("maxMillis"));
+    }
+
+    public long getCount() { return count; }
+    public double getMeanMillis() { return meanMillis; }
+    public double getP50Millis() { return p50Millis; }
+    public double getP90Millis() { return p90Millis; }
+    public double getP99Millis() { return p99Millis; }
+    public double getMaxMillis() { return maxMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                count, meanMillis, p50Millis, p90Millis, p99Millis, maxMillis);
+    }
+}
@@ -0,0 +1,22 @@
+package se223.audioconverter.model;
+
+import java.nio.file.Path;
+
+/**
+ * A file inside a ZIP or TAR archive, converted straight from the archive without extracting it.
+ * {@code offset} is where a TAR member's data starts; ZIP entries are found through the archive's
+ * directory and have -1. {@code name} is relative, with '/' separators.
+ */
+public record ArchiveEntry(Path archive, String name, long offset, long size) {
+
+    /** Where the entry would be if extracted next to the archive's contents; names outputs and results. */
+    public Path path() {
+        return archive.resolve(name);
+    }
+
+    /** {@code archive!/name}, as shown in lists. */
+    @Override
+    public String toString() {
+        return archive + "!/" + name;
+    }
+}
@@ -1,4 +1,53 @@
 package se223.audioconverter.model;
 
+import java.nio.file.Path;
+
+/** Probed metadata of one media file, plus the size/mtime it was probed at. */
 public class AudioFile {
+    private final Path path;
+    private final long sizeBytes;
+    private final long lastModifiedMillis;
+    private final double durationSeconds;   // -1 if unknown
+    private final String codec;             // null if the file has no audio stream
+    private final int sampleRateHz;
+    private final int channelCount;
+    private final int bitrateKbps;          // 0 if unknown
+
+    public AudioFile(Path path, long sizeBytes, long lastModifiedMillis, double durationSeconds,
+                     String codec, int sampleRateHz, int channelCount, int bitrateKbps) {
+        this.path = path; this.sizeBytes = sizeBytes; this.lastModifiedMillis = lastModifiedMillis;
+        this.durationSeconds = durationSeconds; this.codec = codec; this.sampleRateHz = sampleRateHz;
+        this.channelCount = channelCount; this.bitrateKbps = bitrateKbps;
+    }
+
+    public Path getPath() { return path; }
+    public long getSizeBytes() { return sizeBytes; }
+    public long getLastModifiedMillis() { return lastModifiedMillis; }
+    public double getDurationSeconds() { return durationSeconds; }
+    public String getCodec() { return codec; }
+    public int getSampleRateHz() { return sampleRateHz; }
+    public int getChannelCount() { return channelCount; }
+    public int getBitrateKbps() { return bitrateKbps; }
+
+    public boolean hasAudio() { return codec != null; }
+
+    /** Whether this entry still describes the file on disk. */
+    public boolean matches(long size, long mtimeMillis) {
+        return sizeBytes == size && lastModifiedMillis == mtimeMillis;
+    }
+
+    /** One-line description for tooltips and logs, e.g. "3:05 · aac 44.1 kHz 2ch 192 kbps". */
+    public String summary() {
+        if (!hasAudio()) return "no audio stream";
+        StringBuilder sb = new StringBuilder();
+        if (durationSeconds >= 0) {
+            long s = Math.round(durationSeconds);
+            sb.append(s / 60).append(':').append(String.format("%02d", s % 60)).append(" · ");
+        }
+        sb.append(codec);
+        if (sampleRateHz > 0) sb.append(' ').append(sampleRateHz / 1000.0).append(" kHz");
+        if (channelCount > 0) sb.append(' ').append(channelCount).append("ch");
+        if (bitrateKbps > 0) sb.append(' ').append(bitrateKbps).append(" kbps");
+        return sb.toString();
+    }
 }
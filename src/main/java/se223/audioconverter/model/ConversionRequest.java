@@ -1,17 +1,28 @@
 package se223.audioconverter.model;
 
 import java.nio.file.Path;
+import java.util.List;
 
 public class ConversionRequest {
     private final Path input;
     private final Path outputDir;
     private final ConversionSettings settings;
+    private final ArchiveEntry entry;
 
     public ConversionRequest(Path input, Path outputDir, ConversionSettings settings) {
-        this.input = input; this.outputDir = outputDir; this.settings = settings;
+        this.input = input; this.outputDir = outputDir; this.settings = settings; this.entry = null;
+    }
+    /** Converts a file inside an archive; {@link #input()} is then the entry's {@link ArchiveEntry#path()}, which does not exist on disk. */
+    public ConversionRequest(ArchiveEntry entry, Path outputDir, ConversionSettings settings) {
+        this.input = entry.path(); this.outputDir = outputDir; this.settings = settings; this.entry = entry;
     }
     public Path input() { return input; }
+    /** The archive entry this request reads, or null for a plain file. */
+    public ArchiveEntry entry() { return entry; }
+    public boolean isArchiveEntry() { return entry != null; }
     public Path outputDir() { return outputDir; }
     public ConversionSettings settings() { return settings; }
+    /** Every output this request produces; a plain request has exactly one. */
+    public List<ConversionSettings> targets() { return List.of(settings); }
 }
 
@@ -5,11 +5,22 @@ import java.nio.file.Path;
 public class ConversionResult {
     private final Path input;
     private final Path output;
-    private final boolean success;
+    private final ResultStatus status;
+    private final ConversionStrategy strategy;   // null when nothing was produced
     private final String message;
+    private SchedulingPolicy schedulingPolicy;   // set by converters that queue jobs
+    private int startOrder;                      // 1-based order in which the job was started, 0 if unknown
 
     public ConversionResult(Path input, Path output, boolean success, String message) {
-        this.input = input; this.output = output; this.success = success; this.message = message;
+        this(input, output, success ? ResultStatus.OK : ResultStatus.FAILED, message);
+    }
+
+    public ConversionResult(Path input, Path output, ResultStatus status, String message) {
+        this(input, output, status, null, message);
+    }
+
+    public ConversionResult(Path input, Path output, ResultStatus status, ConversionStrategy strategy, String message) {
+        this.input = input; this.output = output; this.status = status; this.strategy = strategy; this.message = message;
     }
 
     public String getMessage() {
@@ -25,7 +36,36 @@ public class ConversionResult {
     }
 
     public boolean isSuccess() {
-        return success;
+        return status == ResultStatus.OK || status == ResultStatus.SKIPPED || status == ResultStatus.UP_TO_DATE;
+    }
+
+    public ResultStatus getStatus() {
+        return status;
+    }
+
+    public ConversionStrategy getStrategy() {
+        return strategy;
+    }
+
+    public SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+
+    public int getStartOrder() {
+        return startOrder;
+    }
+
+    /** Copy of this result stamped with how its job was scheduled. */
+    public ConversionResult withSchedule(SchedulingPolicy policy, int startOrder) {
+        ConversionResult r = new ConversionResult(input, output, status, strategy, message);
+        r.schedulingPolicy = policy;
+        r.startOrder = startOrder;
+        return r;
+    }
+
+    /** True when INCREMENTAL found the output already up to date and ffmpeg was not run. */
+    public boolean isCacheHit() {
+        return status == ResultStatus.UP_TO_DATE;
     }
 // getters…
 }
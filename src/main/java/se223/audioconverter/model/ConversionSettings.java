@@ -5,6 +5,7 @@ public class ConversionSettings {
     private Integer bitrateKbps;       // null if not applicable (MP3/M4A only)
     private int sampleRateHz;          // e.g. 44100, 48000, or user-selected for WAV
     private Channels channels;         // MONO/STEREO
+    private int bitDepth = 16;         // PCM sample size for WAV: 8, 16, 24 or 32
     private OverwritePolicy overwritePolicy = OverwritePolicy.RENAME;
 
     // === Getters and Setters ===
@@ -20,7 +21,19 @@ public class ConversionSettings {
     public Channels getChannels() { return channels; }
     public void setChannels(Channels channels) { this.channels = channels; }
 
+    public int getBitDepth() { return bitDepth; }
+    public void setBitDepth(int bitDepth) { this.bitDepth = bitDepth; }
+
     public OverwritePolicy getOverwritePolicy() { return overwritePolicy; }
     public void setOverwritePolicy(OverwritePolicy overwritePolicy) { this.overwritePolicy = overwritePolicy; }
 
+    /** Stable key of everything that affects the encoded bytes (not the overwrite policy). */
+    public String fingerprint() {
+        Integer kbps = (format == AudioFormat.MP3 || format == AudioFormat.M4A)
+                ? (bitrateKbps == null ? Integer.valueOf(192) : bitrateKbps) : null;
+        // 16-bit keeps the key it had before bit depth was configurable, so existing manifests stay valid
+        String depth = format == AudioFormat.WAV && bitDepth != 16 ? "|" + bitDepth + "bit" : "";
+        return format + "|" + kbps + "|" + sampleRateHz + "|" + channels + depth;
+    }
+
 }
\ No newline at end of file
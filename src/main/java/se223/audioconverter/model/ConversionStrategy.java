@@ -0,0 +1,8 @@
+package se223.audioconverter.model;
+
+/** How an output was actually produced. */
+public enum ConversionStrategy {
+    TRANSCODE,     // full decode + encode
+    REMUX,         // input stream already matched the target; copied into the new container
+    SEGMENTED      // long input cut into time slices that were processed in parallel, then joined
+}
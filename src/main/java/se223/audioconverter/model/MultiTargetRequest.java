@@ -0,0 +1,27 @@
+package se223.audioconverter.model;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/** One input delivered in several formats; the source is decoded once and fanned out to every target. */
+public class MultiTargetRequest extends ConversionRequest {
+    private final List<ConversionSettings> targets;
+
+    public MultiTargetRequest(Path input, Path outputDir, List<ConversionSettings> targets) {
+        super(input, outputDir, first(targets));
+        this.targets = List.copyOf(targets);
+    }
+
+    /** An archive entry in several formats: streamed out of the archive once for all of them. */
+    public MultiTargetRequest(ArchiveEntry entry, Path outputDir, List<ConversionSettings> targets) {
+        super(entry, outputDir, first(targets));
+        this.targets = List.copyOf(targets);
+    }
+
+    @Override public List<ConversionSettings> targets() { return targets; }
+
+    private static ConversionSettings first(List<ConversionSettings> targets) {
+        if (targets == null || targets.isEmpty()) throw new IllegalArgumentException("at least one target");
+        return targets.get(0);
+    }
+}
@@ -3,5 +3,6 @@ package se223.audioconverter.model;
 public enum OverwritePolicy {
     OVERWRITE,     // replace existing file
     SKIP,          // skip existing
-    RENAME         // create new name like "file(1).mp3"
+    RENAME,        // create new name like "file(1).mp3"
+    INCREMENTAL    // re-encode only if input or settings changed since the last run
 }
@@ -0,0 +1,11 @@
+package se223.audioconverter.model;
+
+public enum ResultStatus {
+    OK,            // converted
+    FAILED,        // ffmpeg or I/O error
+    SKIPPED,       // output existed under OverwritePolicy.SKIP
+    UP_TO_DATE,    // INCREMENTAL cache hit: output already matches input + settings
+    CANCELLED,     // batch was cancelled before or while this job ran
+    TIMED_OUT,     // killed after exceeding the per-job deadline
+    STALLED        // killed by the watchdog: no progress for too long
+}
@@ -0,0 +1,8 @@
+package se223.audioconverter.model;
+
+/** Order in which queued jobs are started; every policy still serves a job that waited too long. */
+public enum SchedulingPolicy {
+    FIFO,            // list order
+    LONGEST_FIRST,   // longest duration first: shortest total batch time
+    SHORTEST_FIRST   // shortest duration first: first results arrive soonest
+}
@@ -0,0 +1,25 @@
+package se223.audioconverter.model;
+
+import java.util.List;
+
+/** Every problem pre-flight validation found in a batch, in request order; empty when the batch may run. */
+public record ValidationReport(List<ConversionError> errors) {
+
+    /** Lines shown by {@link #summary()} before the rest is counted. */
+    private static final int SUMMARY_LINES = 10;
+
+    public ValidationReport {
+        errors = List.copyOf(errors);
+    }
+
+    public boolean isValid() { return errors.isEmpty(); }
+
+    /** The message of a single problem, else a count followed by the first few messages. */
+    public String summary() {
+        if (errors.size() == 1) return errors.get(0).message();
+        StringBuilder sb = new StringBuilder(errors.size() + " problems found:");
+        for (int i = 0; i < Math.min(SUMMARY_LINES, errors.size()); i++) sb.append('\n').append(errors.get(i).message());
+        if (errors.size() > SUMMARY_LINES) sb.append("\n… and ").append(errors.size() - SUMMARY_LINES).append(" more");
+        return sb.toString();
+    }
+}
@@ -2,57 +2,179 @@ package se223.audioconverter.service;
 
 import se223.audioconverter.core.*;
 import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.metrics.ConversionMetrics;
 import se223.audioconverter.model.ConversionRequest;
 import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.SchedulingPolicy;
 
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Entry point for the UI and the command line. Nothing here spawns a process on construction:
+ * ffmpeg is discovered by {@link FFmpegService} on a background thread the first time anything
+ * asks for it, and the converters are built once that answer is in.
+ */
 public class ConversionService {
 
     private static final ConversionService INSTANCE = new ConversionService();
     public static ConversionService getInstance() { return INSTANCE; }
 
-    private final AudioConverter converter;
+    /**
+     * What discovery produced: the converter, the one engine all its parts run on, and what it can
+     * encode (null: no ffmpeg, nothing to check).
+     */
+    private record Backend(AudioConverter converter, ExecutionEngine engine, PcmAudioConverter pcm,
+                           boolean usingFFmpeg, String ffmpegInfo, Set<String> encoders) {}
 
-    // 🔹 Add these two fields:
-    private final boolean usingFFmpeg;
-    private final String ffmpegInfo;
+    private final FFmpegService ffmpegService = FFmpegService.getInstance();
+    // one registry for every converter, published over JMX once the converters exist
+    private final ConversionMetrics metrics = new ConversionMetrics();
+    // serves earlier probes straight away; probing starts once ffprobe has been found
+    private final MediaInfoCache mediaCache;
+    private final ReentrantLock lock = new ReentrantLock();
+    private CompletableFuture<Backend> backend;
 
     private ConversionService() {
-        // Try real FFmpeg first, fall back to mock
-        var maybe = FFmpegAudioConverter.createDefault();
-        if (maybe.isPresent()) {
-            this.converter = maybe.get();
-            this.usingFFmpeg = true;
-            this.ffmpegInfo = "FFmpeg located successfully (PATH / FFMPEG_HOME / ffmpeg/bin)";
-        } else {
-            this.converter = new MockAudioConverter(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
-            this.usingFFmpeg = false;
-            this.ffmpegInfo = "FFmpeg not found; running in mock simulation mode.";
+        mediaCache = MediaInfoCache.createDefault(null);
+        mediaCache.setMetrics(metrics);
+    }
+
+    /**
+     * Runs every batch on {@code converter} and never looks for ffmpeg, e.g. to drive the command
+     * line against {@link MockAudioConverter} in tests. Requests are still validated, without an encoder list.
+     */
+    public ConversionService(AudioConverter converter, MediaInfoCache mediaCache) {
+        this.mediaCache = mediaCache;
+        mediaCache.setMetrics(metrics);
+        backend = CompletableFuture.completedFuture(
+                new Backend(converter, null, null, false, "FFmpeg not used", null));
+    }
+
+    /** Starts ffmpeg discovery if nothing has yet; completes once the converters are ready. Never blocks. */
+    public CompletableFuture<Void> ready() {
+        return backend().thenApply(b -> null);
+    }
+
+    private CompletableFuture<Backend> backend() {
+        lock.lock();
+        try {
+            if (backend == null) backend = ffmpegService.discover().thenApply(this::connect);
+            return backend;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Blocks until discovery is done; the UI thread waits on {@link #ready()} first. */
+    private Backend await() {
+        return backend().join();
+    }
+
+    private Backend connect(Optional<FFmpegService.Installation> found) {
+        metrics.register(); // runs once, off the FX thread: starting the platform MBean server takes a moment
+        // in-process and ffmpeg jobs share one pool, so a mixed batch never runs more jobs than there are workers
+        var engine = new ExecutionEngine(found.isPresent() ? ConcurrencyTuner.adaptive()
+                : ConcurrencyTuner.fixed(Runtime.getRuntime().availableProcessors()), FFmpegAudioConverter.DEFAULT_MAX_QUEUE_DELAY);
+        // WAV to WAV never needs a process, with or without ffmpeg
+        var pcm = new PcmAudioConverter(engine, mediaCache);
+        pcm.setMetrics(metrics);
+        if (found.isEmpty()) {
+            var mock = new MockAudioConverter(engine);
+            return new Backend(new RoutingAudioConverter(pcm, mock, engine), engine, pcm, false,
+                    "FFmpeg not found; WAV to WAV runs in-process, everything else in mock simulation mode.", null);
         }
+        FFmpegService.Installation ff = found.get();
+        mediaCache.setFfprobe(ff.ffprobe());
+        var external = new FFmpegAudioConverter(engine, ff.ffmpeg(), mediaCache);
+        external.setMetrics(metrics);
+        String info = (ff.version().isEmpty() ? "FFmpeg" : ff.version()) + " at " + ff.ffmpeg();
+        return new Backend(new RoutingAudioConverter(pcm, external, engine), engine, pcm, true, info, ff.encoders().keySet());
     }
 
-    // No 'throws' here: we wrap any sync failure into a failed future.
-    public CompletableFuture<List<ConversionResult>> convert(
+    private ConversionValidator validator(Backend b) {
+        return new ConversionValidator(mediaCache, b.encoders(), b.pcm() != null ? b.pcm()::supports : r -> false);
+    }
+
+    // No 'throws' here: we wrap any sync failure into a failed job.
+    public ConversionJob convert(
             List<ConversionRequest> requests, ProgressCallback progress) {
+        return convert(requests, progress, SchedulingPolicy.FIFO);
+    }
+
+    public ConversionJob convert(
+            List<ConversionRequest> requests, ProgressCallback progress, SchedulingPolicy policy) {
 
         try {
-            ConversionValidator.validateRequests(requests);
-            return converter.convertAll(requests, progress);
+            Backend b = await();
+            validator(b).validateOrThrow(requests);
+            return b.converter().convertAll(requests, progress, policy);
         } catch (ConversionException e) {
-            return CompletableFuture.failedFuture(e);
+            return ConversionJob.failed(e);
         }
     }
 
+    /**
+     * Streams results as jobs finish, with flat memory for any batch size. Requests are validated
+     * one at a time as they are pulled (so duplicates across the batch are not detected, while each
+     * output directory is checked only once); an invalid one ends the stream with its {@link ConversionException}.
+     */
+    public Flow.Publisher<ConversionResult> convertStream(
+            Iterable<? extends ConversionRequest> requests, ProgressCallback progress) {
+        Backend b = await();
+        Iterable<ConversionRequest> validated = requests instanceof Collection<?> c
+                ? new AbstractCollection<>() { // keeps the size, so progress can show "i/n"
+                    @Override public Iterator<ConversionRequest> iterator() { return validating(b, requests.iterator()); }
+                    @Override public int size() { return c.size(); }
+                }
+                : () -> validating(b, requests.iterator());
+        return b.converter().convertStream(validated, progress);
+    }
+
+    private Iterator<ConversionRequest> validating(Backend b, Iterator<? extends ConversionRequest> it) {
+        ConversionValidator validator = validator(b);
+        return new Iterator<>() {
+            @Override public boolean hasNext() { return it.hasNext(); }
+
+            @Override public ConversionRequest next() {
+                ConversionRequest req = it.next();
+                try {
+                    validator.validateOrThrow(List.of(req));
+                } catch (ConversionException e) {
+                    throw new CompletionException(e);
+                }
+                return req;
+            }
+        };
+    }
+
     /** Close background resources (thread pools, etc.) */
     public void close() {
-        converter.close();
+        CompletableFuture<Backend> started;
+        lock.lock();
+        try {
+            started = backend;
+        } finally {
+            lock.unlock();
+        }
+        if (started != null) { // never starts discovery just to close
+            Backend b = started.join();
+            b.converter().close();
+            if (b.engine() != null) b.engine().close(); // the converters only borrow it
+        }
+        mediaCache.flush();
     }
 
-    public AudioConverter getConverter() { return converter; }
+    /** These block until discovery is done; see {@link #ready()}. */
+    public AudioConverter getConverter() { return await().converter(); }
+    /** Available at once: serves cached metadata before ffmpeg is found, probes after. */
+    public MediaInfoCache getMediaCache() { return mediaCache; }
+    /** Also visible in JConsole as {@value ConversionMetrics#OBJECT_NAME} once {@link #ready()} completes. */
+    public ConversionMetrics getMetrics() { return metrics; }
 
-    // 🔹 Add these two methods:
-    public boolean isUsingFFmpeg() { return usingFFmpeg; }
-    public String getFfmpegInfo() { return ffmpegInfo; }
+    public boolean isUsingFFmpeg() { return await().usingFFmpeg(); }
+    public String getFfmpegInfo() { return await().ffmpegInfo(); }
 }
\ No newline at end of file
@@ -1,4 +1,210 @@
 package se223.audioconverter.service;
 
-public class FFmpegService {
+import se223.audioconverter.util.DebugLogger;
+import se223.audioconverter.util.FFmpegLocator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds ffmpeg/ffprobe and asks ffmpeg which audio encoders it has, once, off the calling thread.
+ * The answer is kept in a small file keyed by both binaries' path, size and mtime, so a later start
+ * with the same binaries spawns nothing; replacing either binary makes the next start probe again.
+ */
+public final class FFmpegService {
+    private static final String HEADER = "# audioconverter ffmpeg cache v1";
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(15);
+
+    private static final FFmpegService INSTANCE = new FFmpegService(
+            Paths.get(System.getProperty("user.home"), ".audioconverter", "ffmpeg.tsv"));
+    public static FFmpegService getInstance() { return INSTANCE; }
+
+    /** An audio encoder as listed by {@code ffmpeg -encoders}; {@code flags} is its six-letter column. */
+    public record Encoder(String name, String flags, String description) {
+        public boolean frameThreads() { return flags.length() > 1 && flags.charAt(1) == 'F'; }
+        public boolean sliceThreads() { return flags.length() > 2 && flags.charAt(2) == 'S'; }
+        public boolean experimental() { return flags.length() > 3 && flags.charAt(3) == 'X'; }
+    }
+
+    /** A working ffmpeg/ffprobe pair and the audio encoders the ffmpeg build has. */
+    public record Installation(Path ffmpeg, Path ffprobe, String version, Map<String, Encoder> encoders) {
+        public Installation {
+            encoders = Map.copyOf(encoders);
+        }
+
+        public boolean hasEncoder(String name) { return encoders.containsKey(name); }
+    }
+
+    private final Path cacheFile; // null: never cached
+    private final Duration probeTimeout;
+    private final ReentrantLock lock = new ReentrantLock();
+    private CompletableFuture<Optional<Installation>> discovery;
+
+    FFmpegService(Path cacheFile) {
+        this(cacheFile, PROBE_TIMEOUT);
+    }
+
+    /** {@code probeTimeout} bounds each ffmpeg run and the wait for its output. */
+    FFmpegService(Path cacheFile, Duration probeTimeout) {
+        this.cacheFile = cacheFile;
+        this.probeTimeout = probeTimeout;
+    }
+
+    /** Starts discovery on first call, on a virtual thread; every call returns the same future. */
+    public CompletableFuture<Optional<Installation>> discover() {
+        lock.lock();
+        try {
+            if (discovery == null) {
+                discovery = new CompletableFuture<>();
+                Thread.ofVirtual().name("ffmpeg-discovery").start(() -> discovery.complete(locate()));
+            }
+            return discovery;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True once {@link #discover()} has been called, whether or not it has finished. */
+    public boolean isStarted() {
+        lock.lock();
+        try {
+            return discovery != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Blocking discovery of the binaries {@link FFmpegLocator} finds. */
+    Optional<Installation> locate() {
+        Path ffmpeg = FFmpegLocator.findFfmpeg().orElse(null);
+        Path ffprobe = FFmpegLocator.findFfprobe().orElse(null);
+        if (ffmpeg == null || ffprobe == null) return Optional.empty();
+        return locate(ffmpeg, ffprobe);
+    }
+
+    /** A cached answer if both binaries are unchanged, else one {@code -version} and one {@code -encoders} run. */
+    Optional<Installation> locate(Path ffmpeg, Path ffprobe) {
+        try {
+            String stamp = stamp(ffmpeg) + '\t' + stamp(ffprobe);
+
+            Installation cached = load(stamp);
+            if (cached != null) return Optional.of(cached);
+
+            List<String> version = run(ffmpeg, "-version");
+            if (version == null) return Optional.empty(); // a binary that cannot say its version gets no second wait
+            List<String> listing = run(ffmpeg, "-encoders");
+            if (listing == null) return Optional.empty();
+            Installation found = new Installation(ffmpeg, ffprobe,
+                    version.isEmpty() ? "" : version.get(0), parseEncoders(listing));
+            save(stamp, found);
+            return Optional.of(found);
+        } catch (IOException | RuntimeException e) {
+            DebugLogger.e("FFmpeg discovery failed", e);
+            return Optional.empty();
+        }
+    }
+
+    /** Audio encoders from {@code ffmpeg -encoders}: the lines after the "------" rule whose flags start with 'A'. */
+    static Map<String, Encoder> parseEncoders(List<String> lines) {
+        Map<String, Encoder> encoders = new TreeMap<>();
+        boolean body = false;
+        for (String line : lines) {
+            String s = line.strip();
+            if (!body) {
+                body = s.startsWith("------");
+                continue;
+            }
+            String[] parts = s.split("\\s+", 3);
+            if (parts.length < 2 || parts[0].isEmpty() || parts[0].charAt(0) != 'A') continue;
+            encoders.put(parts[1], new Encoder(parts[1], parts[0], parts.length > 2 ? parts[2] : ""));
+        }
+        return encoders;
+    }
+
+    /** Output lines of a successful run, or null if it could not start, failed or hung. */
+    private List<String> run(Path ffmpeg, String option) {
+        try {
+            Process p = new ProcessBuilder(ffmpeg.toString(), "-hide_banner", option)
+                    .redirectErrorStream(true)
+                    .start();
+            p.getOutputStream().close();
+            // read on the side, so a binary that hangs with its pipe open cannot outlast the timeout
+            List<String> lines = new ArrayList<>();
+            Thread reader = Thread.ofVirtual().name("ffmpeg-discovery-output").start(() -> {
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                    for (String line; (line = r.readLine()) != null; ) lines.add(line);
+                } catch (IOException ignored) {
+                    // killed below, or the pipe broke: the exit check decides
+                }
+            });
+            if (!p.waitFor(probeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                DebugLogger.d("Gave up on " + ffmpeg + " " + option + " after " + probeTimeout.toSeconds() + "s");
+                p.destroyForcibly();
+                return null;
+            }
+            if (!reader.join(probeTimeout)) return null; // something else holds the pipe
+            return p.exitValue() == 0 ? lines : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static String stamp(Path binary) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(binary, BasicFileAttributes.class);
+        return binary.toAbsolutePath().normalize() + "\t" + a.size() + "\t" + a.lastModifiedTime().toMillis();
+    }
+
+    // file layout: header, the two stamps, then "version<TAB>..." and one "encoder<TAB>name<TAB>flags<TAB>description" per line
+
+    private Installation load(String stamp) {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) return null;
+        try (BufferedReader r = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(r.readLine()) || !stamp.equals(r.readLine())) return null;
+            String version = "";
+            Map<String, Encoder> encoders = new TreeMap<>();
+            for (String line; (line = r.readLine()) != null; ) {
+                String[] f = line.split("\t", 4);
+                if (f[0].equals("version") && f.length == 2) version = f[1];
+                else if (f[0].equals("encoder") && f.length == 4) encoders.put(f[1], new Encoder(f[1], f[2], f[3]));
+            }
+            String[] s = stamp.split("\t");
+            return new Installation(Paths.get(s[0]), Paths.get(s[3]), version, encoders);
+        } catch (IOException | RuntimeException e) {
+            DebugLogger.e("FFmpeg cache unreadable: " + cacheFile, e);
+            return null;
+        }
+    }
+
+    private void save(String stamp, Installation found) {
+        if (cacheFile == null) return;
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(HEADER); w.newLine();
+                w.write(stamp); w.newLine();
+                w.write("version\t" + found.version().replace('\t', ' ')); w.newLine();
+                for (Encoder e : found.encoders().values()) {
+                    w.write("encoder\t" + e.name() + "\t" + e.flags() + "\t" + e.description().replace('\t', ' '));
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            DebugLogger.e("Could not write FFmpeg cache: " + cacheFile, e);
+        }
+    }
 }
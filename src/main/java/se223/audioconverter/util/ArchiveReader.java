@@ -0,0 +1,205 @@
+package se223.audioconverter.util;
+
+import se223.audioconverter.model.ArchiveEntry;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists and reads files inside ZIP and plain TAR archives without extracting them. Listing a
+ * ZIP reads only its central directory; listing a TAR hops from header to header and never
+ * reads member data. Either way each entry can then be opened on its own, so entries of one
+ * archive convert in parallel. Entries with absolute names or ".." segments are ignored.
+ */
+public final class ArchiveReader {
+    private ArchiveReader() {}
+
+    private static final int BLOCK = 512; // TAR header and data granularity
+
+    /** True for names ending in .zip or .tar. */
+    public static boolean isArchive(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".tar");
+    }
+
+    /** Regular file entries whose name passes {@code accept}, in archive order. */
+    public static List<ArchiveEntry> list(Path archive, Predicate<String> accept) throws IOException {
+        List<ArchiveEntry> out = new ArrayList<>();
+        if (archive.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                    ZipEntry z = e.nextElement();
+                    if (!z.isDirectory() && safe(z.getName()) && accept.test(z.getName()))
+                        out.add(new ArchiveEntry(archive, z.getName(), -1, z.getSize()));
+                }
+            }
+        } else {
+            try (FileChannel ch = FileChannel.open(archive, StandardOpenOption.READ)) {
+                listTar(archive, ch, accept, out);
+            }
+        }
+        return out;
+    }
+
+    /** The entry's bytes, decompressed; the caller closes the channel. */
+    public static ReadableByteChannel open(ArchiveEntry entry) throws IOException {
+        if (entry.offset() < 0) {
+            ZipFile zip = new ZipFile(entry.archive().toFile());
+            try {
+                ZipEntry z = zip.getEntry(entry.name());
+                if (z == null) throw new IOException("No entry " + entry.name() + " in " + entry.archive());
+                InputStream in = zip.getInputStream(z);
+                return Channels.newChannel(new FilterInputStream(in) {
+                    @Override public void close() throws IOException {
+                        try { super.close(); } finally { zip.close(); }
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                zip.close();
+                throw e;
+            }
+        }
+        FileChannel ch = FileChannel.open(entry.archive(), StandardOpenOption.READ);
+        return new Slice(ch, entry.offset(), entry.size());
+    }
+
+    private static void listTar(Path archive, FileChannel ch, Predicate<String> accept, List<ArchiveEntry> out)
+            throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(BLOCK);
+        long size = ch.size();
+        long pos = 0;
+        String longName = null; // from a GNU 'L' or pax 'x' record, applies to the next member
+        while (pos + BLOCK <= size) {
+            readFully(ch, h, pos);
+            if (isZero(h)) break; // end-of-archive marker
+            byte type = h.get(156);
+            long length = number(h, 124, 12);
+            long data = pos + BLOCK;
+            if (type == 'L') {
+                longName = cString(read(ch, data, length), 0, (int) length);
+            } else if (type == 'x') {
+                longName = paxPath(read(ch, data, length));
+            } else if (type == '0' || type == 0 || type == '7') {
+                String name = longName != null ? longName : ustarName(h);
+                longName = null;
+                if (safe(name) && accept.test(name)) out.add(new ArchiveEntry(archive, name, data, length));
+            } else {
+                longName = null; // directories, links, global headers
+            }
+            pos = data + (length + BLOCK - 1) / BLOCK * BLOCK;
+        }
+    }
+
+    private static String ustarName(ByteBuffer h) {
+        String name = cString(h, 0, 100);
+        boolean posix = cString(h, 257, 6).equals("ustar") && h.get(262) == 0; // GNU tar uses that space otherwise
+        String prefix = posix ? cString(h, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /** The "path" record of a pax extended header ("<len> path=<value>\n" lines). */
+    private static String paxPath(ByteBuffer b) {
+        String text = StandardCharsets.UTF_8.decode(b).toString();
+        for (String line : text.split("\n")) {
+            int eq = line.indexOf('=');
+            int sp = line.indexOf(' ');
+            if (sp > 0 && eq > sp && line.substring(sp + 1, eq).equals("path")) return line.substring(eq + 1);
+        }
+        return null;
+    }
+
+    /** Octal field, or base-256 when the high bit of its first byte is set (sizes of 8 GB and more). */
+    private static long number(ByteBuffer h, int at, int len) {
+        if ((h.get(at) & 0x80) != 0) {
+            long v = h.get(at) & 0x7F;
+            for (int i = 1; i < len; i++) v = v << 8 | (h.get(at + i) & 0xFF);
+            return v;
+        }
+        long v = 0;
+        for (int i = 0; i < len; i++) {
+            byte c = h.get(at + i);
+            if (c >= '0' && c <= '7') v = v * 8 + (c - '0');
+            else if (c != ' ' || v != 0) break;
+        }
+        return v;
+    }
+
+    private static String cString(ByteBuffer b, int at, int max) {
+        int end = at;
+        while (end < at + max && end < b.limit() && b.get(end) != 0) end++;
+        byte[] bytes = new byte[end - at];
+        b.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZero(ByteBuffer b) {
+        for (int i = 0; i < BLOCK; i++) if (b.get(i) != 0) return false;
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, long length) throws IOException {
+        if (length > 1 << 20) throw new IOException("Oversized TAR extended header");
+        ByteBuffer b = ByteBuffer.allocate((int) length);
+        readFully(ch, b, pos);
+        return b.flip();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        b.clear();
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0) throw new EOFException("Truncated TAR archive");
+        }
+    }
+
+    private static boolean safe(String name) {
+        if (name.isEmpty() || name.startsWith("/") || name.startsWith("\\") || name.contains(":")) return false;
+        for (String part : name.split("[/\\\\]")) if (part.equals("..")) return false;
+        return true;
+    }
+
+    /** {@code length} bytes of a file from {@code start}, read with positional reads. */
+    private static final class Slice implements ReadableByteChannel {
+        private final FileChannel ch;
+        private final long end;
+        private long pos;
+
+        Slice(FileChannel ch, long start, long length) {
+            this.ch = ch; this.pos = start; this.end = start + length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (pos >= end) return -1;
+            int limit = dst.limit();
+            if (end - pos < dst.remaining()) dst.limit(dst.position() + (int) (end - pos));
+            try {
+                int n = ch.read(dst, pos);
+                if (n < 0) throw new EOFException("Truncated TAR member");
+                pos += n;
+                return n;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override public boolean isOpen() { return ch.isOpen(); }
+
+        @Override public void close() throws IOException { ch.close(); }
+    }
+}
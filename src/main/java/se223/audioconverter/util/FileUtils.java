@@ -16,7 +16,7 @@ public final class FileUtils {
         Path candidate = outDir.resolve(base + "." + newExt.toLowerCase());
 
         switch (policy) {
-            case OVERWRITE -> { return candidate; }
+            case OVERWRITE, INCREMENTAL -> { return candidate; } // INCREMENTAL: manifest decides later
             case SKIP -> {
                 return Files.exists(candidate) ? null : candidate;
             }
@@ -0,0 +1,241 @@
+package se223.audioconverter.util;
+
+import se223.audioconverter.model.ArchiveEntry;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Recursive, parallel folder ingestion. Each directory is listed by its own fork/join task,
+ * files are filtered by extension and de-duplicated by absolute path (roots by their real path),
+ * and matches are handed out in batches while the scan is still running. Symlinked directories
+ * inside the roots are not followed.
+ * Optionally ZIP/TAR archives are listed too, each by its own task, and their matching entries
+ * handed out instead of the archive file.
+ */
+public final class FolderScanner {
+
+    /** Extensions of the audio files the app picks up from folders and drops. */
+    public static final Set<String> AUDIO_EXTENSIONS = Set.of("mp3", "wav", "m4a", "flac", "aac", "ogg", "mp4", "m4b");
+
+    private static final long FLUSH_NANOS = 100_000_000L; // slow trees still show results every 100 ms
+
+    private final Set<String> extensions;
+    private final int maxDepth;
+    private final int batchSize;
+    private final long flushNanos;
+
+    /** {@code extensions} lower-case, without the dot; {@code maxDepth} 0 takes only files directly inside the roots. */
+    public FolderScanner(Set<String> extensions, int maxDepth, int batchSize) {
+        this(extensions, maxDepth, batchSize, FLUSH_NANOS);
+    }
+
+    FolderScanner(Set<String> extensions, int maxDepth, int batchSize, long flushNanos) {
+        this.extensions = Set.copyOf(extensions);
+        this.maxDepth = Math.max(0, maxDepth);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = flushNanos;
+    }
+
+    /** A running scan. */
+    public static final class Scan {
+        private final CompletableFuture<Integer> done = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        /** Completes with the number of files found once the last batch has been handed out. */
+        public CompletableFuture<Integer> done() { return done; }
+
+        /** Stops listing; batches already found are still delivered. */
+        public void cancel() { cancelled = true; }
+
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    /**
+     * Scans {@code roots} (directories, or files taken as-is if they match) on a background pool.
+     * {@code onBatch} is called from scanner threads, one batch at a time.
+     */
+    public Scan scan(Collection<Path> roots, Consumer<List<Path>> onBatch) {
+        return scan(roots, onBatch, null);
+    }
+
+    /**
+     * Like {@link #scan(Collection, Consumer)}, but archives (see {@link ArchiveReader#isArchive})
+     * among the roots and inside the folders are opened and their matching entries passed to
+     * {@code onEntries}, one call per archive, serialized with the batches. Null treats archives as plain files.
+     */
+    public Scan scan(Collection<Path> roots, Consumer<List<Path>> onBatch, Consumer<List<ArchiveEntry>> onEntries) {
+        Scan scan = new Scan();
+        Batcher batcher = new Batcher(onBatch, onEntries);
+        // listing is I/O bound: more threads than cores keeps slow disks and network shares busy
+        ForkJoinPool pool = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        CompletableFuture.runAsync(() -> {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (Path root : roots) {
+                Path abs = canonical(root);
+                if (Files.isDirectory(abs)) {
+                    tasks.add(new DirTask(abs, 0, scan, seen, batcher));
+                } else if (onEntries != null && ArchiveReader.isArchive(abs)) {
+                    if (seen.add(abs.toString())) tasks.add(new ArchiveTask(abs, scan, batcher));
+                } else if (matches(abs) && seen.add(abs.toString())) {
+                    batcher.add(abs);
+                }
+            }
+            RecursiveAction.invokeAll(tasks);
+        }, pool).whenComplete((v, ex) -> {
+            batcher.flush();
+            pool.shutdown();
+            if (ex != null) scan.done.completeExceptionally(ex);
+            else scan.done.complete(batcher.found.get());
+        });
+        return scan;
+    }
+
+    /** The root's real path, so a symlink to a folder and the folder itself are scanned as one. */
+    private static Path canonical(Path root) {
+        try {
+            return root.toRealPath();
+        } catch (IOException e) {
+            return root.toAbsolutePath().normalize(); // missing: skipped below like before
+        }
+    }
+
+    private boolean matches(Path file) {
+        return matches(file.getFileName().toString());
+    }
+
+    private boolean matches(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && extensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private final class DirTask extends RecursiveAction {
+        private final Path dir;
+        private final int depth;
+        private final Scan scan;
+        private final Set<String> seen;
+        private final Batcher batcher;
+
+        DirTask(Path dir, int depth, Scan scan, Set<String> seen, Batcher batcher) {
+            this.dir = dir; this.depth = depth; this.scan = scan; this.seen = seen; this.batcher = batcher;
+        }
+
+        @Override
+        protected void compute() {
+            if (scan.cancelled) return;
+            List<RecursiveAction> children = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p : entries) {
+                    if (scan.cancelled) break;
+                    BasicFileAttributes a;
+                    try {
+                        a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; // vanished or unreadable entry
+                    }
+                    if (a.isDirectory()) {
+                        if (depth < maxDepth) children.add(new DirTask(p, depth + 1, scan, seen, batcher));
+                    } else if (batcher.onEntries != null && ArchiveReader.isArchive(p)) {
+                        if (seen.add(p.toString())) children.add(new ArchiveTask(p, scan, batcher));
+                    } else if (matches(p) && seen.add(p.toString())) {
+                        batcher.add(p);
+                    }
+                }
+            } catch (IOException e) {
+                DebugLogger.d("Skipping unreadable folder " + dir + ": " + e.getMessage());
+            }
+            invokeAll(children);
+        }
+    }
+
+    /** Lists one archive; ZIP reads only the central directory, TAR skips over member data. */
+    private final class ArchiveTask extends RecursiveAction {
+        private final Path archive;
+        private final Scan scan;
+        private final Batcher batcher;
+
+        ArchiveTask(Path archive, Scan scan, Batcher batcher) {
+            this.archive = archive; this.scan = scan; this.batcher = batcher;
+        }
+
+        @Override
+        protected void compute() {
+            if (scan.cancelled) return;
+            try {
+                List<ArchiveEntry> entries = ArchiveReader.list(archive, FolderScanner.this::matches);
+                if (!entries.isEmpty()) batcher.addEntries(entries);
+            } catch (IOException e) {
+                DebugLogger.d("Skipping unreadable archive " + archive + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Collects matches and hands them out in batches of {@code batchSize} (or every 100 ms). */
+    private final class Batcher {
+        private final Consumer<List<Path>> onBatch;
+        private final Consumer<List<ArchiveEntry>> onEntries;
+        private final AtomicInteger found = new AtomicInteger();
+        private List<Path> pending = new ArrayList<>();
+        private long lastFlush = System.nanoTime();
+
+        Batcher(Consumer<List<Path>> onBatch, Consumer<List<ArchiveEntry>> onEntries) {
+            this.onBatch = onBatch;
+            this.onEntries = onEntries;
+        }
+
+        void addEntries(List<ArchiveEntry> entries) {
+            found.addAndGet(entries.size());
+            synchronized (onBatch) {
+                onEntries.accept(entries);
+            }
+        }
+
+        void add(Path p) {
+            found.incrementAndGet();
+            List<Path> out = null;
+            synchronized (this) {
+                pending.add(p);
+                if (pending.size() >= batchSize || System.nanoTime() - lastFlush > flushNanos) {
+                    out = take();
+                }
+            }
+            if (out != null) deliver(out);
+        }
+
+        void flush() {
+            List<Path> out;
+            synchronized (this) { out = take(); }
+            if (!out.isEmpty()) deliver(out);
+        }
+
+        private List<Path> take() {
+            List<Path> out = pending;
+            pending = new ArrayList<>();
+            lastFlush = System.nanoTime();
+            return out;
+        }
+
+        private void deliver(List<Path> batch) {
+            synchronized (onBatch) { // callers see one batch at a time
+                onBatch.accept(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package se223.audioconverter.util;
+
+import se223.audioconverter.model.OverwritePolicy;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out output file names per directory, the way {@link FileUtils#resolveOutput} decides
+ * them, but from memory: a directory is listed once when its first job asks for a name, and
+ * names given out are marked taken at once, so parallel jobs with the same base name never get
+ * the same file. A directory's names are forgotten when none of its reservations is open, so
+ * the next batch sees files changed in between. Names compare case-insensitively, which keeps
+ * RENAME and SKIP from overwriting on Windows and macOS file systems.
+ * <p>
+ * Outputs are written to a hidden {@code .part} file next to the target and moved into place
+ * by {@link Reservation#commit()}, so an aborted or crashed job never leaves a partial file under
+ * the real name.
+ */
+public final class OutputNameIndex {
+
+    private static final OutputNameIndex SHARED = new OutputNameIndex();
+    private static final String PART_TAG = ProcessHandle.current().pid() + "-";
+
+    private final Map<Path, Dir> dirs = new ConcurrentHashMap<>();
+    private final AtomicLong partCounter = new AtomicLong();
+
+    /** An index of its own; converters share {@link #shared()}. */
+    public OutputNameIndex() {}
+
+    /** The index every converter of this process uses, so their names cannot collide either. */
+    public static OutputNameIndex shared() { return SHARED; }
+
+    /**
+     * The output for {@code input} in {@code outDir} with extension {@code newExt}, or null when
+     * {@code policy} is SKIP and the name exists or is reserved. The caller must end every
+     * reservation with {@link Reservation#commit()} or {@link Reservation#abort()}.
+     */
+    public Reservation reserve(Path input, Path outDir, String newExt, OverwritePolicy policy) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = newExt.toLowerCase(Locale.ROOT);
+
+        Path key = outDir.toAbsolutePath().normalize();
+        Dir dir = dirs.compute(key, (k, d) -> {
+            if (d == null) d = new Dir();
+            d.leases++;
+            return d;
+        });
+        dir.lock.lock();
+        try {
+            if (!dir.seeded) dir.seed(key);
+            String chosen = base + "." + ext;
+            String stem = fold(chosen);
+            int number = 0;
+            boolean claimed = dir.taken.add(fold(chosen));
+            switch (policy) {
+                case OVERWRITE, INCREMENTAL -> { } // the same name again; INCREMENTAL: manifest decides later
+                case SKIP -> {
+                    if (!claimed) {
+                        release(key);
+                        return null;
+                    }
+                }
+                case RENAME -> {
+                    if (!claimed) {
+                        // numbers below the hint are all taken; a freed one lowers it again
+                        number = dir.nextSuffix.getOrDefault(stem, 1);
+                        while (!dir.taken.add(fold(chosen = base + "(" + number + ")." + ext))) number++;
+                        dir.nextSuffix.put(stem, number + 1);
+                        claimed = true;
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown policy: " + policy);
+            }
+            String part = "." + chosen.substring(0, chosen.length() - ext.length() - 1)
+                    + "." + PART_TAG + partCounter.incrementAndGet() + ".part." + ext;
+            return new Reservation(key, outDir.resolve(chosen), outDir.resolve(part), claimed, stem, number);
+        } catch (RuntimeException e) {
+            release(key);
+            throw e;
+        } finally {
+            dir.lock.unlock();
+        }
+    }
+
+    private void release(Path key) {
+        dirs.computeIfPresent(key, (k, d) -> --d.leases == 0 ? null : d);
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** Names known in one directory: listed once, plus every name given out since. */
+    private static final class Dir {
+        final ReentrantLock lock = new ReentrantLock(); // not synchronized: callers may be virtual threads
+        final Set<String> taken = new HashSet<>();
+        final Map<String, Integer> nextSuffix = new HashMap<>(); // "base.ext" -> first RENAME number to try
+        boolean seeded;
+        int leases; // changed only inside the map's compute functions
+
+        void seed(Path dir) {
+            seeded = true;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path f : files) taken.add(fold(f.getFileName().toString()));
+            } catch (NoSuchFileException e) {
+                // created later by the job itself
+            } catch (IOException e) {
+                DebugLogger.e("Could not list " + dir + "; assuming it is empty", e);
+            }
+        }
+    }
+
+    /** One output name held by one job, and the temporary file it writes first. */
+    public final class Reservation {
+        private final Path key;
+        private final Path target;
+        private final Path part;
+        private final boolean claimed; // the name was free: give it back on abort
+        private final String stem;
+        private final int number;      // RENAME suffix, 0 for the plain name
+        private boolean ended;
+
+        private Reservation(Path key, Path target, Path part, boolean claimed, String stem, int number) {
+            this.key = key;
+            this.target = target;
+            this.part = part;
+            this.claimed = claimed;
+            this.stem = stem;
+            this.number = number;
+        }
+
+        /** The final output path, as reported in results. */
+        public Path target() { return target; }
+
+        /** Where the encoder writes; keeps the target's extension so ffmpeg picks the same muxer. */
+        public Path part() { return part; }
+
+        /** Moves the finished part file onto the target in one step and ends the reservation. */
+        public void commit() throws IOException {
+            try {
+                try {
+                    Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            end(false);
+        }
+
+        /** Deletes the part file, if any, and frees the name for other jobs. */
+        public void abort() {
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException e) {
+                DebugLogger.e("Could not delete partial output " + part, e);
+            }
+            end(claimed);
+        }
+
+        private void end(boolean free) {
+            if (ended) return;
+            ended = true;
+            Dir dir = dirs.get(key); // still there: this reservation holds a lease
+            dir.lock.lock();
+            try {
+                if (free) {
+                    dir.taken.remove(fold(target.getFileName().toString()));
+                    if (number > 0) dir.nextSuffix.merge(stem, number, Math::min);
+                }
+            } finally {
+                dir.lock.unlock();
+            }
+            release(key);
+        }
+    }
+}
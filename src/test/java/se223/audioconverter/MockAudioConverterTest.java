@@ -6,7 +6,11 @@ import se223.audioconverter.exception.ConversionException;
 import se223.audioconverter.model.*;
 
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,6 +42,75 @@ public class MockAudioConverterTest {
         conv.close();
     }
 
+    @Test
+    void multiTargetRequestYieldsOneResultPerTarget() throws Exception {
+        var mp3 = new ConversionSettings();
+        mp3.setFormat(AudioFormat.MP3);
+        mp3.setSampleRateHz(44100);
+        mp3.setChannels(Channels.STEREO);
+        var flac = new ConversionSettings();
+        flac.setFormat(AudioFormat.FLAC);
+        flac.setSampleRateHz(48000);
+        flac.setChannels(Channels.STEREO);
+
+        var reqs = List.<ConversionRequest>of(
+                new MultiTargetRequest(Path.of("a.wav"), Path.of("target/out"), List.of(mp3, flac)),
+                new ConversionRequest(Path.of("b.wav"), Path.of("target/out"), mp3)
+        );
+
+        var conv = new MockAudioConverter(2);
+        var results = conv.convertAll(reqs, (f, p, i, n) -> {}).get();
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).getOutput().toString().endsWith(".mp3.mock"));
+        assertTrue(results.get(1).getOutput().toString().endsWith(".flac.mock"));
+        conv.close();
+    }
+
+    @Test
+    void multiTargetRequestNeedsATarget() {
+        var e = assertThrows(IllegalArgumentException.class, () ->
+                new MultiTargetRequest(Path.of("a.wav"), Path.of("target/out"), List.of()));
+        assertEquals("at least one target", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () ->
+                new MultiTargetRequest(new ArchiveEntry(Path.of("a.zip"), "a.wav", 0, 10), Path.of("target/out"), List.of()));
+    }
+
+    @Test
+    void streamPullsRequestsOnlyAsDemanded() throws Exception {
+        var settings = new ConversionSettings();
+        settings.setFormat(AudioFormat.MP3);
+        settings.setSampleRateHz(44100);
+        settings.setChannels(Channels.STEREO);
+
+        // a long lazy batch: counts how far the converter has pulled
+        AtomicInteger pulled = new AtomicInteger();
+        Iterable<ConversionRequest> reqs = () -> new Iterator<>() {
+            @Override public boolean hasNext() { return pulled.get() < 100_000; }
+            @Override public ConversionRequest next() {
+                return new ConversionRequest(Path.of(pulled.incrementAndGet() + ".wav"), Path.of("target/out"), settings);
+            }
+        };
+
+        var conv = new MockAudioConverter(4);
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch two = new CountDownLatch(2);
+        Flow.Subscription[] sub = new Flow.Subscription[1];
+        conv.convertStream(reqs, (f, p, i, n) -> {}).subscribe(new Flow.Subscriber<>() {
+            @Override public void onSubscribe(Flow.Subscription s) { sub[0] = s; s.request(2); }
+            @Override public void onNext(ConversionResult r) { received.incrementAndGet(); two.countDown(); }
+            @Override public void onError(Throwable t) { }
+            @Override public void onComplete() { }
+        });
+
+        assertTrue(two.await(10, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertEquals(2, received.get());
+        assertEquals(2, pulled.get());
+        sub[0].cancel();
+        conv.close();
+    }
+
     @Test
     void rejectsEmptyList() {
         assertThrows(ConversionException.class, () ->
@@ -0,0 +1,46 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se223.audioconverter.core.FFmpegCommandBuilder;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Building one request's ffmpeg argument list, for one output and for one output per format. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBuilderBenchmark {
+
+    @Param({"1", "4"})
+    public int targets;
+
+    private final Path ffmpeg = Path.of("/usr/bin/ffmpeg");
+    private final Path input = Path.of("/music/Some Artist/Some Album/01 - Track.flac");
+    private List<FFmpegCommandBuilder.Output> outputs;
+
+    @Setup
+    public void setup() {
+        AudioFormat[] formats = {AudioFormat.MP3, AudioFormat.M4A, AudioFormat.FLAC, AudioFormat.WAV};
+        outputs = new ArrayList<>();
+        for (int i = 0; i < targets; i++) {
+            ConversionSettings s = new ConversionSettings();
+            s.setFormat(formats[i]);
+            s.setBitrateKbps(256);
+            outputs.add(new FFmpegCommandBuilder.Output(s,
+                    Path.of("/out/01 - Track." + FFmpegCommandBuilder.extensionFor(formats[i]))));
+        }
+    }
+
+    @Benchmark
+    public List<String> build() {
+        return FFmpegCommandBuilder.build(ffmpeg, input, outputs, 2);
+    }
+}
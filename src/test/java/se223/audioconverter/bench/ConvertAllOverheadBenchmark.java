@@ -0,0 +1,60 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se223.audioconverter.core.MockAudioConverter;
+import se223.audioconverter.core.ProgressCallback;
+import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionResult;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code convertAll} costs per job apart from the conversion itself: scheduling on the
+ * execution engine, 20 progress callbacks and collecting results, measured with the mock
+ * converter's step delay set to zero. Reported per job.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertAllOverheadBenchmark {
+
+    private static final int JOBS = 1_000;
+    private static final ProgressCallback NO_PROGRESS = (file, p, i, n) -> { };
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private MockAudioConverter converter;
+    private List<ConversionRequest> requests;
+
+    @Setup
+    public void setup() {
+        converter = new MockAudioConverter(workers);
+        converter.setStepDelay(Duration.ZERO);
+        ConversionSettings mp3 = new ConversionSettings();
+        mp3.setFormat(AudioFormat.MP3);
+        requests = new ArrayList<>(JOBS);
+        for (int i = 0; i < JOBS; i++) requests.add(new ConversionRequest(Path.of("in", i + ".wav"), Path.of("out"), mp3));
+    }
+
+    @TearDown
+    public void tearDown() {
+        converter.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOBS)
+    public List<ConversionResult> convertAll() throws ConversionException {
+        return converter.convertAll(requests, NO_PROGRESS).join();
+    }
+}
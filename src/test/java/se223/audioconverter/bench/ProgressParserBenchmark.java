@@ -0,0 +1,75 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se223.audioconverter.core.ProgressParser;
+import se223.audioconverter.util.Timecode;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line/String/Timecode progress parsing versus the byte-level {@link ProgressParser},
+ * over a recorded-style {@code -progress} stream. Reported per block (one progress tick).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressParserBenchmark {
+
+    private static final int BLOCKS = 1_000;
+
+    private byte[] stream;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BLOCKS; i++) {
+            long us = i * 523_000L;
+            sb.append("bitrate= 128.0kbits/s\n")
+              .append("total_size=").append(i * 8_192L).append('\n')
+              .append("out_time_us=").append(us).append('\n')
+              .append("out_time_ms=").append(us).append('\n')
+              .append(String.format("out_time=%02d:%02d:%02d.%06d%n", us / 3_600_000_000L, us / 60_000_000 % 60, us / 1_000_000 % 60, us % 1_000_000))
+              .append("dup_frames=0\ndrop_frames=0\n")
+              .append("speed=").append(40 + i % 7).append(".").append(i % 10).append("x\n")
+              .append(i == BLOCKS - 1 ? "progress=end\n" : "progress=continue\n");
+        }
+        stream = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public void readerAndTimecode(Blackhole bh) throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream)));
+        String line;
+        while ((line = r.readLine()) != null) {
+            int eq = line.indexOf('=');
+            if (eq < 0) continue;
+            String key = line.substring(0, eq);
+            String value = line.substring(eq + 1);
+            if (key.equals("out_time")) {
+                bh.consume(Timecode.parseSeconds(value));
+            } else if (key.equals("speed")) {
+                bh.consume(value.endsWith("x") ? Double.parseDouble(value.substring(0, value.length() - 1).trim()) : -1);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public void byteParser(Blackhole bh) throws IOException {
+        ProgressParser p = new ProgressParser(new ByteArrayInputStream(stream));
+        while (p.next()) {
+            bh.consume(p.outTimeUs());
+            bh.consume(p.speed());
+        }
+    }
+}
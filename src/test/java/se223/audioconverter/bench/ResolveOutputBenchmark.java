@@ -0,0 +1,71 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se223.audioconverter.model.OverwritePolicy;
+import se223.audioconverter.util.FileUtils;
+import se223.audioconverter.util.OutputNameIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Picking an output name in a folder that already holds {@code collisions} files of the same
+ * base name ({@code song.mp3}, {@code song(1).mp3}, ...): {@link FileUtils#resolveOutput}, which
+ * asks the file system once per candidate, against a reservation from {@link OutputNameIndex}
+ * (released again, so every call starts from the same folder). A second reservation is held for
+ * the whole run, as in a batch, so the index lists the folder once rather than per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveOutputBenchmark {
+
+    @Param({"RENAME", "SKIP", "OVERWRITE"})
+    public OverwritePolicy policy;
+
+    @Param({"0", "100", "10000"})
+    public int collisions;
+
+    private Path dir;
+    private Path input;
+    private OutputNameIndex index;
+    private OutputNameIndex.Reservation pin;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("resolve-bench");
+        input = Path.of("music", "song.flac");
+        for (int i = 0; i < collisions; i++)
+            Files.createFile(dir.resolve(i == 0 ? "song.mp3" : "song(" + i + ").mp3"));
+        index = new OutputNameIndex();
+        pin = index.reserve(Path.of("music", "other.flac"), dir, "mp3", OverwritePolicy.RENAME);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pin.abort();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public Path fileUtils() {
+        return FileUtils.resolveOutput(input, dir, "mp3", policy);
+    }
+
+    @Benchmark
+    public Path nameIndex() {
+        OutputNameIndex.Reservation r = index.reserve(input, dir, "mp3", policy);
+        if (r == null) return null;
+        r.abort();
+        return r.target();
+    }
+}
@@ -0,0 +1,69 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se223.audioconverter.core.SincResampler;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SincResampler} on the scalar and the Vector API kernels, stereo, in the 8192-frame
+ * blocks the in-process converter uses. Reported in input frames per second (a frame is one
+ * sample per channel). The fork adds {@code jdk.incubator.vector} so both paths can run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class SincResamplerBenchmark {
+
+    private static final int FRAMES = 1 << 16;
+    private static final int BLOCK = 8192;
+    private static final int CHANNELS = 2;
+
+    @Param({"44100:48000", "96000:44100"})
+    public String rates;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    private int inRate, outRate;
+    private float[] input;
+    private float[] block;
+    private float[] output;
+
+    @Setup
+    public void setup() {
+        String[] r = rates.split(":");
+        inRate = Integer.parseInt(r[0]);
+        outRate = Integer.parseInt(r[1]);
+        if (kernel.equals("vector") && !SincResampler.isVectorized())
+            throw new IllegalStateException("Vector API not available in this JVM");
+
+        Random rnd = new Random(42);
+        input = new float[FRAMES * CHANNELS];
+        for (int i = 0; i < input.length; i++) input[i] = (float) (0.5 * Math.sin(i * 0.01) + 0.1 * rnd.nextGaussian());
+        block = new float[BLOCK * CHANNELS];
+        output = new float[newResampler().maxOutput(BLOCK) * CHANNELS];
+    }
+
+    private SincResampler newResampler() {
+        return kernel.equals("scalar")
+                ? SincResampler.scalar(CHANNELS, inRate, outRate)
+                : new SincResampler(CHANNELS, inRate, outRate);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void resample(Blackhole bh) {
+        SincResampler r = newResampler();
+        for (int f = 0; f < FRAMES; f += BLOCK) {
+            System.arraycopy(input, f * CHANNELS, block, 0, block.length);
+            int n = r.process(block, BLOCK, output, f + BLOCK == FRAMES);
+            bh.consume(output[n * CHANNELS - 1]);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se223.audioconverter.util.Timecode;
+
+import java.util.concurrent.TimeUnit;
+
+/** {@link Timecode#parseSeconds} on well-formed ffmpeg times and on the malformed values it must reject. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimecodeBenchmark {
+
+    private static final String[] VALID = {"00:00:00.00", "00:03:27.52", "01:12:09.875000", "12:59:59.99"};
+    private static final String[] INVALID = {"N/A", "00:03", "aa:bb:cc", ""};
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void valid(Blackhole bh) {
+        for (String s : VALID) bh.consume(Timecode.parseSeconds(s));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void invalid(Blackhole bh) {
+        for (String s : INVALID) bh.consume(Timecode.parseSeconds(s));
+    }
+}
@@ -0,0 +1,61 @@
+package se223.audioconverter.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se223.audioconverter.core.ConversionValidator;
+import se223.audioconverter.exception.ConversionException;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link ConversionValidator#validateRequests} on a valid batch of {@code size} real files spread
+ * over 16 output folders; below 64 paths it runs inline, above on virtual threads. Reported per batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private Path dir;
+    private List<ConversionRequest> requests;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("validator-bench");
+        ConversionSettings mp3 = new ConversionSettings();
+        mp3.setFormat(AudioFormat.MP3);
+        requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Path input = Files.createFile(dir.resolve(i + ".wav"));
+            requests.add(new ConversionRequest(input, dir.resolve("out" + i % 16), mp3));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public List<ConversionRequest> validateRequests() throws ConversionException {
+        ConversionValidator.validateRequests(requests);
+        return requests;
+    }
+}
@@ -0,0 +1,129 @@
+package se223.audioconverter.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.core.ConversionJob;
+import se223.audioconverter.core.MediaInfoCache;
+import se223.audioconverter.core.MockAudioConverter;
+import se223.audioconverter.core.ProgressCallback;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionRequest;
+import se223.audioconverter.service.ConversionService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// in the CLI's package: options and input expansion are internal to it
+public class HeadlessCliTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parseRejectsUnknownOptionsAndMissingValues() {
+        var unknown = assertThrows(IllegalArgumentException.class,
+                () -> HeadlessCli.Options.parse(new String[]{"-f", "mp3", "--fast", "a.wav"}));
+        assertEquals("Unknown option: --fast", unknown.getMessage());
+        var missing = assertThrows(IllegalArgumentException.class,
+                () -> HeadlessCli.Options.parse(new String[]{"a.wav", "-f"}));
+        assertEquals("Missing value for -f", missing.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> HeadlessCli.Options.parse(new String[]{"a.wav"}));
+    }
+
+    @Test
+    void parseKeepsEachFormatOnce() {
+        var opts = HeadlessCli.Options.parse(new String[]{"-f", "mp3,FLAC", "--format", "mp3", "a.wav"});
+
+        assertEquals(List.of(AudioFormat.MP3, AudioFormat.FLAC), opts.formats);
+        assertEquals(List.of("a.wav"), opts.inputs);
+    }
+
+    @Test
+    void globMatchesFilesAtEveryDepth() throws IOException {
+        Path music = Files.createDirectories(tempDir.resolve("music/x/y"));
+        touch(tempDir.resolve("music/a.flac"), tempDir.resolve("music/x/b.flac"), music.resolve("c.flac"),
+                tempDir.resolve("music/d.wav"));
+
+        var opts = HeadlessCli.Options.parse(new String[]{"-f", "mp3", tempDir + "/music/**/*.flac"});
+
+        assertEquals(Set.of("a.flac", "b.flac", "c.flac"), names(HeadlessCli.buildRequests(opts)));
+        assertEquals("{**/,}*.flac", HeadlessCli.anyDepth("**/*.flac"));
+        assertEquals("{a,**/b}", HeadlessCli.anyDepth("{a,**/b}")); // groups cannot nest
+    }
+
+    @Test
+    void listFileAddsInputsAndSkipsCommentsAndBlanks() throws IOException {
+        Path album = Files.createDirectories(tempDir.resolve("album"));
+        touch(tempDir.resolve("one.wav"), album.resolve("two.mp3"), album.resolve("notes.txt"));
+        Path list = Files.writeString(tempDir.resolve("inputs.txt"),
+                "# queued tonight\n" + tempDir.resolve("one.wav") + "\n\n  " + album + "  \n");
+
+        var opts = HeadlessCli.Options.parse(new String[]{"-f", "wav", "-l", list.toString()});
+
+        assertEquals(Set.of("one.wav", "two.mp3"), names(HeadlessCli.buildRequests(opts)));
+    }
+
+    @Test
+    void exitsZeroWhenEverythingConverts() throws IOException {
+        touch(tempDir.resolve("a.wav"), tempDir.resolve("b.wav"));
+        var out = new ByteArrayOutputStream();
+
+        int status = run(new MockAudioConverter(2), out, tempDir.resolve("a.wav").toString(), tempDir.resolve("b.wav").toString());
+
+        assertEquals(0, status);
+        String printed = out.toString(StandardCharsets.UTF_8);
+        assertEquals(2, printed.lines().filter(l -> l.contains("\"event\":\"result\"") && l.contains("\"OK\"")).count());
+        assertTrue(printed.contains("\"event\":\"summary\",\"ok\":2,\"failed\":0"));
+    }
+
+    @Test
+    void exitsOneWhenTheBatchFails() throws IOException {
+        touch(tempDir.resolve("a.wav"));
+        var broken = new MockAudioConverter(1) {
+            @Override
+            public ConversionJob convertAll(List<ConversionRequest> requests, ProgressCallback progress) {
+                return ConversionJob.failed(new IllegalStateException("disk full"));
+            }
+        };
+        var out = new ByteArrayOutputStream();
+
+        assertEquals(1, run(broken, out, tempDir.resolve("a.wav").toString()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\"message\":\"disk full\""));
+    }
+
+    @Test
+    void exitsTwoForBadArgumentsOrInputs() {
+        var out = new ByteArrayOutputStream();
+
+        assertEquals(2, run(new MockAudioConverter(1), out, "--bogus"));
+        assertEquals(2, run(new MockAudioConverter(1), out, tempDir.resolve("missing.wav").toString()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("Input file missing"));
+    }
+
+    private int run(MockAudioConverter converter, ByteArrayOutputStream out, String... inputs) {
+        converter.setStepDelay(Duration.ZERO);
+        var service = new ConversionService(converter, new MediaInfoCache(null, null, 64));
+        String[] args = new String[inputs.length + 6];
+        System.arraycopy(new String[]{"-f", "mp3", "-o", tempDir.resolve("out").toString(), "--progress", "0"}, 0, args, 0, 6);
+        System.arraycopy(inputs, 0, args, 6, inputs.length);
+        return HeadlessCli.run(args, () -> service, new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    private static void touch(Path... files) throws IOException {
+        for (Path f : files) Files.write(f, new byte[]{1});
+    }
+
+    private static Set<String> names(List<ConversionRequest> requests) {
+        return requests.stream().map(r -> r.input().getFileName().toString()).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,89 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.exception.ValidationException;
+import se223.audioconverter.model.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reportsEveryProblemInRequestOrder() throws IOException {
+        Path out = Files.createDirectory(tempDir.resolve("out"));
+        Path notADir = Files.writeString(tempDir.resolve("file.txt"), "x");
+        Path a = Files.writeString(tempDir.resolve("a.wav"), "x");
+        ConversionSettings wav12 = settings(AudioFormat.WAV);
+        wav12.setBitDepth(12);
+
+        List<ConversionRequest> requests = List.of(
+                new ConversionRequest(tempDir.resolve("missing.wav"), out, settings(AudioFormat.MP3)),
+                new ConversionRequest(a, notADir, settings(AudioFormat.MP3)),
+                new ConversionRequest(a, notADir, wav12));
+
+        ValidationReport report = new ConversionValidator(null).validate(requests);
+
+        assertEquals(List.of(
+                "Input file missing: " + tempDir.resolve("missing.wav"),
+                "Output path is not a directory: " + notADir,
+                "Duplicate file detected: a.wav",
+                "Unsupported WAV bit depth 12 (use 8, 16, 24 or 32)"),
+                report.errors().stream().map(ConversionError::message).toList());
+        assertEquals("missing.wav", report.errors().get(0).fileName());
+    }
+
+    @Test
+    void largeBatchesAreCheckedInParallelAndSummarised() throws IOException {
+        List<ConversionRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Path input = i % 50 == 0 ? tempDir.resolve("gone" + i + ".mp3") : Files.writeString(tempDir.resolve(i + ".mp3"), "x");
+            requests.add(new ConversionRequest(input, tempDir, settings(AudioFormat.MP3)));
+        }
+
+        ValidationException e = assertThrows(ValidationException.class,
+                () -> ConversionValidator.validateRequests(requests));
+
+        assertEquals(10, e.getReport().errors().size());
+        assertEquals("gone0.mp3", e.getReport().errors().get(0).fileName());
+        assertTrue(e.getMessage().startsWith("10 problems found:\nInput file missing: "));
+        assertDoesNotThrow(() -> ConversionValidator.validateRequests(requests.subList(1, 50)));
+    }
+
+    @Test
+    void missingEncoderIsReportedOnceUnlessTheRequestStaysInProcess() throws IOException {
+        Path a = Files.writeString(tempDir.resolve("a.flac"), "x");
+        Path b = Files.writeString(tempDir.resolve("b.flac"), "x");
+        Path c = Files.writeString(tempDir.resolve("c.wav"), "x");
+        Path d = Files.writeString(tempDir.resolve("d.ogg"), "x");
+        List<ConversionRequest> requests = List.of(
+                new ConversionRequest(a, tempDir, settings(AudioFormat.MP3)),
+                new ConversionRequest(b, tempDir, settings(AudioFormat.MP3)),
+                new ConversionRequest(c, tempDir, settings(AudioFormat.FLAC)),
+                new ConversionRequest(d, tempDir, settings(AudioFormat.FLAC)));
+
+        ValidationReport report = new ConversionValidator(null, Set.of("aac", "pcm_s16le"),
+                req -> req.input().equals(c)).validate(requests);
+
+        assertEquals(List.of(
+                "FFmpeg has no libmp3lame encoder, needed for MP3: a.flac",
+                "FFmpeg has no flac encoder, needed for FLAC: d.ogg"),
+                report.errors().stream().map(ConversionError::message).toList());
+    }
+
+    private static ConversionSettings settings(AudioFormat format) {
+        ConversionSettings s = new ConversionSettings();
+        s.setFormat(format);
+        return s;
+    }
+}
@@ -0,0 +1,49 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import se223.audioconverter.core.ExecutionEngine.Task;
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionEngineTest {
+
+    @Test
+    void closeFailsQueuedJobsAndRejectsLaterOnes() throws Exception {
+        var engine = new ExecutionEngine(ConcurrencyTuner.fixed(1), Duration.ofMinutes(1));
+        var running = new CountDownLatch(1);
+        var never = new CountDownLatch(1);
+        var first = engine.submit(new Task<>(() -> {
+            running.countDown();
+            try {
+                never.await();
+                return "finished";
+            } catch (InterruptedException e) {
+                return "interrupted";
+            }
+        }, 1), SchedulingPolicy.FIFO);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<String>> queued = engine.submitAll(
+                List.of(new Task<>(() -> "a", 1), new Task<>(() -> "b", 1)), SchedulingPolicy.FIFO);
+
+        engine.close();
+
+        assertEquals("interrupted", first.get(5, TimeUnit.SECONDS));
+        for (var f : queued) {
+            assertThrows(CancellationException.class, () -> f.get(5, TimeUnit.SECONDS));
+        }
+        var late = engine.submit(new Task<>(() -> "late", 1), SchedulingPolicy.FIFO);
+        var e = assertThrows(ExecutionException.class, () -> late.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        engine.submitUrgent(() -> fail("ran after close")); // dropped, not thrown
+    }
+}
@@ -0,0 +1,237 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// in the converter's package: the micro-batch planner is internal to it
+public class FFmpegAudioConverterTest {
+
+    private static final Path OUT = Path.of("out");
+
+    /** Advances its encoded position every 100 ms, forever. */
+    private static final String ADVANCING = """
+            i=0
+            while :; do i=$((i + 100000)); echo out_time_us=$i; echo progress=continue; sleep 0.1; done
+            """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tinyInputsWithTheSameSettingsShareAProcess() {
+        var mp3 = settings(AudioFormat.MP3, 192);
+        var mp3At320 = settings(AudioFormat.MP3, 320);
+        List<ConversionRequest> reqs = List.of(
+                request("a", mp3), request("b", mp3At320), request("c", mp3),
+                request("d", settings(AudioFormat.MP3, 192)), // equal settings, another instance
+                request("e", mp3At320));
+
+        assertEquals(List.of(List.of(0, 2, 3), List.of(1, 4)), FFmpegAudioConverter.units(reqs, weights(reqs.size(), 2), 32));
+    }
+
+    @Test
+    void groupsStopAtTheBatchSize() {
+        var flac = settings(AudioFormat.FLAC, null);
+        List<ConversionRequest> reqs = new ArrayList<>();
+        for (int i = 0; i < 7; i++) reqs.add(request("f" + i, flac));
+
+        assertEquals(List.of(List.of(0, 1, 2), List.of(3, 4, 5), List.of(6)),
+                FFmpegAudioConverter.units(reqs, weights(7, 1), 3));
+        assertEquals(7, FFmpegAudioConverter.units(reqs, weights(7, 1), 1).size()); // batching off
+    }
+
+    @Test
+    void longMultiTargetAndArchiveInputsRunAlone() {
+        var wav = settings(AudioFormat.WAV, null);
+        List<ConversionRequest> reqs = List.of(
+                request("short1", wav),
+                request("long", wav),
+                new MultiTargetRequest(Path.of("multi.wav"), OUT, List.of(wav, settings(AudioFormat.MP3, 192))),
+                new ConversionRequest(new ArchiveEntry(Path.of("set.zip"), "in.wav", 0, 100), OUT, wav),
+                request("short2", wav));
+        double[] weights = weights(reqs.size(), 3);
+        weights[1] = 600;
+
+        assertEquals(List.of(List.of(0, 4), List.of(1), List.of(2), List.of(3)),
+                FFmpegAudioConverter.units(reqs, weights, 32));
+    }
+
+    @Test
+    void groupCommandMapsEachInputToItsOwnOutput() {
+        var mp3 = settings(AudioFormat.MP3, 192);
+        List<Path> inputs = List.of(Path.of("a.wav"), Path.of("b.wav"), Path.of("c.wav"));
+        List<FFmpegCommandBuilder.Output> outputs = inputs.stream()
+                .map(p -> new FFmpegCommandBuilder.Output(mp3, Path.of(p.toString().replace(".wav", ".mp3")))).toList();
+
+        List<String> args = FFmpegCommandBuilder.buildGroup(Path.of("ffmpeg"), inputs, outputs, 1);
+
+        for (int k = 0; k < inputs.size(); k++) {
+            int in = args.indexOf(inputs.get(k).toString());
+            assertEquals("-i", args.get(in - 1));
+            int map = args.indexOf(k + ":a:0");
+            assertEquals("-map", args.get(map - 1));
+            int out = args.indexOf(outputs.get(k).file().toString());
+            assertTrue(in < args.indexOf("0:a:0"), "all inputs come before the first output");
+            assertTrue(map < out, "map " + k + " belongs to output " + k);
+            if (k > 0) assertTrue(args.indexOf(outputs.get(k - 1).file().toString()) < map, "one map per output");
+        }
+        assertEquals(inputs.size(), args.stream().filter("-map"::equals).count());
+    }
+
+    @Test
+    void stalledJobIsKilledWithItsChildren() throws Exception {
+        // one progress block, then silence from a child process that holds stdout open
+        Path ffmpeg = fakeFfmpeg("""
+                echo out_time_us=1000000; echo progress=continue
+                sleep 60 & echo $! > "$(dirname "$0")/child.pid"; wait
+                """);
+        var conv = new FFmpegAudioConverter(1, ffmpeg, null);
+        conv.setStallTimeout(Duration.ofSeconds(1));
+
+        ConversionResult result = convertOne(conv, null);
+
+        assertEquals(ResultStatus.STALLED, result.getStatus());
+        assertGone(pid("ffmpeg.pid"));
+        assertGone(pid("child.pid"));
+        assertNoOutput();
+    }
+
+    @Test
+    void jobPastItsDeadlineTimesOut() throws Exception {
+        var conv = new FFmpegAudioConverter(1, fakeFfmpeg(ADVANCING), null);
+        conv.setStallTimeout(Duration.ZERO);
+        conv.setJobTimeout(Duration.ofSeconds(1));
+
+        ConversionResult result = convertOne(conv, null);
+
+        assertEquals(ResultStatus.TIMED_OUT, result.getStatus());
+        assertGone(pid("ffmpeg.pid"));
+        assertNoOutput();
+    }
+
+    @Test
+    void cancelKillsTheRunningProcess() throws Exception {
+        var conv = new FFmpegAudioConverter(1, fakeFfmpeg(ADVANCING), null);
+
+        ConversionResult result = convertOne(conv, job -> {
+            Path started = dir.resolve("ffmpeg.pid");
+            while (!Files.exists(started)) Thread.sleep(10);
+            job.cancel(true);
+        });
+
+        assertEquals(ResultStatus.CANCELLED, result.getStatus());
+        assertGone(pid("ffmpeg.pid"));
+        assertNoOutput();
+    }
+
+    @Test
+    void probesAreOnDiskOnceTheBatchEnds() throws Exception {
+        Path ffmpeg = fakeFfmpeg("echo progress=end\n");
+        Path ffprobe = dir.resolve("ffprobe");
+        Files.writeString(ffprobe, """
+                #!/bin/sh
+                echo 'streams.stream.0.codec_name="mp3"'
+                echo 'streams.stream.0.sample_rate="44100"'
+                echo 'streams.stream.0.channels="2"'
+                echo 'format.duration="2.500000"'
+                echo 'format.bit_rate="320000"'
+                """);
+        Files.setPosixFilePermissions(ffprobe, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Path store = dir.resolve("media-cache");
+        Path in = Files.write(dir.resolve("in.mp3"), new byte[1000]);
+        Path outDir = Files.createDirectories(dir.resolve("out"));
+
+        // 320 kbps input, 192 kbps target: probed for a stream copy, then encoded
+        var conv = new FFmpegAudioConverter(ConcurrencyTuner.fixed(1), ffmpeg, new MediaInfoCache(ffprobe, store, 1000));
+        var results = conv.convertAll(List.of(new ConversionRequest(in, outDir, settings(AudioFormat.MP3, 192))),
+                (f, p, i, n) -> { }).get(20, TimeUnit.SECONDS);
+        assertEquals(ResultStatus.OK, results.get(0).getStatus());
+
+        // read back before close(), as if the app were killed now
+        assertEquals(2.5, new MediaInfoCache(null, store, 1000).peek(in).orElseThrow().getDurationSeconds());
+        conv.close();
+    }
+
+    private interface JobAction {
+        void accept(ConversionJob job) throws Exception;
+    }
+
+    /** Converts one small WAV to MP3 in {@code dir/out}, doing {@code meanwhile} while it runs. */
+    private ConversionResult convertOne(FFmpegAudioConverter conv, JobAction meanwhile) throws Exception {
+        try {
+            Path in = Files.write(dir.resolve("in.wav"), new byte[1000]);
+            Path outDir = Files.createDirectories(dir.resolve("out"));
+            ConversionJob job = conv.convertAll(List.of(new ConversionRequest(in, outDir, settings(AudioFormat.MP3, 192))),
+                    (f, p, i, n) -> { });
+            if (meanwhile != null) meanwhile.accept(job);
+            List<ConversionResult> results = job.get(20, TimeUnit.SECONDS);
+            assertEquals(1, results.size());
+            return results.get(0);
+        } finally {
+            conv.close();
+        }
+    }
+
+    /** A shell script standing in for ffmpeg: records its pid, starts the output file, then runs {@code body}. */
+    private Path fakeFfmpeg(String body) throws IOException {
+        assumeTrue(!System.getProperty("os.name").startsWith("Windows"), "needs a POSIX shell");
+        Path script = dir.resolve("ffmpeg");
+        Files.writeString(script, """
+                #!/bin/sh
+                for a; do last=$a; done
+                echo partial > "$last"
+                echo $$ > "$(dirname "$0")/ffmpeg.pid"
+                """ + body);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return script;
+    }
+
+    private long pid(String file) throws IOException {
+        return Long.parseLong(Files.readString(dir.resolve(file)).strip());
+    }
+
+    private static void assertGone(long pid) throws InterruptedException {
+        for (int i = 0; i < 100 && ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false); i++) Thread.sleep(20);
+        assertFalse(ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false), "process " + pid + " still running");
+    }
+
+    /** Neither the target nor its hidden .part file is left behind. */
+    private void assertNoOutput() throws IOException {
+        try (var files = Files.list(dir.resolve("out"))) {
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    private static ConversionRequest request(String name, ConversionSettings s) {
+        return new ConversionRequest(Path.of(name + ".wav"), OUT, s);
+    }
+
+    private static ConversionSettings settings(AudioFormat format, Integer kbps) {
+        var s = new ConversionSettings();
+        s.setFormat(format);
+        s.setBitrateKbps(kbps);
+        s.setSampleRateHz(44100);
+        s.setChannels(Channels.STEREO);
+        return s;
+    }
+
+    private static double[] weights(int n, double seconds) {
+        double[] w = new double[n];
+        Arrays.fill(w, seconds);
+        return w;
+    }
+}
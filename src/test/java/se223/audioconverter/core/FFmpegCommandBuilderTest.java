@@ -0,0 +1,77 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.Channels;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FFmpegCommandBuilderTest {
+
+    @Test
+    void copiesOnlyWhenCodecRateAndChannelsMatch() {
+        var mp3 = target(AudioFormat.MP3, 44100, Channels.STEREO);
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 2, 192), mp3));
+
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("aac", 44100, 2, 192), mp3));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("mp3", 48000, 2, 192), mp3));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 1, 192), mp3));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 6, 192), mp3));
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 1, 192), target(AudioFormat.MP3, 44100, Channels.MONO)));
+
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(null, mp3));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source(null, 0, 0, 0), mp3)); // no audio stream
+    }
+
+    @Test
+    void wavCopiesOnlyAtTheConfiguredBitDepth() {
+        var wav16 = target(AudioFormat.WAV, 44100, Channels.STEREO);
+        var wav24 = target(AudioFormat.WAV, 44100, Channels.STEREO);
+        wav24.setBitDepth(24);
+        var wav8 = target(AudioFormat.WAV, 44100, Channels.STEREO);
+        wav8.setBitDepth(8);
+
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("pcm_s16le", 44100, 2, 1411), wav16));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("pcm_s24le", 44100, 2, 2116), wav16));
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("pcm_s24le", 44100, 2, 2116), wav24));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("pcm_s16le", 44100, 2, 1411), wav24));
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("pcm_u8", 44100, 2, 705), wav8));
+        // lossless targets ignore the bitrate, even an unknown one
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("pcm_s16le", 44100, 2, 0), wav16));
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("flac", 44100, 2, 0), target(AudioFormat.FLAC, 44100, Channels.STEREO)));
+    }
+
+    @Test
+    void lossyCopyAllowsFivePercentOverTheAskedBitrate() {
+        var m4a = target(AudioFormat.M4A, 48000, Channels.STEREO);
+        m4a.setBitrateKbps(200);
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("aac", 48000, 2, 128), m4a));
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("aac", 48000, 2, 210), m4a));  // exactly 5% over
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("aac", 48000, 2, 211), m4a));
+
+        var mp3 = target(AudioFormat.MP3, 44100, Channels.STEREO); // unset: 192 kbps
+        assertTrue(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 2, 201), mp3));
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 2, 202), mp3));
+    }
+
+    @Test
+    void lossyCopyNeedsAKnownBitrate() {
+        assertFalse(FFmpegCommandBuilder.canStreamCopy(source("mp3", 44100, 2, 0), target(AudioFormat.MP3, 44100, Channels.STEREO)));
+    }
+
+    private static ConversionSettings target(AudioFormat format, int rate, Channels channels) {
+        var s = new ConversionSettings();
+        s.setFormat(format);
+        s.setSampleRateHz(rate);
+        s.setChannels(channels);
+        return s;
+    }
+
+    private static AudioFile source(String codec, int rate, int channels, int kbps) {
+        return new AudioFile(Path.of("in"), 1, 1, 60, codec, rate, channels, kbps);
+    }
+}
@@ -0,0 +1,329 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// in the encoder's package: FlacEncoder is internal to it
+public class FlacEncoderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everySubframeTypeAndStereoModeDecodesToItsInput() {
+        Random rnd = new Random(42);
+        int n = FlacEncoder.BLOCK_SIZE;
+        int[] sine = new int[n], noisy = new int[n], ramp = new int[n], other = new int[n], wobble = new int[n];
+        for (int i = 0; i < n; i++) {
+            sine[i] = (int) Math.round(12000 * Math.sin(2 * Math.PI * 440 * i / 44100.0)
+                    + 5000 * Math.sin(2 * Math.PI * 3150 * i / 44100.0));
+            noisy[i] = sine[i] + rnd.nextInt(9) - 4;
+            ramp[i] = i * i / 1024 - 8000;                      // a polynomial: fixed order 3 predicts it exactly
+            other[i] = rnd.nextInt(20001) - 10000;
+            wobble[i] = rnd.nextInt(4001) - 2000;               // opposite in the two channels: mid is smooth
+        }
+        List<int[][]> blocks = List.of(
+                new int[][] { filled(n, 1234), filled(n, 1234) },    // constant
+                new int[][] { ramp, ramp.clone() },                   // fixed
+                new int[][] { noisy, other },                         // LPC, left/right
+                new int[][] { noisy, plus(noisy, alternating(n)) },   // nearly equal channels: a side channel
+                new int[][] { plus(sine, wobble), plus(sine, negate(wobble)) }); // mid/side
+
+        Set<String> seen = new HashSet<>();
+        for (int b = 0; b < blocks.size(); b++) {
+            Decoded d = decodeFrame(new Reader(FlacEncoder.encodeFrame(blocks.get(b), n, 16, b)), 16);
+            assertEquals(b, d.frameNumber);
+            assertArrayEquals(blocks.get(b)[0], d.samples[0], "left of block " + b);
+            assertArrayEquals(blocks.get(b)[1], d.samples[1], "right of block " + b);
+            seen.addAll(d.kinds);
+        }
+        assertTrue(seen.containsAll(Set.of("CONSTANT", "FIXED", "LPC", "LEFT_RIGHT", "MID_SIDE")), seen.toString());
+        assertTrue(seen.contains("LEFT_SIDE") || seen.contains("SIDE_RIGHT"), seen.toString());
+    }
+
+    @Test
+    void shortAndWideFramesDecode() {
+        int[][] samples = new int[2][];
+        for (int n : new int[] { 1, 17, 100, 1808 }) { // 8-bit and 16-bit block size fields
+            samples[0] = new int[n];
+            samples[1] = new int[n];
+            for (int i = 0; i < n; i++) {
+                samples[0][i] = (int) Math.round(6_000_000 * Math.sin(i / 7.0)); // 24-bit range
+                samples[1][i] = (i * 7919) % 8_000_000 - 4_000_000;
+            }
+            Decoded d = decodeFrame(new Reader(FlacEncoder.encodeFrame(samples, n, 24, 300_000)), 24);
+            assertEquals(300_000, d.frameNumber); // a multi-byte frame number
+            assertArrayEquals(samples[0], d.samples[0], "n=" + n);
+            assertArrayEquals(samples[1], d.samples[1], "n=" + n);
+        }
+    }
+
+    @Test
+    void wavToFlacRoundTripsWithAShortFinalBlock() throws Exception {
+        int frames = 3 * FlacEncoder.BLOCK_SIZE + 1000;
+        short[][] in = new short[2][frames];
+        Random rnd = new Random(7);
+        for (int i = FlacEncoder.BLOCK_SIZE; i < frames; i++) { // silence first: a constant frame
+            double s = 9000 * Math.sin(2 * Math.PI * 523.25 * i / 44100.0);
+            in[0][i] = (short) Math.round(s + rnd.nextInt(5) - 2);
+            in[1][i] = (short) Math.round(i < 2 * FlacEncoder.BLOCK_SIZE ? s : -s);
+        }
+        Path wav = dir.resolve("mix.wav");
+        ByteBuffer b = ByteBuffer.allocate(44 + frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("RIFF".getBytes()).putInt(36 + frames * 4).put("WAVE".getBytes());
+        b.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(44100).putInt(44100 * 4).putShort((short) 4).putShort((short) 16);
+        b.put("data".getBytes()).putInt(frames * 4);
+        for (int i = 0; i < frames; i++) b.putShort(in[0][i]).putShort(in[1][i]);
+        Files.write(wav, b.array());
+
+        var flac = new ConversionSettings();
+        flac.setFormat(AudioFormat.FLAC);
+        flac.setSampleRateHz(44100);
+        flac.setChannels(Channels.STEREO);
+        flac.setBitDepth(16);
+        var conv = new PcmAudioConverter(2, new MediaInfoCache(null, null, 64));
+        var result = conv.convertAll(List.of(new ConversionRequest(wav, Files.createDirectory(dir.resolve("out")), flac)),
+                (f, p, i, t) -> { }).get().get(0);
+        conv.close();
+        assertEquals(ResultStatus.OK, result.getStatus());
+
+        Reader r = new Reader(Files.readAllBytes(result.getOutput()));
+        r.pos = FlacEncoder.HEADER_BYTES * 8;
+        List<Integer> sizes = new ArrayList<>();
+        int at = 0;
+        while (r.pos / 8 < r.buf.length) {
+            Decoded d = decodeFrame(r, 16);
+            assertEquals(sizes.size(), d.frameNumber);
+            for (int c = 0; c < 2; c++) {
+                for (int i = 0; i < d.samples[c].length; i++) {
+                    assertEquals(in[c][at + i], d.samples[c][i], "channel " + c + " sample " + (at + i));
+                }
+            }
+            at += d.samples[0].length;
+            sizes.add(d.samples[0].length);
+        }
+        assertEquals(frames, at);
+        assertEquals(List.of(4096, 4096, 4096, 1000), sizes);
+    }
+
+    // === a minimal decoder for what FlacEncoder writes, with its own CRCs ===
+
+    private record Decoded(long frameNumber, int[][] samples, List<String> kinds) { }
+
+    private static Decoded decodeFrame(Reader r, int expectedBits) {
+        assertEquals(0, r.pos % 8, "frame starts on a byte");
+        int start = r.pos / 8;
+        assertEquals(0x3FFE, r.bits(14), "sync");
+        assertEquals(0, r.bits(1));
+        assertEquals(0, r.bits(1), "fixed block size");
+        int blockCode = r.bits(4);
+        assertEquals(0, r.bits(4), "sample rate from STREAMINFO");
+        int assignment = r.bits(4);
+        int bits = switch (r.bits(3)) {
+            case 4 -> 16;
+            case 6 -> 24;
+            default -> throw new AssertionError("sample size code");
+        };
+        assertEquals(expectedBits, bits);
+        assertEquals(0, r.bits(1));
+        long frameNumber = r.utf8();
+        int n = switch (blockCode) {
+            case 1 -> 192;
+            case 2, 3, 4, 5 -> 576 << (blockCode - 2);
+            case 6 -> r.bits(8) + 1;
+            case 7 -> r.bits(16) + 1;
+            default -> 256 << (blockCode - 8);
+        };
+        int headerCrc = crc8(r.buf, start, r.pos / 8);
+        assertEquals(headerCrc, r.bits(8), "header CRC-8");
+
+        int channels = assignment < 8 ? assignment + 1 : 2;
+        List<String> kinds = new ArrayList<>();
+        kinds.add(switch (assignment) {
+            case 8 -> "LEFT_SIDE";
+            case 9 -> "SIDE_RIGHT";
+            case 10 -> "MID_SIDE";
+            default -> "LEFT_RIGHT";
+        });
+        int[][] x = new int[channels][];
+        for (int c = 0; c < channels; c++) {
+            boolean side = assignment == 8 && c == 1 || assignment == 9 && c == 0 || assignment == 10 && c == 1;
+            x[c] = subframe(r, n, side ? bits + 1 : bits, kinds);
+        }
+        r.pos = (r.pos + 7) & ~7;
+        int frameCrc = crc16(r.buf, start, r.pos / 8);
+        assertEquals(frameCrc, r.bits(16), "frame CRC-16");
+
+        if (assignment == 8) {
+            for (int i = 0; i < n; i++) x[1][i] = x[0][i] - x[1][i];
+        } else if (assignment == 9) {
+            for (int i = 0; i < n; i++) x[0][i] += x[1][i];
+        } else if (assignment == 10) {
+            for (int i = 0; i < n; i++) {
+                int mid = x[0][i] << 1 | (x[1][i] & 1), side = x[1][i];
+                x[0][i] = (mid + side) >> 1;
+                x[1][i] = (mid - side) >> 1;
+            }
+        }
+        return new Decoded(frameNumber, x, kinds);
+    }
+
+    private static int[] subframe(Reader r, int n, int bits, List<String> kinds) {
+        assertEquals(0, r.bits(1), "subframe padding");
+        int type = r.bits(6);
+        assertEquals(0, r.bits(1), "no wasted bits");
+        int[] x = new int[n];
+        if (type == 0) {
+            kinds.add("CONSTANT");
+            Arrays.fill(x, r.signed(bits));
+        } else if (type == 1) {
+            kinds.add("VERBATIM");
+            for (int i = 0; i < n; i++) x[i] = r.signed(bits);
+        } else if (type >= 8 && type <= 12) {
+            kinds.add("FIXED");
+            int order = type - 8;
+            for (int i = 0; i < order; i++) x[i] = r.signed(bits);
+            residual(r, x, n, order);
+            for (int i = order; i < n; i++) {
+                x[i] += switch (order) {
+                    case 0 -> 0;
+                    case 1 -> x[i - 1];
+                    case 2 -> 2 * x[i - 1] - x[i - 2];
+                    case 3 -> 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                    default -> 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                };
+            }
+        } else if (type >= 32) {
+            kinds.add("LPC");
+            int order = type - 31;
+            for (int i = 0; i < order; i++) x[i] = r.signed(bits);
+            int precision = r.bits(4) + 1;
+            int shift = r.signed(5);
+            int[] coefs = new int[order];
+            for (int i = 0; i < order; i++) coefs[i] = r.signed(precision);
+            residual(r, x, n, order);
+            for (int i = order; i < n; i++) {
+                long sum = 0;
+                for (int j = 0; j < order; j++) sum += (long) coefs[j] * x[i - 1 - j];
+                x[i] += (int) (sum >> shift);
+            }
+        } else {
+            throw new AssertionError("reserved subframe type " + type);
+        }
+        return x;
+    }
+
+    /** Partitioned Rice residuals into {@code x[order..n)}. */
+    private static void residual(Reader r, int[] x, int n, int order) {
+        int method = r.bits(2);
+        assertTrue(method <= 1, "Rice coding method");
+        int paramBits = method == 0 ? 4 : 5;
+        int partitionOrder = r.bits(4);
+        int partSize = n >> partitionOrder;
+        int i = order;
+        for (int p = 0; p < 1 << partitionOrder; p++) {
+            int k = r.bits(paramBits);
+            int end = (p + 1) * partSize;
+            if (k == (1 << paramBits) - 1) { // escape: plain signed values
+                int width = r.bits(5);
+                for (; i < end; i++) x[i] = width == 0 ? 0 : r.signed(width);
+                continue;
+            }
+            for (; i < end; i++) {
+                long q = 0;
+                while (r.bits(1) == 0) q++;
+                long u = q << k | (k == 0 ? 0 : r.bits(k));
+                x[i] = (int) ((u >>> 1) ^ -(u & 1));
+            }
+        }
+    }
+
+    private static int crc8(byte[] b, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= b[i] & 0xFF;
+            for (int k = 0; k < 8; k++) crc = (crc & 0x80) != 0 ? (crc << 1 ^ 0x07) & 0xFF : crc << 1 & 0xFF;
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] b, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (b[i] & 0xFF) << 8;
+            for (int k = 0; k < 8; k++) crc = (crc & 0x8000) != 0 ? (crc << 1 ^ 0x8005) & 0xFFFF : crc << 1 & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /** MSB-first bits out of a byte array. */
+    private static final class Reader {
+        final byte[] buf;
+        int pos; // in bits
+
+        Reader(byte[] buf) { this.buf = buf; }
+
+        int bits(int n) {
+            int v = 0;
+            for (int i = 0; i < n; i++, pos++) v = v << 1 | (buf[pos >> 3] >> (7 - (pos & 7)) & 1);
+            return v;
+        }
+
+        int signed(int n) {
+            int v = bits(n);
+            return v << (32 - n) >> (32 - n);
+        }
+
+        long utf8() {
+            int lead = bits(8);
+            int extra = Integer.numberOfLeadingZeros(~lead << 24);
+            if (extra == 0) return lead;
+            long v = lead & (0x7F >> extra);
+            for (int i = 1; i < extra; i++) {
+                int b = bits(8);
+                assertEquals(0x80, b & 0xC0, "UTF-8 continuation");
+                v = v << 6 | (b & 0x3F);
+            }
+            return v;
+        }
+    }
+
+    private static int[] filled(int n, int v) {
+        int[] x = new int[n];
+        Arrays.fill(x, v);
+        return x;
+    }
+
+    private static int[] plus(int[] x, int[] d) {
+        int[] y = x.clone();
+        for (int i = 0; i < y.length; i++) y[i] += d[i];
+        return y;
+    }
+
+    private static int[] alternating(int n) {
+        int[] x = new int[n];
+        for (int i = 0; i < n; i++) x[i] = 3 + (i & 1);
+        return x;
+    }
+
+    private static int[] negate(int[] x) {
+        int[] y = x.clone();
+        for (int i = 0; i < y.length; i++) y[i] = -y[i];
+        return y;
+    }
+}
@@ -0,0 +1,74 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// in the engine's package: JobQueue is internal to it
+public class JobQueueTest {
+
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void policiesPickByWeight() {
+        assertEquals(List.of("b", "c", "a", "d"), order(SchedulingPolicy.LONGEST_FIRST));
+        assertEquals(List.of("a", "d", "c", "b"), order(SchedulingPolicy.SHORTEST_FIRST)); // equal weights: arrival order
+        assertEquals(List.of("a", "b", "c", "d"), order(SchedulingPolicy.FIFO));
+    }
+
+    @Test
+    void overdueLightJobRunsAheadOfHeavierOnes() throws InterruptedException {
+        JobQueue q = new JobQueue(Long.MAX_VALUE);
+        add(q, "light", 1, SchedulingPolicy.LONGEST_FIRST);
+        TimeUnit.MILLISECONDS.sleep(20);
+        add(q, "heavy", 100, SchedulingPolicy.LONGEST_FIRST);
+        add(q, "heavier", 200, SchedulingPolicy.LONGEST_FIRST);
+
+        q.setMaxDelayNanos(TimeUnit.MILLISECONDS.toNanos(10)); // only "light" has waited that long
+        q.poll().run();
+        q.setMaxDelayNanos(Long.MAX_VALUE);
+        drain(q);
+
+        assertEquals(List.of("light", "heavier", "heavy"), ran);
+    }
+
+    @Test
+    void overdueHeavyJobRunsAheadOfLighterOnes() throws InterruptedException {
+        JobQueue q = new JobQueue(Long.MAX_VALUE);
+        add(q, "heavy", 100, SchedulingPolicy.SHORTEST_FIRST);
+        TimeUnit.MILLISECONDS.sleep(20);
+        add(q, "light", 1, SchedulingPolicy.SHORTEST_FIRST);
+        add(q, "lighter", 0.5, SchedulingPolicy.SHORTEST_FIRST);
+
+        q.setMaxDelayNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        q.poll().run();
+        q.setMaxDelayNanos(Long.MAX_VALUE);
+        drain(q);
+
+        assertEquals(List.of("heavy", "lighter", "light"), ran);
+    }
+
+    private List<String> order(SchedulingPolicy policy) {
+        ran.clear();
+        JobQueue q = new JobQueue(Long.MAX_VALUE);
+        add(q, "a", 1, policy);
+        add(q, "b", 30, policy);
+        add(q, "c", 7, policy);
+        add(q, "d", 1, policy);
+        drain(q);
+        return List.copyOf(ran);
+    }
+
+    private void add(JobQueue q, String name, double weight, SchedulingPolicy policy) {
+        assertTrue(q.add(() -> ran.add(name), weight, policy));
+    }
+
+    private static void drain(JobQueue q) {
+        for (Runnable r; (r = q.poll()) != null; ) r.run();
+    }
+}
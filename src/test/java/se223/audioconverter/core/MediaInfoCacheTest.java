@@ -0,0 +1,131 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.metrics.ConversionMetrics;
+import se223.audioconverter.model.AudioFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// in the cache's package: remember() is internal to it
+public class MediaInfoCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void eachShardEvictsItsLeastRecentlyUsed() throws Exception {
+        var cache = new MediaInfoCache(null, null, 128); // two entries per shard
+        List<Path> same = sameShard(3);
+        cache.remember(info(same.get(0)));
+        cache.remember(info(same.get(1)));
+        assertTrue(cache.peek(same.get(0)).isPresent()); // now the most recently used
+        cache.remember(info(same.get(2)));
+
+        assertTrue(cache.peek(same.get(0)).isPresent());
+        assertTrue(cache.peek(same.get(1)).isEmpty());
+        assertTrue(cache.peek(same.get(2)).isPresent());
+    }
+
+    @Test
+    void neverHoldsMoreThanMaxEntries() throws Exception {
+        var cache = new MediaInfoCache(null, null, 64);
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) files.add(audio("f" + i + ".wav", 100));
+        files.forEach(f -> cache.remember(info(f)));
+
+        assertTrue(files.stream().filter(f -> cache.peek(f).isPresent()).count() <= 64);
+    }
+
+    @Test
+    void flushedShardsAreReadBackByANewCache() throws Exception {
+        Path store = dir.resolve("cache");
+        Path song = audio("song.mp3", 4000);
+        Path silent = audio("cover.jpg", 50);
+        var cache = new MediaInfoCache(null, store, 1000);
+        cache.remember(info(song));
+        cache.remember(new AudioFile(silent, 50, mtime(silent), -1, null, 0, 0, 0));
+        cache.flush();
+
+        var reloaded = new MediaInfoCache(null, store, 1000);
+        AudioFile a = reloaded.peek(song).orElseThrow();
+        assertEquals(12.5, a.getDurationSeconds());
+        assertEquals("mp3", a.getCodec());
+        assertEquals(44100, a.getSampleRateHz());
+        assertEquals(2, a.getChannelCount());
+        assertEquals(192, a.getBitrateKbps());
+        assertFalse(reloaded.peek(silent).orElseThrow().hasAudio());
+        assertEquals(12.5, reloaded.estimateSeconds(song));
+    }
+
+    @Test
+    void changedSizeOrMtimeIsAMiss() throws Exception {
+        Path a = audio("a.flac", 1000);
+        Path b = audio("b.flac", 1000);
+        var cache = new MediaInfoCache(null, null, 1000);
+        cache.remember(info(a));
+        cache.remember(info(b));
+
+        Files.setLastModifiedTime(a, FileTime.fromMillis(mtime(a) + 10_000));
+        Files.write(b, new byte[1001]);
+
+        assertTrue(cache.peek(a).isEmpty());
+        assertTrue(cache.peek(b).isEmpty());
+        assertEquals(1001 / 88_200.0, cache.estimateSeconds(b), 1e-9); // back to the size guess
+    }
+
+    @Test
+    void peekNeverProbes() throws Exception {
+        Path a = audio("a.wav", 100);
+        var metrics = new ConversionMetrics();
+        var cache = new MediaInfoCache(dir.resolve("no-ffprobe"), null, 1000);
+        cache.setMetrics(metrics);
+
+        assertTrue(cache.peek(a).isEmpty());
+        cache.estimateSeconds(a);
+        assertEquals(0, metrics.getProbeTime().getCount());
+
+        assertTrue(cache.get(a).isEmpty()); // a miss through get does try ffprobe
+        assertEquals(1, metrics.getProbeTime().getCount());
+
+        cache.setFfprobe(null);
+        assertTrue(cache.get(a).isEmpty());
+        assertEquals(1, metrics.getProbeTime().getCount());
+    }
+
+    /** Files whose keys land in one shard, found by trying names. */
+    private List<Path> sameShard(int n) throws IOException {
+        List<Path> same = new ArrayList<>();
+        int shard = -1;
+        for (int i = 0; same.size() < n; i++) {
+            Path p = dir.resolve("s" + i + ".wav").toAbsolutePath().normalize();
+            int s = (p.toString().hashCode() & 0x7fffffff) % 64;
+            if (shard < 0) shard = s;
+            if (s == shard) same.add(audio(p.getFileName().toString(), 100));
+        }
+        return same;
+    }
+
+    private Path audio(String name, int bytes) throws IOException {
+        return Files.write(dir.resolve(name), new byte[bytes]);
+    }
+
+    private static AudioFile info(Path file) {
+        try {
+            return new AudioFile(file.toAbsolutePath().normalize(), Files.size(file), mtime(file), 12.5, "mp3", 44100, 2, 192);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long mtime(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+}
@@ -0,0 +1,143 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputManifestTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rerunInAFreshConverterIsUpToDate() throws Exception {
+        Path in = writeWav(dir.resolve("a.wav"));
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+
+        ConversionResult first = convert(in, outDir, incremental(16));
+        assertEquals(ResultStatus.OK, first.getStatus());
+        FileTime written = Files.getLastModifiedTime(first.getOutput());
+
+        ConversionResult again = convert(in, outDir, incremental(16));
+        assertEquals(ResultStatus.UP_TO_DATE, again.getStatus());
+        assertEquals(first.getOutput(), again.getOutput());
+        assertEquals(written, Files.getLastModifiedTime(again.getOutput()));
+    }
+
+    @Test
+    void changedInputOrSettingsAreEncodedAgain() throws Exception {
+        Path in = writeWav(dir.resolve("a.wav"));
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        assertEquals(ResultStatus.OK, convert(in, outDir, incremental(16)).getStatus());
+
+        Files.setLastModifiedTime(in, FileTime.fromMillis(Files.getLastModifiedTime(in).toMillis() + 10_000));
+        assertEquals(ResultStatus.OK, convert(in, outDir, incremental(16)).getStatus());
+        assertEquals(ResultStatus.UP_TO_DATE, convert(in, outDir, incremental(16)).getStatus());
+
+        assertEquals(ResultStatus.OK, convert(in, outDir, incremental(24)).getStatus());
+        assertEquals(ResultStatus.UP_TO_DATE, convert(in, outDir, incremental(24)).getStatus());
+    }
+
+    @Test
+    void recordsSurviveWithoutCompactingAndPartialLinesAreSkipped() throws Exception {
+        Path a = writeWav(dir.resolve("a.wav"));
+        Path b = writeWav(dir.resolve("b.wav"));
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        Path outA = Files.write(outDir.resolve("a.wav"), new byte[10]);
+        Path outB = Files.write(outDir.resolve("b.wav"), new byte[20]);
+        ConversionSettings s = incremental(16);
+
+        // a batch killed before it finished: records made, compact() never called
+        OutputManifest m = OutputManifest.load(outDir);
+        m.record(a, s, outA);
+        m.record(b, s, outB);
+        // and the process died while appending the next line
+        Files.writeString(outDir.resolve(OutputManifest.FILE_NAME), "c.wav\t/x/c.wav\t12", StandardOpenOption.APPEND);
+
+        OutputManifest reloaded = OutputManifest.load(outDir);
+        assertTrue(reloaded.isUpToDate(a, s, outA));
+        assertTrue(reloaded.isUpToDate(b, s, outB));
+    }
+
+    @Test
+    void compactingKeepsWhatAnotherInstanceAppended() throws Exception {
+        Path a = writeWav(dir.resolve("a.wav"));
+        Path b = writeWav(dir.resolve("b.wav"));
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        Path outA = Files.write(outDir.resolve("a.wav"), new byte[10]);
+        Path outB = Files.write(outDir.resolve("b.wav"), new byte[20]);
+        ConversionSettings s = incremental(16);
+
+        // two converters writing into one directory, each with its own copy
+        OutputManifest first = OutputManifest.load(outDir);
+        OutputManifest second = OutputManifest.load(outDir);
+        first.record(a, s, outA);
+        first.record(a, s, outA);
+        second.record(b, s, outB);
+        first.compact();
+
+        OutputManifest reloaded = OutputManifest.load(outDir);
+        assertTrue(reloaded.isUpToDate(a, s, outA));
+        assertTrue(reloaded.isUpToDate(b, s, outB));
+        assertEquals(3, Files.readAllLines(outDir.resolve(OutputManifest.FILE_NAME)).size()); // header + one line each
+    }
+
+    @Test
+    void archiveEntriesAreKeyedByArchiveNameAndSize() throws Exception {
+        Path zip = Files.write(dir.resolve("set.zip"), new byte[500]);
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        Path out = Files.write(outDir.resolve("a.wav"), new byte[10]);
+        ConversionSettings s = incremental(16);
+        var entry = new ConversionRequest(new ArchiveEntry(zip, "a.wav", -1, 200), outDir, s);
+
+        OutputManifest.load(outDir).record(entry, s, out);
+
+        OutputManifest reloaded = OutputManifest.load(outDir);
+        assertTrue(reloaded.isUpToDate(entry, s, out));
+        assertFalse(reloaded.isUpToDate(new ConversionRequest(new ArchiveEntry(zip, "a.wav", -1, 201), outDir, s), s, out));
+        assertFalse(reloaded.isUpToDate(new ConversionRequest(new ArchiveEntry(zip, "b/a.wav", -1, 200), outDir, s), s, out));
+        Files.setLastModifiedTime(zip, FileTime.fromMillis(Files.getLastModifiedTime(zip).toMillis() + 10_000));
+        assertFalse(reloaded.isUpToDate(entry, s, out)); // the archive was rewritten
+    }
+
+    private static ConversionResult convert(Path in, Path outDir, ConversionSettings s) throws Exception {
+        var conv = new PcmAudioConverter(1, new MediaInfoCache(null, null, 64));
+        try {
+            return conv.convertAll(List.of(new ConversionRequest(in, outDir, s)), (f, p, i, n) -> { }).get().get(0);
+        } finally {
+            conv.close();
+        }
+    }
+
+    private static ConversionSettings incremental(int bits) {
+        var s = new ConversionSettings();
+        s.setFormat(AudioFormat.WAV);
+        s.setSampleRateHz(44100);
+        s.setChannels(Channels.STEREO);
+        s.setBitDepth(bits);
+        s.setOverwritePolicy(OverwritePolicy.INCREMENTAL);
+        return s;
+    }
+
+    /** 100 frames of 16-bit stereo silence. */
+    private static Path writeWav(Path file) throws IOException {
+        int frames = 100;
+        ByteBuffer b = ByteBuffer.allocate(44 + frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("RIFF".getBytes()).putInt(36 + frames * 4).put("WAVE".getBytes());
+        b.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(44100).putInt(44100 * 4).putShort((short) 4).putShort((short) 16);
+        b.put("data".getBytes()).putInt(frames * 4);
+        return Files.write(file, b.array());
+    }
+}
@@ -0,0 +1,142 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PcmAudioConverterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resamplesDownmixesAndChangesBitDepth() throws Exception {
+        Path in = writeSine(dir.resolve("tone.wav"), 44100, 44100);
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        var req = new ConversionRequest(in, outDir, wav(48000, Channels.MONO, 24));
+
+        var conv = new PcmAudioConverter(1, new MediaInfoCache(null, null, 64));
+        assertTrue(conv.supports(req));
+        var results = conv.convertAll(List.of(req), (f, p, i, n) -> { }).get();
+        conv.close();
+
+        assertEquals(ResultStatus.OK, results.get(0).getStatus());
+        ByteBuffer out = ByteBuffer.wrap(Files.readAllBytes(results.get(0).getOutput())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1, out.getShort(22));          // channels
+        assertEquals(48000, out.getInt(24));        // sample rate
+        assertEquals(24, out.getShort(34));         // bits per sample
+        assertEquals(48000 * 3, out.getInt(40));    // one second of 24-bit mono
+
+        // a quarter period in, the 1 kHz tone at half scale peaks at 0.5
+        int at = 44 + 12 * 3;
+        int v = (out.get(at) & 0xFF) | (out.get(at + 1) & 0xFF) << 8 | out.get(at + 2) << 16;
+        assertEquals(0.5, v / 8388608.0, 0.01);
+    }
+
+    @Test
+    void matchingLayoutCopiesSamplesUnchanged() throws Exception {
+        Path in = writeSine(dir.resolve("tone.wav"), 44100, 4410);
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        var conv = new PcmAudioConverter(1, new MediaInfoCache(null, null, 64));
+        var result = conv.convertAll(List.of(new ConversionRequest(in, outDir, wav(44100, Channels.STEREO, 16))),
+                (f, p, i, n) -> { }).get().get(0);
+        conv.close();
+
+        assertEquals(ConversionStrategy.REMUX, result.getStrategy());
+        assertArrayEquals(Files.readAllBytes(in), Files.readAllBytes(result.getOutput()));
+    }
+
+    @Test
+    void encodesFlacWithStreamInfoAndMd5() throws Exception {
+        Path in = writeSine(dir.resolve("tone.wav"), 44100, 10000);
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        var flac = wav(44100, Channels.STEREO, 16);
+        flac.setFormat(AudioFormat.FLAC);
+        var req = new ConversionRequest(in, outDir, flac);
+
+        var conv = new PcmAudioConverter(2, new MediaInfoCache(null, null, 64));
+        assertTrue(conv.supports(req));
+        var result = conv.convertAll(List.of(req), (f, p, i, n) -> { }).get().get(0);
+        conv.close();
+
+        assertEquals(ResultStatus.OK, result.getStatus());
+        assertTrue(result.getOutput().toString().endsWith(".flac"));
+        byte[] out = Files.readAllBytes(result.getOutput());
+        assertEquals("fLaC", new String(out, 0, 4));
+        ByteBuffer info = ByteBuffer.wrap(out, 8, 34).slice();
+        long packed = info.getLong(10); // rate:20 channels-1:3 bits-1:5 total samples:36
+        assertEquals(44100, packed >>> 44);
+        assertEquals(2, (packed >>> 41 & 7) + 1);
+        assertEquals(16, (packed >>> 36 & 31) + 1);
+        assertEquals(10000, packed & 0xF_FFFF_FFFFL);
+
+        // STREAMINFO carries the MD5 of the little-endian samples, which for 16-bit input are the WAV data
+        byte[] pcm = Arrays.copyOfRange(Files.readAllBytes(in), 44, 44 + 10000 * 4);
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(pcm), Arrays.copyOfRange(out, 8 + 18, 8 + 34));
+        assertEquals((byte) 0xFF, out[42]);   // first frame sync code follows the header
+        assertEquals((byte) 0xF8, out[43]);
+    }
+
+    @Test
+    void onlyIncrementalWritesAManifest() throws Exception {
+        Path in = writeSine(dir.resolve("tone.wav"), 44100, 100);
+        Path outDir = Files.createDirectory(dir.resolve("out"));
+        var flac = wav(44100, Channels.STEREO, 16);
+        flac.setFormat(AudioFormat.FLAC);
+        var conv = new PcmAudioConverter(1, new MediaInfoCache(null, null, 64));
+        for (OverwritePolicy policy : List.of(OverwritePolicy.RENAME, OverwritePolicy.OVERWRITE, OverwritePolicy.SKIP)) {
+            var s = wav(44100, Channels.STEREO, 16);
+            s.setOverwritePolicy(policy);
+            var results = conv.convertAll(List.of(new MultiTargetRequest(in, outDir, List.of(s, flac))),
+                    (f, p, i, n) -> { }).get();
+            assertTrue(results.stream().allMatch(ConversionResult::isSuccess), policy.toString());
+        }
+        conv.close();
+
+        assertFalse(Files.exists(outDir.resolve(OutputManifest.FILE_NAME)));
+    }
+
+    @Test
+    void rejectsNonWavTargets() throws Exception {
+        Path in = writeSine(dir.resolve("tone.wav"), 44100, 100);
+        var mp3 = wav(44100, Channels.STEREO, 16);
+        mp3.setFormat(AudioFormat.MP3);
+        var conv = new PcmAudioConverter(1, new MediaInfoCache(null, null, 64));
+        assertFalse(conv.supports(new ConversionRequest(in, dir, mp3)));
+        conv.close();
+    }
+
+    private static ConversionSettings wav(int rate, Channels channels, int bits) {
+        var s = new ConversionSettings();
+        s.setFormat(AudioFormat.WAV);
+        s.setSampleRateHz(rate);
+        s.setChannels(channels);
+        s.setBitDepth(bits);
+        return s;
+    }
+
+    /** 16-bit stereo 1 kHz sine at half scale. */
+    private static Path writeSine(Path file, int rate, int frames) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(44 + frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("RIFF".getBytes()).putInt(36 + frames * 4).put("WAVE".getBytes());
+        b.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(rate).putInt(rate * 4).putShort((short) 4).putShort((short) 16);
+        b.put("data".getBytes()).putInt(frames * 4);
+        for (int i = 0; i < frames; i++) {
+            short v = (short) Math.round(16384 * Math.sin(2 * Math.PI * 1000 * i / rate));
+            b.putShort(v).putShort(v);
+        }
+        return Files.write(file, b.array());
+    }
+}
@@ -0,0 +1,83 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import se223.audioconverter.model.SchedulingPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgressAggregatorTest {
+
+    @Test
+    void overallIsWeightedByExpectedWork() {
+        var agg = new ProgressAggregator(2);
+        agg.onBatchScheduled(SchedulingPolicy.FIFO, 2);
+        agg.onBatchWeight(10);
+        agg.onJobStarted("long.flac", 1, 8);
+        agg.onJobStarted("short.flac", 2, 2);
+
+        agg.onProgress("long.flac", 0.5, 1, 2);
+        assertEquals(0.4, agg.snapshot().overall(), 1e-9);
+        agg.onProgress("short.flac", 1.0, 2, 2);
+
+        var s = agg.snapshot();
+        assertEquals(0.6, s.overall(), 1e-9);
+        assertEquals(2, s.started());
+        assertEquals(1, s.finished());
+        assertEquals("short.flac", s.latestFile());
+    }
+
+    @Test
+    void parallelJobsOfUnequalWeightNeverMoveOverallBackwards() throws Exception {
+        int jobs = 8;
+        double[] weights = new double[jobs];
+        double total = 0;
+        for (int j = 0; j < jobs; j++) total += weights[j] = 1 + j * j;
+        var agg = new ProgressAggregator(jobs);
+        agg.onBatchScheduled(SchedulingPolicy.LONGEST_FIRST, jobs);
+        agg.onBatchWeight(total);
+
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int j = 0; j < jobs; j++) {
+            int index = j + 1;
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                agg.onJobStarted("f" + index, index, weights[index - 1]);
+                int steps = 200 * index; // heavier jobs report more often
+                for (int k = 1; k <= steps; k++) agg.onProgress("f" + index, (double) k / steps, index, jobs);
+            }));
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> broken = new AtomicReference<>();
+        Thread poller = Thread.ofPlatform().start(() -> {
+            double last = 0;
+            while (!stop.get()) {
+                var s = agg.snapshot();
+                if (s.overall() < last) broken.compareAndSet(null, last + " then " + s.overall());
+                if (s.finished() > s.started() || s.started() > jobs) broken.compareAndSet(null, s.toString());
+                last = s.overall();
+            }
+        });
+        go.countDown();
+        for (Thread t : workers) t.join();
+        stop.set(true);
+        poller.join();
+
+        assertNull(broken.get());
+        var s = agg.snapshot();
+        assertEquals(1.0, s.overall(), 1e-9);
+        assertEquals(jobs, s.started());
+        assertEquals(jobs, s.finished());
+        assertEquals(jobs, s.total());
+    }
+}
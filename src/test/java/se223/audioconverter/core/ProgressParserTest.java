@@ -0,0 +1,45 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgressParserTest {
+
+    private static ProgressParser parser(String s) {
+        // tiny buffer so values straddle reads
+        return new ProgressParser(new ByteArrayInputStream(s.getBytes(StandardCharsets.US_ASCII)), 3);
+    }
+
+    @Test
+    void readsTimeAndSpeedPerBlock() throws Exception {
+        var p = parser("out_time_us=N/A\nspeed=N/A\nprogress=continue\n"
+                + "total_size=1024\nout_time_us=12340000\nout_time=00:00:12.340000\nspeed=41.5x\nprogress=continue\n"
+                + "out_time_us=20000000\nspeed= 123x\r\nprogress=end\n");
+
+        assertTrue(p.next());
+        assertEquals(-1, p.outTimeUs());
+        assertEquals(-1, p.speed());
+
+        assertTrue(p.next());
+        assertEquals(12_340_000, p.outTimeUs());
+        assertEquals(41.5, p.speed(), 1e-9);
+        assertFalse(p.ended());
+
+        assertTrue(p.next());
+        assertEquals(20_000_000, p.outTimeUs());
+        assertEquals(123, p.speed(), 1e-9);
+        assertTrue(p.ended());
+
+        assertFalse(p.next());
+    }
+
+    @Test
+    void incompleteBlockAtEofIsNotReported() throws Exception {
+        var p = parser("out_time_us=5000000\nspeed=1x\n");
+        assertFalse(p.next());
+    }
+}
@@ -0,0 +1,102 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.AudioFile;
+import se223.audioconverter.model.AudioFormat;
+import se223.audioconverter.model.ConversionSettings;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// in the converter's package: SegmentedEncoder is internal to it
+public class SegmentedEncoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void slicesAndJoinCountTheInputOnce() {
+        // as runFfmpeg would record it: the final out_time, scaled
+        List<Double> media = new ArrayList<>();
+        SegmentedEncoder.Runner runner = (args, name, duration, progress, mediaScale) -> {
+            progress.accept(1.0);
+            synchronized (media) { media.add(duration * mediaScale); }
+            return null;
+        };
+
+        assertNull(encode(AudioFormat.FLAC, runner));
+        assertEquals(5, media.size()); // four slices and the join
+        assertEquals(0.0, media.get(4));
+        assertEquals(600, media.stream().mapToDouble(Double::doubleValue).sum(), 1e-6);
+    }
+
+    @Test
+    void slicesAreCutOnTheOutputSampleGrid() {
+        List<List<String>> runs = Collections.synchronizedList(new ArrayList<>());
+        assertNull(encode(AudioFormat.WAV, (args, name, duration, progress, mediaScale) -> { runs.add(args); return null; }));
+
+        // 600 s at 44.1 kHz in four slices of 6,615,000 samples; each seeks 2 s early and trims the pre-roll
+        assertEquals(List.of("-i", "atrim=start_sample=0:end_sample=6615000"), sliceArgs(runs.get(0)));
+        assertEquals(List.of("-ss", "148", "-i", "atrim=start_sample=88200:end_sample=6703200"), sliceArgs(runs.get(1)));
+        assertEquals(List.of("-ss", "298", "-i", "atrim=start_sample=88200:end_sample=6703200"), sliceArgs(runs.get(2)));
+        assertEquals(List.of("-ss", "448", "-i", "atrim=start_sample=88200"), sliceArgs(runs.get(3))); // to the real end
+        assertTrue(runs.get(0).contains("aresample=44100,atrim=start_sample=0:end_sample=6615000"));
+        assertTrue(runs.get(3).get(runs.get(3).size() - 1).endsWith("part003.wav"));
+    }
+
+    @Test
+    void wavJoinsByCopyAndFlacByOneMoreEncode() {
+        List<List<String>> runs = Collections.synchronizedList(new ArrayList<>());
+        SegmentedEncoder.Runner runner = (args, name, duration, progress, mediaScale) -> { runs.add(args); return null; };
+
+        assertNull(encode(AudioFormat.WAV, runner));
+        List<String> wavJoin = runs.get(4);
+        int concat = wavJoin.indexOf("concat");
+        assertEquals(List.of("-f", "concat", "-safe", "0", "-i"), wavJoin.subList(concat - 1, concat + 4));
+        assertTrue(wavJoin.get(concat + 4).endsWith("list.txt"));
+        assertEquals(List.of("-c:a", "copy", tempDir.resolve("long.wav").toString()), wavJoin.subList(wavJoin.size() - 3, wavJoin.size()));
+
+        runs.clear();
+        assertNull(encode(AudioFormat.FLAC, runner));
+        assertTrue(runs.get(0).get(runs.get(0).size() - 1).endsWith("part000.flac"));
+        List<String> flacJoin = runs.get(4);
+        assertFalse(flacJoin.contains("copy"));
+        assertEquals("flac", flacJoin.get(flacJoin.indexOf("-c:a") + 1));
+        assertEquals(tempDir.resolve("long.flac").toString(), flacJoin.get(flacJoin.size() - 1));
+    }
+
+    @Test
+    void lossyTargetsAreNotSliced() {
+        assertFalse(SegmentedEncoder.supports(AudioFormat.MP3));
+        assertFalse(SegmentedEncoder.supports(AudioFormat.M4A));
+        List<List<String>> runs = new ArrayList<>();
+        assertNotNull(encode(AudioFormat.MP3, (args, name, duration, progress, mediaScale) -> { runs.add(args); return null; }));
+        assertTrue(runs.isEmpty());
+    }
+
+    /** 600 s at 44.1 kHz in four slices; nothing is dispatched, so this thread runs them in order. */
+    private String encode(AudioFormat format, SegmentedEncoder.Runner runner) {
+        var settings = new ConversionSettings();
+        settings.setFormat(format);
+        settings.setSampleRateHz(44100);
+        var source = new AudioFile(tempDir.resolve("long.ogg"), 1, 1, 600, "vorbis", 44100, 2, 0);
+        var target = new FFmpegCommandBuilder.Output(settings, tempDir.resolve("long." + FFmpegCommandBuilder.extensionFor(format)));
+        return new SegmentedEncoder(Path.of("ffmpeg"), r -> { }).encode(source, target, 4, 1, runner, p -> { });
+    }
+
+    /** The seek, the input flag and the trim of a slice command. */
+    private static List<String> sliceArgs(List<String> args) {
+        List<String> picked = new ArrayList<>();
+        int ss = args.indexOf("-ss");
+        if (ss >= 0) picked.addAll(args.subList(ss, ss + 2));
+        picked.add("-i");
+        String filter = args.get(args.indexOf("-af") + 1);
+        picked.add(filter.substring(filter.indexOf("atrim")));
+        return picked;
+    }
+}
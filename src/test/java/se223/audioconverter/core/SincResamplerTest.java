@@ -0,0 +1,71 @@
+package se223.audioconverter.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SincResamplerTest {
+
+    @Test
+    void upsampledSineMatchesTheIdealSignal() {
+        float[] in = sine(44100, 44100, 1000);
+        float[] out = resample(new SincResampler(2, 44100, 48000), in, 44100, 8192);
+
+        assertEquals(SincResampler.outputFrames(44100, 44100, 48000), out.length / 2);
+        double error = 0, signal = 0;
+        for (int f = 100; f < out.length / 2 - 100; f++) { // away from the silent edges
+            double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * f / 48000);
+            error += (out[2 * f] - expected) * (out[2 * f] - expected);
+            signal += expected * expected;
+        }
+        assertTrue(10 * Math.log10(signal / error) > 90, "SNR below 90 dB");
+    }
+
+    @Test
+    void blocksAndMidStreamStartsGiveTheSameSamples() {
+        int frames = 96000;
+        float[] in = sine(96000, frames, 3000);
+        float[] whole = resample(new SincResampler(2, 96000, 44100), in, frames, frames);
+        assertArrayEquals(whole, resample(new SincResampler(2, 96000, 44100), in, frames, 1000));
+
+        long start = 12345;
+        int from = (int) SincResampler.firstInputFor(start, 96000, 44100);
+        float[] tail = resample(new SincResampler(2, 96000, 44100, start),
+                Arrays.copyOfRange(in, 2 * from, in.length), frames - from, 4096);
+        assertArrayEquals(Arrays.copyOfRange(whole, (int) start * 2, whole.length), tail);
+    }
+
+    @Test
+    void scalarAndDefaultKernelsAgree() {
+        float[] in = sine(44100, 20000, 440);
+        float[] a = resample(SincResampler.scalar(2, 44100, 48000), in, 20000, 4096);
+        float[] b = resample(new SincResampler(2, 44100, 48000), in, 20000, 4096);
+        assertArrayEquals(a, b, 1e-5f);
+    }
+
+    private static float[] resample(SincResampler r, float[] in, int frames, int block) {
+        float[] out = new float[4096];
+        float[] buf = new float[r.maxOutput(block) * 2];
+        int n = 0;
+        for (int f = 0; f < frames; f += block) {
+            int k = Math.min(block, frames - f);
+            int m = r.process(Arrays.copyOfRange(in, 2 * f, 2 * (f + k)), k, buf, f + k == frames);
+            if (2 * (n + m) > out.length) out = Arrays.copyOf(out, Math.max(2 * (n + m), 2 * out.length));
+            System.arraycopy(buf, 0, out, 2 * n, 2 * m);
+            n += m;
+        }
+        return Arrays.copyOf(out, 2 * n);
+    }
+
+    /** Stereo sine at half scale, the right channel a quarter period ahead. */
+    private static float[] sine(int rate, int frames, double hz) {
+        float[] x = new float[2 * frames];
+        for (int f = 0; f < frames; f++) {
+            x[2 * f] = (float) (0.5 * Math.sin(2 * Math.PI * hz * f / rate));
+            x[2 * f + 1] = (float) (0.5 * Math.cos(2 * Math.PI * hz * f / rate));
+        }
+        return x;
+    }
+}
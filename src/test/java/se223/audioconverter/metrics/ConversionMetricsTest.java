@@ -0,0 +1,67 @@
+package se223.audioconverter.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void histogramPercentilesStayWithinABucket() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) h.record(TimeUnit.MILLISECONDS.toNanos(ms));
+
+        LatencySnapshot s = h.snapshot();
+
+        assertEquals(100, s.getCount());
+        assertEquals(50.5, s.getMeanMillis(), 1e-9);
+        assertEquals(50, s.getP50Millis(), 50 / 16.0);
+        assertEquals(90, s.getP90Millis(), 90 / 16.0);
+        assertEquals(99, s.getP99Millis(), 99 / 16.0);
+        assertEquals(100, s.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    void jobsAndBytesAreReadableOverJmx() throws Exception {
+        Path input = Files.write(tempDir.resolve("a.flac"), new byte[300]);
+        Path output = Files.write(tempDir.resolve("a.mp3"), new byte[100]);
+        ConversionRequest req = new ConversionRequest(input, tempDir, new ConversionSettings());
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.jobsQueued(3);
+        metrics.jobsStarted(2);
+        metrics.jobFinished(req, List.of(new ConversionResult(input, output, ResultStatus.OK, "OK")));
+        metrics.encoded(TimeUnit.SECONDS.toNanos(2), 20);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ConversionMetrics.OBJECT_NAME);
+        if (server.isRegistered(name)) server.unregisterMBean(name);
+        assertTrue(metrics.register());
+        try {
+            assertEquals(1L, server.getAttribute(name, "JobsQueued"));
+            assertEquals(1L, server.getAttribute(name, "JobsRunning"));
+            assertEquals(1L, server.getAttribute(name, "JobsCompleted"));
+            assertEquals(10.0, (Double) server.getAttribute(name, "RealtimeFactor"), 1e-9);
+            assertEquals(1L, ((CompositeData) server.getAttribute(name, "EncodeTime")).get("count"));
+            TabularData written = (TabularData) server.getAttribute(name, "BytesWrittenByFormat");
+            assertEquals(100L, written.get(new Object[]{"mp3"}).get("value"));
+            assertFalse(metrics.register()); // once per name
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package se223.audioconverter.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// in the service's package: discovery with explicit binaries and timeout is internal to it
+public class FFmpegServiceTest {
+
+    /** Trimmed from {@code ffmpeg -hide_banner -encoders} of an ffmpeg 6.1 build. */
+    private static final String ENCODERS = """
+            Encoders:
+             V..... = Video
+             A..... = Audio
+             S..... = Subtitle
+             .F.... = Frame-level multithreading
+             ..S... = Slice-level multithreading
+             ...X.. = Codec is experimental
+             ....B. = Supports draw_horiz_band
+             .....D = Supports direct rendering method 1
+             ------
+             V....D apng                 APNG (Animated Portable Network Graphics) image
+             VF...D png                  PNG (Portable Network Graphics) image
+             A....D aac                  AAC (Advanced Audio Coding)
+             A....D flac                 FLAC (Free Lossless Audio Codec)
+             A....D libmp3lame           libmp3lame MP3 (MPEG audio layer 3) (codec mp3)
+             A..X.D opus                 Opus
+             A....D pcm_s16le            PCM signed 16-bit little-endian
+             A....D pcm_s24le            PCM signed 24-bit little-endian
+             S..... srt                  SubRip subtitle (codec subrip)
+            """;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesAudioEncodersAfterTheRule() {
+        Map<String, FFmpegService.Encoder> encoders = FFmpegService.parseEncoders(ENCODERS.lines().toList());
+
+        assertEquals(List.of("aac", "flac", "libmp3lame", "opus", "pcm_s16le", "pcm_s24le"), List.copyOf(encoders.keySet()));
+        var mp3 = encoders.get("libmp3lame");
+        assertEquals("A....D", mp3.flags());
+        assertEquals("libmp3lame MP3 (MPEG audio layer 3) (codec mp3)", mp3.description());
+        assertTrue(encoders.get("opus").experimental());
+        assertFalse(encoders.get("aac").experimental());
+        assertFalse(encoders.get("aac").frameThreads());
+        // the legend above the rule looks like entries too ("A..... = Audio") but is not one
+        assertFalse(encoders.containsKey("="));
+    }
+
+    @Test
+    void unchangedBinariesAreServedFromTheCacheAndAChangedMtimeProbesAgain() throws Exception {
+        Path ffmpeg = fakeFfmpeg("""
+                case "$2" in
+                  -version) echo "ffmpeg version 6.1.1-test" ;;
+                  -encoders) cat "$(dirname "$0")/encoders.txt" ;;
+                esac
+                """);
+        Files.writeString(dir.resolve("encoders.txt"), ENCODERS);
+        Path ffprobe = Files.writeString(dir.resolve("ffprobe"), "");
+        Path cache = dir.resolve("cache/ffmpeg.tsv");
+
+        var first = new FFmpegService(cache).locate(ffmpeg, ffprobe).orElseThrow();
+        assertEquals(2, runs()); // -version and -encoders
+        assertEquals("ffmpeg version 6.1.1-test", first.version());
+        assertTrue(first.hasEncoder("libmp3lame"));
+
+        // a later start with the same binaries spawns nothing
+        var cached = new FFmpegService(cache).locate(ffmpeg, ffprobe).orElseThrow();
+        assertEquals(2, runs());
+        assertEquals(first.version(), cached.version());
+        assertEquals(first.encoders(), cached.encoders());
+        assertEquals(ffmpeg.toAbsolutePath().normalize(), cached.ffmpeg());
+        assertEquals(ffprobe.toAbsolutePath().normalize(), cached.ffprobe());
+
+        // an upgraded ffmpeg (same size, new mtime) is probed again
+        Files.setLastModifiedTime(ffmpeg, FileTime.fromMillis(Files.getLastModifiedTime(ffmpeg).toMillis() + 10_000));
+        new FFmpegService(cache).locate(ffmpeg, ffprobe).orElseThrow();
+        assertEquals(4, runs());
+
+        // so is a replaced ffprobe
+        Files.writeString(ffprobe, "new");
+        new FFmpegService(cache).locate(ffmpeg, ffprobe).orElseThrow();
+        assertEquals(6, runs());
+    }
+
+    @Test
+    void aHungBinaryIsGivenUpOnAfterTheTimeout() throws Exception {
+        Path ffmpeg = fakeFfmpeg("exec sleep 30\n");
+        Path ffprobe = Files.writeString(dir.resolve("ffprobe"), "");
+        Path cache = dir.resolve("ffmpeg.tsv");
+
+        long start = System.nanoTime();
+        var found = new FFmpegService(cache, Duration.ofMillis(500)).locate(ffmpeg, ffprobe);
+
+        assertTrue(found.isEmpty());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 10);
+        assertEquals(1, runs()); // -encoders is not tried after -version hung
+        assertFalse(Files.exists(cache));
+    }
+
+    @Test
+    void aFailingBinaryIsNotCached() throws Exception {
+        Path ffmpeg = fakeFfmpeg("exit 1\n");
+        Path ffprobe = Files.writeString(dir.resolve("ffprobe"), "");
+        Path cache = dir.resolve("ffmpeg.tsv");
+
+        assertTrue(new FFmpegService(cache).locate(ffmpeg, ffprobe).isEmpty());
+        assertFalse(Files.exists(cache));
+    }
+
+    /** A shell script standing in for ffmpeg; it counts its runs in {@code runs}. */
+    private Path fakeFfmpeg(String body) throws IOException {
+        assumeTrue(!System.getProperty("os.name").startsWith("Windows"), "needs a POSIX shell");
+        Path script = dir.resolve("ffmpeg");
+        Files.writeString(script, "#!/bin/sh\necho run >> \"$(dirname \"$0\")/runs\"\n" + body);
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return script;
+    }
+
+    private int runs() throws IOException {
+        Path runs = dir.resolve("runs");
+        return Files.exists(runs) ? Files.readAllLines(runs).size() : 0;
+    }
+}
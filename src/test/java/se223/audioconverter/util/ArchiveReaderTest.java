@@ -0,0 +1,95 @@
+package se223.audioconverter.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.ArchiveEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void listsAndReadsZipEntries() throws IOException {
+        Path zip = tempDir.resolve("set.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            put(out, "a.wav", bytes(5000, 1));
+            put(out, "dir/", new byte[0]);
+            put(out, "dir/b.mp3", bytes(300, 2));
+            put(out, "../evil.mp3", bytes(10, 3));
+            put(out, "readme.txt", bytes(10, 4));
+        }
+
+        List<ArchiveEntry> entries = ArchiveReader.list(zip, n -> !n.endsWith(".txt"));
+
+        assertEquals(List.of("a.wav", "dir/b.mp3"), entries.stream().map(ArchiveEntry::name).toList());
+        assertEquals(zip.resolve("dir/b.mp3"), entries.get(1).path());
+        assertArrayEquals(bytes(5000, 1), read(entries.get(0)));
+        assertArrayEquals(bytes(300, 2), read(entries.get(1)));
+    }
+
+    @Test
+    void listsAndReadsTarMembersWithoutExtracting() throws IOException {
+        String longName = "x/" + "long".repeat(30) + "/c.flac";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        member(tar, "a.wav", '0', bytes(1000, 1));
+        member(tar, "sub/", '5', new byte[0]);
+        member(tar, "././@LongLink", 'L', (longName + "\0").getBytes(StandardCharsets.UTF_8));
+        member(tar, "c.flac", '0', bytes(512, 2));
+        member(tar, "/abs.wav", '0', bytes(10, 3));
+        tar.write(new byte[1024]); // end-of-archive marker
+        Path file = Files.write(tempDir.resolve("set.tar"), tar.toByteArray());
+
+        List<ArchiveEntry> entries = ArchiveReader.list(file, n -> true);
+
+        assertEquals(List.of("a.wav", longName), entries.stream().map(ArchiveEntry::name).toList());
+        assertEquals(512, entries.get(0).offset());
+        assertArrayEquals(bytes(1000, 1), read(entries.get(0)));
+        assertArrayEquals(bytes(512, 2), read(entries.get(1)));
+    }
+
+    private static byte[] read(ArchiveEntry entry) throws IOException {
+        try (InputStream in = Channels.newInputStream(ArchiveReader.open(entry))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static void member(OutputStream out, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] n = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(n, 0, header, 0, n.length);
+        byte[] size = String.format("%011o", data.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static byte[] bytes(int n, int seed) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; i++) b[i] = (byte) (i * 31 + seed);
+        return b;
+    }
+}
@@ -0,0 +1,121 @@
+package se223.audioconverter.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// in the scanner's package: the flush interval is only configurable from here
+public class FolderScannerTest {
+
+    private static final Set<String> AUDIO = Set.of("mp3", "wav", "flac");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void descendsOnlyToMaxDepth() throws Exception {
+        Path root = dir.resolve("music");
+        file(root.resolve("a.mp3"));
+        file(root.resolve("notes.txt"));
+        file(root.resolve("one/b.WAV"));
+        file(root.resolve("one/two/c.flac"));
+
+        assertEquals(Set.of("a.mp3"), names(scan(0, List.of(root))));
+        assertEquals(Set.of("a.mp3", "b.WAV"), names(scan(1, List.of(root))));
+        assertEquals(Set.of("a.mp3", "b.WAV", "c.flac"), names(scan(16, List.of(root))));
+    }
+
+    @Test
+    void repeatedNestedAndSymlinkedRootsYieldEachFileOnce() throws Exception {
+        Path root = dir.resolve("music");
+        Path a = file(root.resolve("a.mp3"));
+        file(root.resolve("sub/b.mp3"));
+        Path link = dir.resolve("link");
+        Path inner = root.resolve("sub/back");
+        try {
+            Files.createSymbolicLink(link, root);
+            Files.createSymbolicLink(inner, root); // a loop, if it were followed
+        } catch (IOException | UnsupportedOperationException e) {
+            assumeTrue(false, "no symbolic links here");
+        }
+
+        List<Path> found = scan(16, List.of(root, root, root.resolve("sub"), a, link));
+
+        assertEquals(2, found.size());
+        assertEquals(Set.of("a.mp3", "b.mp3"), names(found));
+    }
+
+    @Test
+    void handsOutFullBatchesThenTheRest() throws Exception {
+        Path root = dir.resolve("many");
+        for (int d = 0; d < 12; d++) for (int f = 0; f < 100; f++) file(root.resolve("d" + d + "/f" + f + ".wav"));
+
+        List<Integer> sizes = new ArrayList<>();
+        var scan = new FolderScanner(AUDIO, 16, 500, Long.MAX_VALUE).scan(List.of(root), b -> sizes.add(b.size()));
+
+        assertEquals(1200, scan.done().get(10, TimeUnit.SECONDS));
+        assertEquals(List.of(500, 500, 200), sizes);
+    }
+
+    @Test
+    void flushesEarlyOnceTheIntervalPasses() throws Exception {
+        Path root = dir.resolve("slow");
+        for (int f = 0; f < 5; f++) file(root.resolve("f" + f + ".mp3"));
+
+        List<Integer> sizes = new ArrayList<>();
+        var scan = new FolderScanner(AUDIO, 16, 500, 0).scan(List.of(root), b -> sizes.add(b.size()));
+
+        assertEquals(5, scan.done().get(10, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 1, 1, 1, 1), sizes); // interval already passed at every file
+    }
+
+    @Test
+    void cancelStopsListingAndNothingArrivesAfterDone() throws Exception {
+        Path root = dir.resolve("big");
+        for (int d = 0; d < 50; d++) for (int f = 0; f < 20; f++) file(root.resolve("d" + d + "/f" + f + ".mp3"));
+
+        AtomicReference<FolderScanner.Scan> ref = new AtomicReference<>();
+        List<Integer> sizes = new ArrayList<>();
+        ref.set(new FolderScanner(AUDIO, 16, 1, Long.MAX_VALUE).scan(List.of(root), b -> {
+            sizes.add(b.size());
+            while (ref.get() == null) Thread.onSpinWait();
+            ref.get().cancel();
+        }));
+
+        int found = ref.get().done().get(10, TimeUnit.SECONDS);
+        assertTrue(ref.get().isCancelled());
+        assertTrue(found < 500, "found " + found); // at most one more file per running task after the cancel
+        int delivered = sizes.size();
+        Thread.sleep(100);
+        assertEquals(delivered, sizes.size());
+        assertEquals(found, delivered);
+    }
+
+    private List<Path> scan(int depth, Collection<Path> roots) throws Exception {
+        List<Path> found = new ArrayList<>();
+        new FolderScanner(AUDIO, depth, 500).scan(roots, found::addAll).done().get(10, TimeUnit.SECONDS);
+        return found;
+    }
+
+    private static Set<String> names(List<Path> files) {
+        return files.stream().map(f -> f.getFileName().toString()).collect(Collectors.toSet());
+    }
+
+    private static Path file(Path p) throws IOException {
+        Files.createDirectories(p.getParent());
+        return Files.write(p, new byte[1]);
+    }
+}
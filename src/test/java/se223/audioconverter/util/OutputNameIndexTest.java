@@ -0,0 +1,81 @@
+package se223.audioconverter.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se223.audioconverter.model.OverwritePolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputNameIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void parallelRenamesGetDistinctNames() throws Exception {
+        Files.writeString(tempDir.resolve("song.mp3"), "old");
+        Files.writeString(tempDir.resolve("song(2).mp3"), "old");
+        OutputNameIndex index = new OutputNameIndex();
+
+        List<Future<OutputNameIndex.Reservation>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                Path input = Path.of("in" + i, "song.wav");
+                futures.add(pool.submit(() -> index.reserve(input, tempDir, "MP3", OverwritePolicy.RENAME)));
+            }
+        }
+        Set<Path> names = new HashSet<>();
+        for (Future<OutputNameIndex.Reservation> f : futures) assertTrue(names.add(f.get().target()));
+
+        assertEquals(50, names.size());
+        assertFalse(names.contains(tempDir.resolve("song.mp3")));
+        assertFalse(names.contains(tempDir.resolve("song(2).mp3")));
+        assertTrue(names.contains(tempDir.resolve("song(1).mp3")));
+        assertTrue(names.contains(tempDir.resolve("song(51).mp3")));
+    }
+
+    @Test
+    void skipSeesReservedNamesAndAbortFreesThem() {
+        OutputNameIndex index = new OutputNameIndex();
+        Path input = Path.of("a.wav");
+
+        OutputNameIndex.Reservation first = index.reserve(input, tempDir, "flac", OverwritePolicy.SKIP);
+        assertEquals(tempDir.resolve("a.flac"), first.target());
+        assertNull(index.reserve(Path.of("other", "a.wav"), tempDir, "flac", OverwritePolicy.SKIP));
+
+        first.abort();
+        OutputNameIndex.Reservation again = index.reserve(input, tempDir, "flac", OverwritePolicy.RENAME);
+        assertEquals(tempDir.resolve("a.flac"), again.target());
+        again.abort();
+    }
+
+    @Test
+    void commitMovesThePartFileIntoPlace() throws IOException {
+        Files.writeString(tempDir.resolve("a.wav"), "old");
+        OutputNameIndex index = new OutputNameIndex();
+
+        OutputNameIndex.Reservation out = index.reserve(Path.of("a.mp3"), tempDir, "wav", OverwritePolicy.OVERWRITE);
+        assertEquals(tempDir.resolve("a.wav"), out.target());
+        assertTrue(out.part().getFileName().toString().endsWith(".wav"));
+        Files.writeString(out.part(), "new");
+        assertEquals("old", Files.readString(out.target()));
+
+        out.commit();
+        assertEquals("new", Files.readString(tempDir.resolve("a.wav")));
+        assertFalse(Files.exists(out.part()));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}